@@ -0,0 +1,140 @@
+package pl.springtest.communicatorclient.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.springtest.communicatorclient.toServerConnection.BinaryFraming;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.FrameCompression;
+import pl.springtest.communicatorclient.toServerConnection.FrameCompressor;
+import pl.springtest.communicatorclient.toServerConnection.FrameDecompressor;
+import pl.springtest.communicatorclient.toServerConnection.MessageEncoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * CPU cost of compression and decompression of batches of chat messages (text frames) - time per batch
+ * Compression ratio of first batches of connection and of whole stream is printed by set up
+ * (stream is longer than deflate window, so repeated batches do not make ratio better)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+    public static final int BATCH_COUNT = 1024;
+    public static final int FIRST_BATCHES = 10;
+    private static final String[] PHRASES = {"are we meeting at 6 pm today?", "yes, see you at the office", "I'll be late, traffic",
+            "ok", "did you push the fix for the login bug?", "build is green again", "lunch at noon?", "thanks!",
+            "can you review my pull request", "deploy to staging is done"};
+
+    @Param({"1", "16"})
+    public int messagesPerBatch;
+
+    @Param({"none", "chat"})
+    public String dictionary;
+
+    @Param({"1", "-1"})
+    public int level;
+
+    private ByteBuffer[] batches;
+    private ByteBuffer[] compressedBatches;
+    private byte[] dictionaryBytes;
+    private FrameCompressor compressor;
+    private FrameDecompressor decompressor;
+    private int nextCompress = 0;
+    private int nextDecompress = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        dictionaryBytes = dictionary.equals("chat") ? FrameCompression.buildDictionary(chatMessages(new Random(1), 2000),
+                FrameCompression.MAX_DICTIONARY_SIZE) : null;
+
+        MessageEncoder messageEncoder = new MessageEncoder("Adam", "Group123");
+        Random random = new Random(2);
+        batches = new ByteBuffer[BATCH_COUNT];
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            batches[i] = ByteBuffer.allocate(messagesPerBatch * 256);
+            for (String message : chatMessages(random, messagesPerBatch))
+                messageEncoder.encode(message, ExtraInfo.NO_INFO, batches[i]);
+            batches[i].flip();
+        }
+
+        // the same stream compressed once - decompression has to start from the first batch
+        FrameCompressor streamCompressor = new FrameCompressor(level, 0, dictionaryBytes);
+        compressedBatches = new ByteBuffer[BATCH_COUNT];
+        String firstBatchesRatio = "";
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            ByteBuffer compressed = streamCompressor.compressBatch(batches[i].duplicate());
+            compressedBatches[i] = ByteBuffer.allocate(compressed.remaining());
+            compressedBatches[i].put(compressed).flip();
+            if (i == FIRST_BATCHES - 1)
+                firstBatchesRatio = String.format("%.2f", (double) streamCompressor.getPlainBytes() / streamCompressor.getCompressedBytes());
+        }
+        System.out.println();
+        System.out.println("Compression (" + messagesPerBatch + " messages per batch, dictionary " + dictionary + ", level "
+                + (level == Deflater.DEFAULT_COMPRESSION ? "default" : level) + "): ratio of first " + FIRST_BATCHES + " batches "
+                + firstBatchesRatio + "; " + streamCompressor.getSummary());
+        streamCompressor.close();
+
+        compressor = new FrameCompressor(level, 0, dictionaryBytes);
+        decompressor = new FrameDecompressor(dictionaryBytes);
+    }
+
+    private static List<String> chatMessages(Random random, int count) {
+        List<String> messages = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            String message = PHRASES[random.nextInt(PHRASES.length)];
+            if (random.nextInt(10) < 3)
+                message += " " + PHRASES[random.nextInt(PHRASES.length)];
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public ByteBuffer compressBatch() {
+        ByteBuffer batch = batches[nextCompress];
+        nextCompress = (nextCompress + 1) % BATCH_COUNT;
+        batch.rewind();
+        return compressor.compressBatch(batch);
+    }
+
+    /**
+     * Decompression of stream compressed in set up - decompressor is created again when stream starts from beginning
+     */
+    @Benchmark
+    public ByteBuffer decompressBatch() throws IOException {
+        if (nextDecompress == 0) {
+            decompressor.close();
+            decompressor = new FrameDecompressor(dictionaryBytes);
+        }
+        ByteBuffer compressed = compressedBatches[nextDecompress];
+        nextDecompress = (nextDecompress + 1) % BATCH_COUNT;
+        int length = BinaryFraming.getVarint(compressed, 1, compressed.limit()); // after type byte
+        return decompressor.decompress(compressed, 1 + BinaryFraming.varintSize(length), compressed.limit());
+    }
+
+    @TearDown
+    public void tearDown() {
+        compressor.close();
+        decompressor.close();
+    }
+}
@@ -0,0 +1,114 @@
+package pl.springtest.communicatorclient.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.springtest.communicatorclient.history.HistoryMessage;
+import pl.springtest.communicatorclient.history.MessageHistory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Queries of MessageHistory filled with many chat messages - time per query of QUERY_COUNT messages
+ * Time of filling, of opening again (indexes are built by scanning segments) and size of indexes are printed by set up
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+    public static final int QUERY_COUNT = 100;
+    public static final int SENDERS = 1000;
+    public static final int GROUPS = 10;
+    private static final String[] PHRASES = {"are we meeting at 6 pm today?", "yes, see you at the office", "I'll be late, traffic",
+            "ok", "did you push the fix for the login bug?", "build is green again", "lunch at noon?", "thanks!",
+            "can you review my pull request", "deploy to staging is done"};
+
+    @Param({"10000000"})
+    public int messages;
+
+    private Path directory;
+    private MessageHistory messageHistory;
+    private long middleTimeMillis;
+    private int nextAppend = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history-benchmark");
+        messageHistory = new MessageHistory(directory, MessageHistory.DEFAULT_SEGMENT_BYTES);
+        Random random = new Random(1);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            if (i == messages / 2)
+                middleTimeMillis = System.currentTimeMillis();
+            messageHistory.append("user-" + random.nextInt(SENDERS), "group-" + random.nextInt(GROUPS), PHRASES[random.nextInt(PHRASES.length)]);
+        }
+        double appendSeconds = (System.nanoTime() - startTime) / 1e9;
+        messageHistory.close();
+
+        startTime = System.nanoTime();
+        messageHistory = new MessageHistory(directory, MessageHistory.DEFAULT_SEGMENT_BYTES);
+        double openSeconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println();
+        System.out.println(String.format("History: %d messages in %d segments, appended in %.1f s (%.0f messages/s), "
+                        + "opened again in %.2f s, indexes %d MB", messageHistory.size(), messageHistory.getSegmentCount(),
+                appendSeconds, messages / appendSeconds, openSeconds, messageHistory.getIndexBytes() >> 20));
+    }
+
+    @Benchmark
+    public List<HistoryMessage> last() {
+        return messageHistory.last(QUERY_COUNT);
+    }
+
+    /**
+     * The newest messages of one second in the middle of history
+     */
+    @Benchmark
+    public List<HistoryMessage> range() {
+        return messageHistory.range(middleTimeMillis, middleTimeMillis + 999, QUERY_COUNT);
+    }
+
+    /**
+     * Messages of one sender are spread over whole history
+     */
+    @Benchmark
+    public List<HistoryMessage> lastFromSender() {
+        return messageHistory.lastFromSender("user-" + SENDERS / 2, QUERY_COUNT);
+    }
+
+    @Benchmark
+    public List<HistoryMessage> lastInGroup() {
+        return messageHistory.lastInGroup("group-" + GROUPS / 2, QUERY_COUNT);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return messageHistory.append("user-" + nextAppend % SENDERS, "group-" + nextAppend % GROUPS, PHRASES[nextAppend++ % PHRASES.length]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        messageHistory.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
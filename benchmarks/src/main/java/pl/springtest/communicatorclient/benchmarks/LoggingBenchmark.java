@@ -0,0 +1,38 @@
+package pl.springtest.communicatorclient.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.springtest.communicatorclient.statement.ClientStatement;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of ClientStatement.Info call on sending path - lines are written to log_info_jmh in working directory
+ * Default overflow policy (BLOCK) is measured, so throughput is limited by flusher thread
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dcommunicator.log.maxFileSize=67108864", "-Dcommunicator.log.maxBackups=1"})
+public class LoggingBenchmark {
+    @Setup(Level.Trial)
+    public void setUp() {
+        ClientStatement.useLogName("jmh"); // before first use of ClientStatement - it is part of log file name
+    }
+
+    @Benchmark
+    public void info() {
+        ClientStatement.Info("Message to server: Hello everyone, are we meeting at 6 pm today?");
+    }
+}
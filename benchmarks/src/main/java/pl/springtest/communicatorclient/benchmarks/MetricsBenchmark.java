@@ -0,0 +1,129 @@
+package pl.springtest.communicatorclient.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.FrameDecoder;
+import pl.springtest.communicatorclient.toServerConnection.MessageEncoder;
+import pl.springtest.communicatorclient.toServerConnection.ServerMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording metrics (see ClientMetrics):
+ * - single recordings - counter, histogram, all metrics of one written batch (with System.nanoTime calls)
+ * - writeBatch and readFrames with metrics turned on and off - the same code in JVMs with different communicator.metrics
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    public static final int MESSAGES_PER_BATCH = 16;
+    public static final int FRAMES_PER_READ = 8;
+    private static final String MESSAGE = "did you push the fix for the login bug? build is green again";
+
+    private final List<String> batch = new ArrayList<String>();
+    private MessageEncoder messageEncoder;
+    private FrameDecoder frameDecoder;
+    private ReplayChannel serverChannel;
+    private final DiscardChannel discardChannel = new DiscardChannel();
+    private long value = 0;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < MESSAGES_PER_BATCH; i++)
+            batch.add(MESSAGE);
+        messageEncoder = new MessageEncoder("Adam", "Group123");
+        frameDecoder = new FrameDecoder();
+        ByteBuffer frames = ByteBuffer.allocate(FRAMES_PER_READ * 256);
+        for (int i = 0; i < FRAMES_PER_READ; i++)
+            messageEncoder.encode(MESSAGE, ExtraInfo.NO_INFO, frames);
+        serverChannel = new ReplayChannel(Arrays.copyOf(frames.array(), frames.position()));
+    }
+
+    @Benchmark
+    public void counterIncrement() {
+        ClientMetrics.FLUSHES.increment();
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        value = (value + 997) & 0xFFFFF; // different buckets, up to 1 ms
+        ClientMetrics.ENCODE_NANOS.record(value);
+    }
+
+    /**
+     * Everything recorded for one written batch: two System.nanoTime calls, three counters and histogram
+     */
+    @Benchmark
+    public void recordSentBatch() {
+        long start = System.nanoTime();
+        ClientMetrics.recordSent(MESSAGES_PER_BATCH, 1400, System.nanoTime() - start);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcommunicator.metrics=true")
+    public void writeBatchMetricsOn() throws IOException {
+        messageEncoder.writeBatch(batch, ExtraInfo.NO_INFO, discardChannel, 64 * 1024);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcommunicator.metrics=false")
+    public void writeBatchMetricsOff() throws IOException {
+        messageEncoder.writeBatch(batch, ExtraInfo.NO_INFO, discardChannel, 64 * 1024);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_READ)
+    @Fork(value = 1, jvmArgsAppend = "-Dcommunicator.metrics=true")
+    public List<ServerMessage> readFramesMetricsOn() throws IOException {
+        return frameDecoder.readFrames(serverChannel);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_READ)
+    @Fork(value = 1, jvmArgsAppend = "-Dcommunicator.metrics=false")
+    public List<ServerMessage> readFramesMetricsOff() throws IOException {
+        return frameDecoder.readFrames(serverChannel);
+    }
+
+    /**
+     * Channel which drops written bytes - stands for socket which accepts everything at once
+     */
+    private static class DiscardChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer source) {
+            int written = source.remaining();
+            source.position(source.limit());
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
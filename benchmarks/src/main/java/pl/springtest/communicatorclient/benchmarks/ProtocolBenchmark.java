@@ -0,0 +1,112 @@
+package pl.springtest.communicatorclient.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.springtest.communicatorclient.toServerConnection.BinaryFraming;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.FrameDecoder;
+import pl.springtest.communicatorclient.toServerConnection.MessageEncoder;
+import pl.springtest.communicatorclient.toServerConnection.ServerMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of frames for different payload sizes, in text and binary framing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+    public static final int FRAMES_PER_READ = 8;
+    private static final String TEXT = "Hello everyone, are we meeting at 6 pm today? Zażółć gęślą jaźń. ";
+
+    @Param({"16", "256", "4096"})
+    public int payloadSize;
+
+    @Param({"TEXT", "BINARY"})
+    public String framing;
+
+    private String payload;
+    private char[] frame;
+    private final ServerMessage messageView = new ServerMessage();
+    private MessageEncoder messageEncoder;
+    private ByteBuffer encodeBuffer;
+    private FrameDecoder frameDecoder;
+    private ReplayChannel serverChannel;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder payloadBuilder = new StringBuilder(payloadSize);
+        while (payloadBuilder.length() < payloadSize)
+            payloadBuilder.append(TEXT);
+        payload = payloadBuilder.substring(0, payloadSize);
+        frame = ("VERSION_INFO:1.0.0;CLIENT_NAME:Adam;GROUP_ID:Group123;EXTRA:;MESSAGE:" + payload).toCharArray();
+
+        messageEncoder = new MessageEncoder("Adam", "Group123");
+        frameDecoder = new FrameDecoder();
+        if (framing.equals("BINARY")) {
+            messageEncoder.useBinaryFraming(1, 2);
+            // server defines IDs once - before measured reads
+            ByteBuffer definitions = ByteBuffer.allocate(64);
+            putDefinition(definitions, 1, BinaryFraming.KIND_CLIENT_NAME, "Adam");
+            putDefinition(definitions, 2, BinaryFraming.KIND_GROUP, "Group123");
+            frameDecoder.readFrames(new ReplayChannel(Arrays.copyOf(definitions.array(), definitions.position())));
+        }
+        encodeBuffer = ByteBuffer.allocateDirect(payloadSize * 3 + 256);
+
+        // frames from server have the same format as frames to server
+        ByteBuffer frames = ByteBuffer.allocate(FRAMES_PER_READ * encodeBuffer.capacity());
+        for (int i = 0; i < FRAMES_PER_READ; i++)
+            messageEncoder.encode(payload, ExtraInfo.NO_INFO, frames);
+        serverChannel = new ReplayChannel(Arrays.copyOf(frames.array(), frames.position()));
+    }
+
+    private static void putDefinition(ByteBuffer target, int id, int kind, String text) {
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        target.put((byte) BinaryFraming.DEFINITION_TYPE);
+        BinaryFraming.putVarint(target, id);
+        BinaryFraming.putVarint(target, kind);
+        BinaryFraming.putVarint(target, textBytes.length);
+        target.put(textBytes);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        encodeBuffer.clear();
+        messageEncoder.encode(payload, ExtraInfo.NO_INFO, encodeBuffer);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_READ)
+    public List<ServerMessage> readFrames() throws IOException {
+        return frameDecoder.readFrames(serverChannel);
+    }
+
+    /**
+     * Parsing of fields of decoded text frame to reused view (part of readFrames in TEXT framing, not used in BINARY framing)
+     */
+    @Benchmark
+    public ServerMessage parseTextFrame() {
+        messageView.parseTextFrame(frame, 0, frame.length);
+        return messageView;
+    }
+}
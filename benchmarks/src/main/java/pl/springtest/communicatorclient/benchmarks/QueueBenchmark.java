@@ -0,0 +1,84 @@
+package pl.springtest.communicatorclient.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.springtest.communicatorclient.messages.BoundedMessageQueue;
+import pl.springtest.communicatorclient.messages.QueueOverflowPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off of messages to server between threads: 3 producers (like ReadInput) and 1 consumer (like TransmitConnection)
+ * "queue" - BoundedMessageQueue used by MessageHandler; "synchronizedList" - previous design (ArrayList + synchronized + copy)
+ * Producer operations include offers rejected because queue was full
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+    private static final String MESSAGE = "Hello everyone";
+    private static final int CAPACITY = 16 * 1024;
+
+    @State(Scope.Group)
+    public static class SharedQueue {
+        final BoundedMessageQueue<String> queue = new BoundedMessageQueue<String>(CAPACITY, QueueOverflowPolicy.FAIL);
+        final List<String> synchronizedList = new ArrayList<String>();
+    }
+
+    @State(Scope.Thread)
+    public static class ConsumerBuffer {
+        final List<String> drained = new ArrayList<String>(CAPACITY);
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(3)
+    public boolean queueProduce(SharedQueue shared) {
+        return shared.queue.offer(MESSAGE);
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public int queueDrain(SharedQueue shared, ConsumerBuffer buffer) {
+        buffer.drained.clear();
+        return shared.queue.drainTo(buffer.drained);
+    }
+
+    @Benchmark
+    @Group("synchronizedList")
+    @GroupThreads(3)
+    public boolean synchronizedListProduce(SharedQueue shared) {
+        synchronized (shared.synchronizedList) {
+            if (shared.synchronizedList.size() >= CAPACITY)
+                return false;
+            return shared.synchronizedList.add(MESSAGE);
+        }
+    }
+
+    @Benchmark
+    @Group("synchronizedList")
+    @GroupThreads(1)
+    public List<String> synchronizedListDrain(SharedQueue shared) {
+        List<String> copy = new ArrayList<String>();
+        synchronized (shared.synchronizedList) {
+            for (String message : shared.synchronizedList)
+                copy.add(message);
+            shared.synchronizedList.clear();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,38 @@
+package pl.springtest.communicatorclient.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Channel which returns the same bytes by every read - stands for socket receiving constant traffic
+ */
+public class ReplayChannel implements ReadableByteChannel {
+    private final ByteBuffer data;
+
+    /**
+     * @param data - bytes returned by every read
+     */
+    public ReplayChannel(byte[] data) {
+        this.data = ByteBuffer.allocateDirect(data.length);
+        this.data.put(data).flip();
+    }
+
+    @Override
+    public int read(ByteBuffer target) {
+        ByteBuffer chunk = data.duplicate();
+        if (chunk.remaining() > target.remaining())
+            chunk.limit(target.remaining());
+        int read = chunk.remaining();
+        target.put(chunk);
+        return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
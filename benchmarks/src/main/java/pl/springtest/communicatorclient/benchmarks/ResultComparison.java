@@ -0,0 +1,79 @@
+package pl.springtest.communicatorclient.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare two JMH results saved as CSV (-rf csv -rff file.csv)
+ * Usage: java -cp benchmarks.jar pl.springtest.communicatorclient.benchmarks.ResultComparison baseline.csv current.csv
+ * Benchmarks are matched by name, mode, threads and parameters; secondary results (eg. gc.alloc.rate.norm) are compared too
+ */
+public class ResultComparison {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ResultComparison baseline.csv current.csv");
+            return;
+        }
+        Map<String, String[]> baseline = readResults(args[0]);
+        Map<String, String[]> current = readResults(args[1]);
+
+        System.out.println(String.format("%-90s %14s %14s %9s  %s", "Benchmark", "Baseline", "Current", "Change", "Unit"));
+        for (Map.Entry<String, String[]> result : current.entrySet()) {
+            String[] baselineResult = baseline.get(result.getKey());
+            double currentScore = Double.parseDouble(result.getValue()[0]);
+            if (baselineResult == null) {
+                System.out.println(String.format("%-90s %14s %14.3f %9s  %s", result.getKey(), "-", currentScore, "new", result.getValue()[1]));
+                continue;
+            }
+            double baselineScore = Double.parseDouble(baselineResult[0]);
+            String change = baselineScore == 0 ? "-" : String.format("%+.1f%%", (currentScore - baselineScore) / baselineScore * 100);
+            System.out.println(String.format("%-90s %14.3f %14.3f %9s  %s", result.getKey(), baselineScore, currentScore, change, result.getValue()[1]));
+        }
+    }
+
+    /**
+     * Read CSV file of JMH
+     * @return key (benchmark, mode, threads, parameters) -> score and unit
+     */
+    private static Map<String, String[]> readResults(String fileName) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8);
+        Map<String, String[]> results = new LinkedHashMap<String, String[]>();
+        List<String> header = parseLine(lines.get(0));
+
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> columns = parseLine(line);
+            if (columns.size() < 7)
+                continue;
+            StringBuilder key = new StringBuilder(columns.get(0)).append(" ").append(columns.get(1)).append(" t").append(columns.get(2));
+            for (int i = 7; i < columns.size() && i < header.size(); i++)
+                if (!columns.get(i).isEmpty())
+                    key.append(" ").append(header.get(i).replace("Param: ", "")).append("=").append(columns.get(i));
+            results.put(key.toString(), new String[] {columns.get(4), columns.get(6)});
+        }
+        return results;
+    }
+
+    private static List<String> parseLine(String line) {
+        List<String> columns = new ArrayList<String>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"')
+                quoted = !quoted;
+            else if (c == ',' && !quoted) {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else
+                column.append(c);
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+}
@@ -1,7 +1,11 @@
 package pl.springtest.communicatorclient;
 
+import pl.springtest.communicatorclient.bench.LoadGenerator;
+import pl.springtest.communicatorclient.bench.WorkerFootprint;
+import pl.springtest.communicatorclient.client.CommunicatorClient;
 import pl.springtest.communicatorclient.statement.ClientStatement;
 import pl.springtest.communicatorclient.toServerConnection.Connection;
+import pl.springtest.communicatorclient.workers.WorkerExecutors;
 
 import java.io.IOException;
 
@@ -11,11 +15,33 @@ import java.io.IOException;
  * Communicator application
  * args[0] - user name
  * args[1] - group ID
+ * Server is communicator.host:communicator.port (system properties, default localhost:1234 - see CommunicatorClient)
+ * or benchmark mode (see LoadGenerator for options):
+ * args[0] - "--bench"
+ * or footprint mode - memory and threads of many idle connections (see WorkerFootprint for options):
+ * args[0] - "--footprint"
  */
 public class CommunicatorClientApplication {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--bench")) {
+            ClientStatement.useLogName("bench");
+            LoadGenerator.run(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--footprint")) {
+            ClientStatement.useLogName("footprint");
+            WorkerFootprint.run(args);
+            return;
+        }
         if (args.length < 2)
             ClientStatement.Error("Application needs to 2 arguments: User name and Group ID: eg. CommunicatorClient MyName MyGroupID", ClientStatement.DO_EXIT);
-        Connection serverConnection = new Connection("localhost", 1234, args[0], args[1]);
+        ClientStatement.useLogName(args[0]); // before WorkerExecutors.getDefault - it can already log
+        Connection serverConnection = new Connection(CommunicatorClient.builder().clientName(args[0]).groupId(args[1]),
+                WorkerExecutors.getDefault(), System.in, System.out);
+        try {
+            serverConnection.join(); // virtual threads are daemon threads - main thread keeps application running
+        } catch (InterruptedException e) {
+            ClientStatement.Error("InterruptedException - main thread occurred.", ClientStatement.NO_EXIT);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package pl.springtest.communicatorclient.bench;
+
+import pl.springtest.communicatorclient.toServerConnection.FrameCompression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build preset dictionary of compression (communicator.compression.dictionary) from samples:
+ * one message per line, lines of info log are accepted too (only text after "Message to server: " is taken)
+ * Arguments: samples file, dictionary file
+ */
+public class DictionaryTrainer {
+    private static final String LOG_MARKER = "Message to server: ";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Arguments: <samples file> <dictionary file>");
+            return;
+        }
+        List<String> samples = new ArrayList<String>();
+        for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            int markerIndex = line.indexOf(LOG_MARKER);
+            samples.add(markerIndex == -1 ? line : line.substring(markerIndex + LOG_MARKER.length()));
+        }
+        byte[] dictionary = FrameCompression.buildDictionary(samples, FrameCompression.MAX_DICTIONARY_SIZE);
+        Path dictionaryPath = Files.write(Paths.get(args[1]), dictionary);
+        System.out.println("Dictionary " + dictionaryPath + ": " + dictionary.length + " B from " + samples.size()
+                + " samples, ID " + FrameCompression.dictionaryId(dictionary));
+    }
+}
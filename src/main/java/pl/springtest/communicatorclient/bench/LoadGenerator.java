@@ -0,0 +1,186 @@
+package pl.springtest.communicatorclient.bench;
+
+import pl.springtest.communicatorclient.metrics.LatencyHistogram;
+import pl.springtest.communicatorclient.sessions.Session;
+import pl.springtest.communicatorclient.sessions.SessionEngine;
+import pl.springtest.communicatorclient.sessions.SessionListener;
+import pl.springtest.communicatorclient.statement.ClientStatement;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Benchmark mode - generates load on server with many synthetic senders in one JVM
+ * Every sender is a session (real LOGIN, message and LOGOUT frames) in one of groups "bench-group-<number>"
+ * Payload of message is time when message should be sent, so every receiver in group measures end-to-end latency
+ * (scheduled time is used, not actual - delays of sender are also visible in latency)
+ * Options (all optional):
+ * --host localhost --port 1234 --senders 100 --groups 10 --rate 1000 (messages/s of all senders)
+ * --duration 30 (seconds) --warmup 5 (seconds, not measured)
+ */
+public class LoadGenerator implements SessionListener {
+    private static final String PAYLOAD_PREFIX = "BENCH ";
+    private static final String PAYLOAD_MARKER = ": " + PAYLOAD_PREFIX;
+
+    private String host = "localhost";
+    private int port = 1234;
+    private int senders = 100;
+    private int groups = 10;
+    private long rate = 1000;
+    private long durationSeconds = 30;
+    private long warmupSeconds = 5;
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong sendErrors = new AtomicLong();
+    private final AtomicLong unexpectedCloses = new AtomicLong();
+    private volatile boolean closing = false;
+    private CountDownLatch connectedSessions;
+
+    /**
+     * Run benchmark and print report to System.out
+     * @param args - arguments of application, first one is "--bench"
+     */
+    public static void run(String[] args) {
+        LoadGenerator loadGenerator = new LoadGenerator();
+        loadGenerator.parseOptions(args);
+        try {
+            loadGenerator.runBenchmark();
+        } catch (IOException e) {
+            ClientStatement.Error("IOException occurred in benchmark: " + e.getMessage(), ClientStatement.DO_EXIT);
+        } catch (InterruptedException e) {
+            ClientStatement.Error("InterruptedException - benchmark occurred.", ClientStatement.DO_EXIT);
+        }
+    }
+
+    private void parseOptions(String[] args) {
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 >= args.length)
+                ClientStatement.Error("Benchmark option " + args[i] + " has no value", ClientStatement.DO_EXIT);
+            String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                    case "--host": host = value; break;
+                    case "--port": port = Integer.parseInt(value); break;
+                    case "--senders": senders = Integer.parseInt(value); break;
+                    case "--groups": groups = Integer.parseInt(value); break;
+                    case "--rate": rate = Long.parseLong(value); break;
+                    case "--duration": durationSeconds = Long.parseLong(value); break;
+                    case "--warmup": warmupSeconds = Long.parseLong(value); break;
+                    default: ClientStatement.Error("Unknown benchmark option: " + args[i], ClientStatement.DO_EXIT);
+                }
+            } catch (NumberFormatException e) {
+                ClientStatement.Error("Benchmark option " + args[i] + " needs number, not: " + value, ClientStatement.DO_EXIT);
+            }
+        }
+        if (senders < 1 || groups < 1 || rate < 1 || durationSeconds < 1 || warmupSeconds < 0)
+            ClientStatement.Error("Benchmark options have to be positive numbers", ClientStatement.DO_EXIT);
+    }
+
+    private void runBenchmark() throws IOException, InterruptedException {
+        System.out.println("Benchmark: " + host + ":" + port + ", senders: " + senders + ", groups: " + groups
+                + ", rate: " + rate + " msg/s, duration: " + durationSeconds + " s, warm-up: " + warmupSeconds + " s");
+
+        long heapBefore = usedHeap();
+        SessionEngine sessionEngine = new SessionEngine();
+        Session[] sessions = new Session[senders];
+        connectedSessions = new CountDownLatch(senders);
+        for (int i = 0; i < senders; i++)
+            sessions[i] = sessionEngine.openSession(host, port, "bench-" + i, "bench-group-" + (i % groups), this);
+        if (!connectedSessions.await(30, TimeUnit.SECONDS))
+            System.out.println("Not all sessions connected in 30 s - connected: " + (senders - connectedSessions.getCount()));
+        long heapPerSession = (usedHeap() - heapBefore) / senders;
+        System.out.println("Sessions: " + sessionEngine.getSessionCount() + ", event loops: " + sessionEngine.getEventLoopCount()
+                + ", threads: " + Thread.activeCount() + ", heap per session: " + heapPerSession + " B");
+
+        sendMessages(sessions, TimeUnit.SECONDS.toNanos(warmupSeconds));
+        latencyHistogram.reset();
+        receivedMessages.set(0);
+        sendErrors.set(0);
+
+        long startTime = System.nanoTime();
+        long sentMessages = sendMessages(sessions, TimeUnit.SECONDS.toNanos(durationSeconds));
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        Thread.sleep(500); // messages still on the way
+        long received = receivedMessages.get();
+
+        closing = true;
+        sessionEngine.close();
+        printReport(sentMessages, received, elapsedSeconds);
+    }
+
+    /**
+     * Send messages with constant rate - senders in turn
+     * @param sessions - senders
+     * @param durationNanos - time of sending
+     * @return number of sent messages
+     */
+    private long sendMessages(Session[] sessions, long durationNanos) {
+        long intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / rate);
+        long now = System.nanoTime();
+        long endTime = now + durationNanos;
+        long nextSendTime = now;
+        long sentMessages = 0;
+        int sender = 0;
+
+        while (now < endTime) {
+            while (nextSendTime <= now) {
+                if (sessions[sender].send(PAYLOAD_PREFIX + nextSendTime))
+                    sentMessages++;
+                else
+                    sendErrors.incrementAndGet();
+                sender = (sender + 1) % sessions.length;
+                nextSendTime += intervalNanos;
+            }
+            LockSupport.parkNanos(Math.min(nextSendTime - now, TimeUnit.MILLISECONDS.toNanos(1)));
+            now = System.nanoTime();
+        }
+        return sentMessages;
+    }
+
+    private void printReport(long sentMessages, long received, double elapsedSeconds) {
+        System.out.println(String.format("Sent: %d (%.0f msg/s), received: %d (%.0f msg/s, fan-out included)",
+                sentMessages, sentMessages / elapsedSeconds, received, received / elapsedSeconds));
+        System.out.println(String.format("Latency end-to-end [us]: p50: %.1f, p99: %.1f, p99.9: %.1f, max: %.1f",
+                latencyHistogram.getValueAtPercentile(50) / 1e3, latencyHistogram.getValueAtPercentile(99) / 1e3,
+                latencyHistogram.getValueAtPercentile(99.9) / 1e3, latencyHistogram.getMaxValue() / 1e3));
+        System.out.println("Errors: send rejected: " + sendErrors.get() + ", sessions closed: " + unexpectedCloses.get()
+                + ", sessions not connected: " + connectedSessions.getCount());
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Override
+    public void onConnected(Session session) {
+        connectedSessions.countDown();
+    }
+
+    @Override
+    public void onMessage(Session session, String message) {
+        int markerIndex = message.indexOf(PAYLOAD_MARKER);
+        if (markerIndex == -1)
+            return; // eg. LOGIN of other sender
+        try {
+            long sendTime = Long.parseLong(message.substring(markerIndex + PAYLOAD_MARKER.length()));
+            latencyHistogram.record(System.nanoTime() - sendTime);
+            receivedMessages.incrementAndGet();
+        } catch (NumberFormatException e) {
+            ; // not benchmark message
+        }
+    }
+
+    @Override
+    public void onClosed(Session session, String reason) {
+        if (!closing) {
+            unexpectedCloses.incrementAndGet();
+            ClientStatement.Info("Benchmark session " + session.getClientName() + " closed: " + reason);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package pl.springtest.communicatorclient.bench;
+
+import pl.springtest.communicatorclient.messages.BoundedMessageQueue;
+import pl.springtest.communicatorclient.messages.QueueOverflowPolicy;
+import pl.springtest.communicatorclient.statement.ClientStatement;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.FrameDecoder;
+import pl.springtest.communicatorclient.toServerConnection.MessageEncoder;
+import pl.springtest.communicatorclient.workers.WorkerExecutor;
+import pl.springtest.communicatorclient.workers.WorkerExecutors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Footprint mode - memory and threads of many idle console connections in one JVM
+ * Every session has socket to server (real LOGIN frame, own group - no fan-out) and five workers started by WorkerExecutor,
+ * which block the same way as workers of CommunicatorClient and MessageHandler:
+ * - ReadConnection - socket read by FrameDecoder
+ * - TransmitConnection - BoundedMessageQueue.awaitNotEmpty
+ * - DeliverMessages - LockSupport.park (subscriber did not request messages)
+ * - ReadInput - Scanner.nextLine on console stream, which blocks until end of measurement
+ * - WriteOutput - Condition.await
+ * Buffers of sessions are small, so result shows mostly cost of threads
+ * Options (all optional):
+ * --host localhost --port 1234 --sessions 10000 --threads platform|virtual (default system property communicator.threads)
+ */
+public class WorkerFootprint {
+    public static final int WORKERS_PER_SESSION = 4;
+
+    private String host = "localhost";
+    private int port = 1234;
+    private int sessions = 10000;
+    private String threads = System.getProperty("communicator.threads", WorkerExecutors.PLATFORM);
+
+    private final CountDownLatch endOfMeasurement = new CountDownLatch(1);
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+    private final List<FootprintSession> openSessions = new ArrayList<FootprintSession>();
+
+    /**
+     * Run measurement and print report to System.out
+     * @param args - arguments of application, first one is "--footprint"
+     */
+    public static void run(String[] args) {
+        WorkerFootprint workerFootprint = new WorkerFootprint();
+        workerFootprint.parseOptions(args);
+        try {
+            workerFootprint.runMeasurement();
+        } catch (InterruptedException e) {
+            ClientStatement.Error("InterruptedException - footprint measurement occurred.", ClientStatement.DO_EXIT);
+        }
+    }
+
+    private void parseOptions(String[] args) {
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 >= args.length)
+                ClientStatement.Error("Footprint option " + args[i] + " has no value", ClientStatement.DO_EXIT);
+            String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                    case "--host": host = value; break;
+                    case "--port": port = Integer.parseInt(value); break;
+                    case "--sessions": sessions = Integer.parseInt(value); break;
+                    case "--threads": threads = value; break;
+                    default: ClientStatement.Error("Unknown footprint option: " + args[i], ClientStatement.DO_EXIT);
+                }
+            } catch (NumberFormatException e) {
+                ClientStatement.Error("Footprint option " + args[i] + " needs number, not: " + value, ClientStatement.DO_EXIT);
+            }
+        }
+        if (sessions < 1)
+            ClientStatement.Error("Footprint option --sessions has to be positive number", ClientStatement.DO_EXIT);
+    }
+
+    private void runMeasurement() throws InterruptedException {
+        WorkerExecutor workerExecutor = WorkerExecutors.forMode(threads);
+        boolean virtual = workerExecutor != WorkerExecutors.PLATFORM_THREADS;
+        System.out.println("Footprint: " + host + ":" + port + ", sessions: " + sessions + ", threads: "
+                + (virtual ? WorkerExecutors.VIRTUAL : WorkerExecutors.PLATFORM) + ", Java " + System.getProperty("java.version"));
+
+        long heapBefore = usedHeap();
+        long residentBefore = residentMemoryKB();
+        long startTime = System.nanoTime();
+        String failure = null;
+        try {
+            for (int i = 0; i < sessions; i++)
+                openSessions.add(new FootprintSession(i, workerExecutor));
+        } catch (IOException e) {
+            failure = "IOException: " + e.getMessage();
+        } catch (OutOfMemoryError e) {
+            failure = "OutOfMemoryError: " + e.getMessage(); // no more native threads
+        }
+        double startSeconds = (System.nanoTime() - startTime) / 1e9;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (runningWorkers.get() < openSessions.size() * WORKERS_PER_SESSION && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        Thread.sleep(1000); // workers reach their blocking calls
+
+        int opened = openSessions.size();
+        long residentDelta = residentMemoryKB() - residentBefore;
+        long heapDelta = usedHeap() - heapBefore;
+        if (failure != null)
+            System.out.println("Stopped after " + opened + " sessions - " + failure);
+        System.out.println(String.format("Sessions: %d, running workers: %d, started in %.2f s", opened, runningWorkers.get(), startSeconds));
+        System.out.println("Platform threads: " + ManagementFactory.getThreadMXBean().getThreadCount()
+                + ", OS threads of process: " + statusField("Threads:"));
+        if (opened > 0)
+            System.out.println(String.format("Resident memory: +%d MB (%.1f KB per session), heap: +%d MB (%.1f KB per session)",
+                    residentDelta / 1024, (double) residentDelta / opened, heapDelta >> 20, heapDelta / 1024.0 / opened));
+
+        endOfMeasurement.countDown();
+        for (FootprintSession session : openSessions)
+            session.close();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return resident set size of process in KB (Linux), 0 if it is not known
+     */
+    private static long residentMemoryKB() {
+        String vmRSS = statusField("VmRSS:");
+        try {
+            return Long.parseLong(vmRSS.replace("kB", "").trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param name - name of field of /proc/self/status with ":"
+     * @return value of field, "n/a" if it can not be read (not Linux)
+     */
+    private static String statusField(String name) {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8))
+                if (line.startsWith(name))
+                    return line.substring(name.length()).trim();
+        } catch (IOException e) {
+            ; // not Linux
+        }
+        return "n/a";
+    }
+
+    /**
+     * Console stream of session - nothing is typed until end of measurement
+     */
+    private class IdleConsole extends InputStream {
+        @Override
+        public int read() throws IOException {
+            try {
+                endOfMeasurement.await();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted", e);
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Connected session with its five blocked workers
+     */
+    private class FootprintSession {
+        private final SocketChannel channel;
+        private final BoundedMessageQueue<String> messagesToServer = new BoundedMessageQueue<String>(16, QueueOverflowPolicy.FAIL);
+        private final ReentrantLock messagesFromServerLock = new ReentrantLock();
+        private final Condition messagesFromServerAdded = messagesFromServerLock.newCondition();
+        private volatile Thread deliverThread = null;
+        private volatile boolean closed = false;
+
+        FootprintSession(int number, WorkerExecutor workerExecutor) throws IOException {
+            String name = "footprint-" + number;
+            channel = SocketChannel.open(new InetSocketAddress(host, port));
+            new MessageEncoder(name, name).write("LOGIN", ExtraInfo.NEW_CONNECTION, channel);
+
+            startWorker(workerExecutor, "ReadConnection - " + name, this::readConnection);
+            startWorker(workerExecutor, "TransmitConnection - " + name, this::transmitConnection);
+            startWorker(workerExecutor, "DeliverMessages - " + name, this::deliverMessages);
+            startWorker(workerExecutor, "ReadInput - " + name, this::readInput);
+            startWorker(workerExecutor, "WriteOutput - " + name, this::writeOutput);
+        }
+
+        private void startWorker(WorkerExecutor workerExecutor, String name, Runnable worker) {
+            workerExecutor.start(name, () -> {
+                runningWorkers.incrementAndGet();
+                try {
+                    worker.run();
+                } finally {
+                    runningWorkers.decrementAndGet();
+                }
+            });
+        }
+
+        private void readConnection() {
+            FrameDecoder frameDecoder = new FrameDecoder(256);
+            try {
+                while (frameDecoder.readFrames(channel) != null)
+                    ;
+            } catch (IOException e) {
+                ; // socket closed at end of measurement
+            }
+        }
+
+        private void transmitConnection() {
+            while (!closed) {
+                messagesToServer.awaitNotEmpty(Long.MAX_VALUE);
+                messagesToServer.drainTo(new ArrayList<String>());
+            }
+        }
+
+        private void deliverMessages() {
+            deliverThread = Thread.currentThread();
+            while (!closed)
+                LockSupport.park(this);
+        }
+
+        private void readInput() {
+            Scanner input = new Scanner(new IdleConsole());
+            try {
+                while (!closed)
+                    messagesToServer.add(input.nextLine());
+            } catch (NoSuchElementException e) {
+                ; // end of measurement
+            }
+        }
+
+        private void writeOutput() {
+            messagesFromServerLock.lock();
+            try {
+                while (!closed)
+                    messagesFromServerAdded.await();
+            } catch (InterruptedException e) {
+                ; // end of measurement
+            } finally {
+                messagesFromServerLock.unlock();
+            }
+        }
+
+        void close() {
+            closed = true;
+            messagesToServer.close();
+            Thread deliverer = deliverThread;
+            if (deliverer != null)
+                LockSupport.unpark(deliverer);
+            messagesFromServerLock.lock();
+            try {
+                messagesFromServerAdded.signal();
+            } finally {
+                messagesFromServerLock.unlock();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                ; // already closed
+            }
+        }
+    }
+}
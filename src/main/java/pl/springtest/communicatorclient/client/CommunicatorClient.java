@@ -0,0 +1,641 @@
+package pl.springtest.communicatorclient.client;
+
+import pl.springtest.communicatorclient.messages.GroupQueues;
+import pl.springtest.communicatorclient.messages.QueueOverflowPolicy;
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+import pl.springtest.communicatorclient.metrics.MetricsScope;
+import pl.springtest.communicatorclient.statement.ClientStatement;
+import pl.springtest.communicatorclient.toServerConnection.ClientSocketHandler;
+import pl.springtest.communicatorclient.toServerConnection.ConnectionSettings;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.GroupRegistry;
+import pl.springtest.communicatorclient.toServerConnection.InboundMessage;
+import pl.springtest.communicatorclient.workers.WorkerExecutor;
+import pl.springtest.communicatorclient.workers.WorkerExecutors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Client of communicator for services - connection to server without console (console application is built on it,
+ * see Connection)
+ * Created by Builder, connected at once:
+ * - send - message is queued for its group and sent by TransmitConnection worker; future completes when message
+ *   was written to socket or stored in spool (messages to login group - they are sent after reconnect),
+ *   it fails when message can not be sent; futures are completed by CompleteSends worker in order of sending,
+ *   so dependent actions never stop TransmitConnection worker - they can call send or close, but must not wait
+ *   for other send futures
+ * - subscribe - messages from server are delivered to one subscriber by DeliverMessages worker, only as many as subscriber
+ *   requested; not requested messages wait in queue of their group (groups in round robin), the oldest ones are
+ *   dropped when it is full (communicator.inbound.capacity) - slow subscriber never stops reading from socket,
+ *   so heartbeats are still answered
+ * - close - queued messages are sent, then LOGOUT; subscriber gets onComplete (onError when connection was lost
+ *   and it could not be established again)
+ * Settings (system properties):
+ * - communicator.host, communicator.port - default address of server (default localhost:1234)
+ * - communicator.queue.capacity, communicator.queue.overflow - queue of messages to server of every group
+ *   (default 16K messages, FAIL - future of message fails when queue is full; BLOCK - send waits for place in queue)
+ * - communicator.inbound.capacity - queue of not delivered messages from server of every group (default 16K messages)
+ * - communicator.queue.quantum - messages of one group taken at once (default 256)
+ * - communicator.close.timeoutMillis - how long close waits for queued messages (default 5 s)
+ * Log files and metrics are shared by clients of one process - log files are named by the first client
+ * (see ClientStatement.useLogName), only gauges (eg. sendQueueDepth) belong to client - they have its prefix
+ * (see MetricsScope) and close removes them
+ * Errors of client (eg. lost connection) are written to error log, not to System.out - application can show them
+ * by ClientStatement.setWarningListener
+ */
+public class CommunicatorClient implements Flow.Publisher<InboundMessage>, AutoCloseable {
+    public static final String DEFAULT_HOST = System.getProperty("communicator.host", "localhost");
+    public static final int DEFAULT_PORT = Integer.getInteger("communicator.port", 1234);
+    public static final int MESSAGES_TO_SERVER_CAPACITY = Integer.getInteger("communicator.queue.capacity", 16 * 1024);
+    public static final QueueOverflowPolicy MESSAGES_TO_SERVER_OVERFLOW_POLICY =
+            QueueOverflowPolicy.valueOf(System.getProperty("communicator.queue.overflow", QueueOverflowPolicy.FAIL.name()));
+    public static final int MESSAGES_FROM_SERVER_CAPACITY = Integer.getInteger("communicator.inbound.capacity", 16 * 1024);
+    public static final int QUEUE_QUANTUM = Integer.getInteger("communicator.queue.quantum", 256);
+    public static final long CLOSE_TIMEOUT_MILLIS = Long.getLong("communicator.close.timeoutMillis", 5000);
+
+    private final MetricsScope metrics;
+    private final ClientSocketHandler clientSocket;
+    private final GroupQueues<OutboundMessage> messagesToServer;
+    private final GroupQueues<InboundMessage> messagesFromServer;
+    private final Map<Integer, CompletableFuture<Void>> pendingJoins = new ConcurrentHashMap<Integer, CompletableFuture<Void>>();
+    private final Queue<OutboundMessage> sentMessages = new ConcurrentLinkedQueue<OutboundMessage>(); // futures to complete
+    private final Thread transmitThread;
+    private final Thread completeThread;
+    private final Thread readThread;
+    private final Thread deliverThread;
+    private volatile InboundSubscription subscription = null;
+    private boolean delivered = false; // DeliverMessages ended, subscriber got last signal (under lock of client)
+    private volatile boolean readFinished = false;
+    private volatile boolean transmitFinished = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Message to server with its future
+     */
+    private static class OutboundMessage {
+        final String message;
+        final CompletableFuture<Void> sent = new CompletableFuture<Void>();
+        String failure = null; // why message was not sent - set by TransmitConnection before it is queued to complete
+
+        OutboundMessage(String message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * Settings of client - address of server, identity and workers
+     */
+    public static class Builder {
+        private String host = DEFAULT_HOST;
+        private int port = DEFAULT_PORT;
+        private String clientName = null;
+        private String groupId = null;
+        private WorkerExecutor workerExecutor = null; // WorkerExecutors.getDefault - resolved when client name is set
+        private int sendQueueCapacity = MESSAGES_TO_SERVER_CAPACITY;
+        private QueueOverflowPolicy sendQueueOverflowPolicy = MESSAGES_TO_SERVER_OVERFLOW_POLICY;
+
+        /**
+         * @param host - server address IP or name
+         */
+        public Builder host(String host) {
+            this.host = Objects.requireNonNull(host);
+            return this;
+        }
+
+        /**
+         * @param port - servers port to connect
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param clientName - client name which is added to messages data
+         */
+        public Builder clientName(String clientName) {
+            this.clientName = Objects.requireNonNull(clientName);
+            return this;
+        }
+
+        /**
+         * @param groupId - communicator group ID of LOGIN which is added to messages data
+         */
+        public Builder groupId(String groupId) {
+            this.groupId = Objects.requireNonNull(groupId);
+            return this;
+        }
+
+        /**
+         * @param workerExecutor - starts workers of client (default WorkerExecutors.getDefault)
+         */
+        public Builder workerExecutor(WorkerExecutor workerExecutor) {
+            this.workerExecutor = Objects.requireNonNull(workerExecutor);
+            return this;
+        }
+
+        /**
+         * @param capacity - queue of messages to server of every group (rounded up to power of 2)
+         * @param overflowPolicy - what send does when queue of group is full
+         */
+        public Builder sendQueue(int capacity, QueueOverflowPolicy overflowPolicy) {
+            if (capacity <= 0)
+                throw new IllegalArgumentException("Capacity of queue has to be positive: " + capacity);
+            this.sendQueueCapacity = capacity;
+            this.sendQueueOverflowPolicy = Objects.requireNonNull(overflowPolicy);
+            return this;
+        }
+
+        /**
+         * Connect to server and send LOGIN
+         * @return connected client
+         * @throws IOException - when connection can not be established
+         * @throws IllegalStateException - when client name or group ID was not set
+         */
+        public CommunicatorClient connect() throws IOException {
+            if (clientName == null || groupId == null)
+                throw new IllegalStateException("Client needs client name and group ID");
+            return new CommunicatorClient(this);
+        }
+    }
+
+    /**
+     * @return builder of client - address of server is DEFAULT_HOST:DEFAULT_PORT until it is set
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private CommunicatorClient(Builder builder) throws IOException {
+        ClientStatement.useLogName(builder.clientName); // only first client of application names log files
+        ClientMetrics.start(builder.clientName);
+        WorkerExecutor workerExecutor = (builder.workerExecutor != null) ? builder.workerExecutor : WorkerExecutors.getDefault();
+        metrics = ClientMetrics.REGISTRY.scope(builder.clientName);
+        try {
+            clientSocket = new ClientSocketHandler(builder.host, builder.port, builder.clientName, builder.groupId, metrics);
+        } catch (IOException e) {
+            metrics.close();
+            throw e;
+        }
+        messagesToServer = new GroupQueues<OutboundMessage>(builder.sendQueueCapacity, builder.sendQueueOverflowPolicy,
+                QUEUE_QUANTUM, dropped -> dropped.sent.completeExceptionally(
+                        new IOException("Queue of messages to server is full - message was dropped")));
+        messagesFromServer = new GroupQueues<InboundMessage>(MESSAGES_FROM_SERVER_CAPACITY, QueueOverflowPolicy.DROP_OLDEST,
+                QUEUE_QUANTUM);
+        metrics.gauge("sendQueueDepth", messagesToServer::size);
+        metrics.gauge("sendQueueHighWaterMark", messagesToServer::getHighWaterMark);
+        metrics.gauge("deliverQueueDepth", messagesFromServer::size);
+        metrics.gauge("deliverQueueLost", messagesFromServer::getLostCount);
+
+        completeThread = workerExecutor.start("Thread - CompleteSends", new CompleteSends());
+        transmitThread = workerExecutor.start("Thread - TransmitConnection", new TransmitConnection());
+        readThread = workerExecutor.start("Thread - ReadConnection", new ReadConnection());
+        deliverThread = workerExecutor.start("Thread - DeliverMessages", new DeliverMessages());
+        clientSocket.startHeartbeat(messagesToServer::wakeUp);
+    }
+
+    /**
+     * Send message to login group
+     * @param message - text of message
+     * @return future completed when message was written to socket or stored in spool,
+     *   failed when message contains line break
+     */
+    public CompletableFuture<Void> send(String message) {
+        return send(GroupRegistry.LOGIN_GROUP, message);
+    }
+
+    /**
+     * Send message to group - group has to be joined (login group or see joinGroup)
+     * @param groupId - group ID
+     * @param message - text of message
+     * @return future completed when message was written to socket, failed when group is not joined
+     *   or message contains line break
+     */
+    public CompletableFuture<Void> send(String groupId, String message) {
+        GroupRegistry groupRegistry = clientSocket.getGroupRegistry();
+        int group = groupRegistry.numberOf(groupId);
+        if (group == -1 || groupRegistry.stateOf(group) == GroupRegistry.State.LEFT)
+            return CompletableFuture.failedFuture(new IOException("Group " + groupId + " is not joined"));
+        return send(group, message);
+    }
+
+    private CompletableFuture<Void> send(int group, String message) {
+        if (hasLineBreak(Objects.requireNonNull(message)))
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Message can not contain line break"));
+        OutboundMessage outboundMessage = new OutboundMessage(message);
+        if (closed || !messagesToServer.add(group, outboundMessage)) // BLOCK policy waits here for place in queue
+            outboundMessage.sent.completeExceptionally(new IOException(closed || messagesToServer.isClosed()
+                    ? "Client is closed - message is not sent" : "Queue of messages to server is full - message is not sent"));
+        return outboundMessage.sent;
+    }
+
+    /**
+     * Text frame ends with "\n" - rest of message would be read by server as next frame with its own fields
+     * (eg. EXTRA:SHUTDOWN), and message can be sent as text frame even on connection with binary framing
+     * (spooled message after reconnect, group without binary ID)
+     * @param message - text of message
+     * @return true if message contains "\n" or "\r"
+     */
+    private static boolean hasLineBreak(String message) {
+        return message.indexOf('\n') != -1 || message.indexOf('\r') != -1;
+    }
+
+    /**
+     * Join group - its messages are delivered to subscriber, messages can be sent to it when it is joined
+     * @param groupId - group ID
+     * @return future completed when server answered JOIN
+     */
+    public CompletableFuture<Void> joinGroup(String groupId) {
+        if (closed)
+            return CompletableFuture.failedFuture(new IOException("Client is closed"));
+        GroupRegistry groupRegistry = clientSocket.getGroupRegistry();
+        int group = clientSocket.joinGroup(groupId);
+        if (groupRegistry.isJoined(group))
+            return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> joined = pendingJoins.computeIfAbsent(group, number -> new CompletableFuture<Void>());
+        if (groupRegistry.isJoined(group) || readFinished) // answer or end came before future was registered
+            completeJoins();
+        return joined;
+    }
+
+    /**
+     * Leave group joined by joinGroup - login group can not be left
+     * @param groupId - group ID
+     * @return false if group is login group or it was not joined
+     */
+    public boolean leaveGroup(String groupId) {
+        int group = clientSocket.getGroupRegistry().numberOf(groupId);
+        return group != -1 && clientSocket.leaveGroup(group);
+    }
+
+    /**
+     * Complete futures of groups which were joined - every future fails when client was closed
+     */
+    private void completeJoins() {
+        GroupRegistry groupRegistry = clientSocket.getGroupRegistry();
+        for (Map.Entry<Integer, CompletableFuture<Void>> join : pendingJoins.entrySet()) {
+            if (groupRegistry.isJoined(join.getKey()))
+                join.getValue().complete(null);
+            else if (readFinished)
+                join.getValue().completeExceptionally(new IOException("Client is closed"));
+            else if (groupRegistry.stateOf(join.getKey()) == GroupRegistry.State.LEFT)
+                join.getValue().completeExceptionally(new IOException("Group " + groupRegistry.nameOf(join.getKey()) + " was left"));
+            else
+                continue;
+            pendingJoins.remove(join.getKey(), join.getValue());
+        }
+    }
+
+    /**
+     * Deliver messages from server to subscriber - only one subscriber at once, next one can subscribe when it cancels
+     * Messages received before subscribe wait in queue (up to communicator.inbound.capacity of every group)
+     * @param subscriber - gets messages by onNext in DeliverMessages worker, as many as it requested
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super InboundMessage> subscriber) {
+        Objects.requireNonNull(subscriber);
+        InboundSubscription newSubscription = new InboundSubscription(subscriber);
+        boolean rejected;
+        synchronized (this) {
+            InboundSubscription current = subscription;
+            rejected = current != null && !current.cancelled;
+            if (!rejected) {
+                subscriber.onSubscribe(newSubscription);
+                if (delivered)
+                    newSubscription.signalEnd(clientSocket.getFailure());
+                else
+                    subscription = newSubscription;
+            }
+        }
+        if (rejected) {
+            subscriber.onSubscribe(new InboundSubscription(subscriber));
+            subscriber.onError(new IllegalStateException("Client has already subscriber"));
+        }
+        LockSupport.unpark(deliverThread);
+    }
+
+    /**
+     * Subscription of messages from server - demand is counted down by DeliverMessages worker
+     */
+    private class InboundSubscription implements Flow.Subscription {
+        final Flow.Subscriber<? super InboundMessage> subscriber;
+        final AtomicLong demand = new AtomicLong(); // Long.MAX_VALUE - without limit
+        volatile boolean cancelled = false;
+        volatile Throwable error = null; // wrong request - subscriber gets it by onError
+
+        InboundSubscription(Flow.Subscriber<? super InboundMessage> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Subscriber requested " + n + " messages");
+                cancel();
+                return;
+            }
+            long current;
+            while (!demand.compareAndSet(current = demand.get(), current + n < 0 ? Long.MAX_VALUE : current + n))
+                ;
+            LockSupport.unpark(deliverThread);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            messagesFromServer.wakeUp(); // DeliverMessages can wait for messages
+            LockSupport.unpark(deliverThread);
+        }
+
+        /**
+         * @param failure - why client was closed, null - subscriber gets onComplete
+         */
+        void signalEnd(Throwable failure) {
+            if (failure != null)
+                subscriber.onError(failure);
+            else
+                subscriber.onComplete();
+        }
+    }
+
+    /**
+     * Worker sending messages to server
+     * Sleeps until there is something to send or heartbeat is due - it does not wait for ReadConnection worker
+     * Single message is sent at once; when many messages came together, worker waits a moment
+     * (ConnectionSettings.lingerMillis) for next ones, so they are sent by the same write
+     * Every batch has messages of one group - groups are sent in round robin
+     */
+    private class TransmitConnection implements Runnable {
+        private final List<OutboundMessage> batch = new ArrayList<OutboundMessage>();
+        private final List<String> batchMessages = new ArrayList<String>();
+
+        @Override
+        public void run() {
+            while (!clientSocket.isClosed() && !(closed && messagesToServer.isEmpty())) {
+                messagesToServer.awaitNotEmpty(Long.MAX_VALUE);
+                int group = messagesToServer.drainNext(batch);
+                clientSocket.sendDueHeartbeat();
+                if (group == -1)
+                    continue;
+
+                if (batch.size() > 1 && ConnectionSettings.lingerMillis > 0)
+                    lingerForMessagesToServer(group);
+                for (OutboundMessage outboundMessage : batch)
+                    batchMessages.add(outboundMessage.message);
+                int sent = clientSocket.sendMessagesToServer(batchMessages, ExtraInfo.NO_INFO, group);
+                completeBatch(sent, clientSocket.getGroupRegistry().isJoined(group)
+                        ? "Connection to server was lost - message is not sent"
+                        : "Group " + clientSocket.getGroupRegistry().nameOf(group) + " is not joined - message is not sent");
+            }
+            messagesToServer.close();
+            while (messagesToServer.drainNext(batch) != -1)
+                completeBatch(0, "Client is closed - message is not sent");
+            transmitFinished = true;
+            LockSupport.unpark(completeThread); // it ends when all futures are completed
+            ClientStatement.Info("End of TransmitConnection thread");
+        }
+
+        /**
+         * Add messages of group which come during linger time to batch, until batch is big enough
+         * or other group has messages
+         * @param group - number of group of batch
+         */
+        private void lingerForMessagesToServer(int group) {
+            long batchChars = 0;
+            for (OutboundMessage outboundMessage : batch)
+                batchChars += outboundMessage.message.length();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ConnectionSettings.lingerMillis);
+
+            while (batchChars < ConnectionSettings.maxBatchBytes) {
+                long waitNanos = deadline - System.nanoTime();
+                if (waitNanos <= 0)
+                    break;
+                int batchSize = batch.size();
+                messagesToServer.awaitNotEmpty(waitNanos);
+                if (messagesToServer.drainGroup(group, batch) == 0)
+                    break;
+                for (int i = batchSize; i < batch.size(); i++)
+                    batchChars += batch.get(i).message.length();
+            }
+        }
+
+        /**
+         * Pass messages of batch to CompleteSends worker - actions of futures do not run in this worker
+         * @param sent - number of first messages of batch which were sent
+         * @param reason - why other messages were not sent
+         */
+        private void completeBatch(int sent, String reason) {
+            for (int i = sent; i < batch.size(); i++)
+                batch.get(i).failure = reason;
+            sentMessages.addAll(batch);
+            LockSupport.unpark(completeThread);
+            batch.clear();
+            batchMessages.clear();
+        }
+    }
+
+    /**
+     * Worker completing futures of messages handled by TransmitConnection
+     * Dependent actions of futures run here - when they call send and queue of group is full (BLOCK policy),
+     * only this worker waits, TransmitConnection still empties queues
+     */
+    private class CompleteSends implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                OutboundMessage outboundMessage = sentMessages.poll();
+                if (outboundMessage != null) {
+                    complete(outboundMessage);
+                    continue;
+                }
+                if (transmitFinished && sentMessages.isEmpty())
+                    break;
+                LockSupport.park(this); // woken up by TransmitConnection
+            }
+            ClientStatement.Info("End of CompleteSends thread");
+        }
+
+        private void complete(OutboundMessage outboundMessage) {
+            try {
+                if (outboundMessage.failure == null)
+                    outboundMessage.sent.complete(null);
+                else
+                    outboundMessage.sent.completeExceptionally(new IOException(outboundMessage.failure));
+            } catch (RuntimeException e) { // dependent actions do not throw to here, but this worker must not end
+                ClientStatement.Info("Action of send future failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Worker reading messages from server
+     * Blocks on socket read - messages are only queued, so it does not wait for subscriber
+     */
+    private class ReadConnection implements Runnable {
+        @Override
+        public void run() {
+            while (!clientSocket.isClosed()) { // reading worker also reconnects when connection is lost
+                List<InboundMessage> messages = clientSocket.readMessagesFromServer();
+                for (InboundMessage message : messages)
+                    messagesFromServer.add(message.getGroup(), message);
+                if (!pendingJoins.isEmpty())
+                    completeJoins();
+            }
+            readFinished = true;
+            completeJoins();
+            messagesFromServer.close(); // DeliverMessages delivers the rest
+            messagesToServer.close(); // wake up TransmitConnection
+            LockSupport.unpark(deliverThread);
+            ClientStatement.Info("End of ReadConnection thread");
+        }
+    }
+
+    /**
+     * Worker delivering messages from server to subscriber - group by group in round robin,
+     * never more than subscriber requested
+     * After close it still delivers messages which were read before socket was closed - it ends when reading ended
+     * and queues are empty (or there is no subscriber to deliver them to)
+     */
+    private class DeliverMessages implements Runnable {
+        private final List<InboundMessage> batch = new ArrayList<InboundMessage>();
+
+        @Override
+        public void run() {
+            while (true) {
+                InboundSubscription current = subscription;
+                if (current != null && current.cancelled) {
+                    endSubscription(current);
+                    continue;
+                }
+                long demand = (current == null) ? 0 : current.demand.get();
+                if (demand > 0 && messagesFromServer.awaitNotEmpty(Long.MAX_VALUE)) {
+                    deliver(current, demand);
+                    continue;
+                }
+                if (readFinished && (current == null || messagesFromServer.isEmpty()))
+                    break;
+                if (demand == 0)
+                    LockSupport.park(this); // woken up by request, subscribe or end of reading
+            }
+            InboundSubscription last;
+            synchronized (CommunicatorClient.this) {
+                delivered = true;
+                last = subscription;
+                subscription = null;
+            }
+            if (last != null && !last.cancelled)
+                last.signalEnd(clientSocket.getFailure());
+            ClientStatement.Info("End of DeliverMessages thread");
+        }
+
+        private void deliver(InboundSubscription current, long demand) {
+            messagesFromServer.drainNext(batch, (int) Math.min(demand, Integer.MAX_VALUE));
+            int count = 0;
+            try {
+                for (InboundMessage message : batch) {
+                    if (current.cancelled)
+                        break; // rest of batch is dropped
+                    count++;
+                    current.subscriber.onNext(message);
+                }
+            } catch (RuntimeException e) {
+                ClientStatement.Warning("Subscriber of messages from server failed: " + e + " - it is cancelled");
+                current.cancel();
+            }
+            int deliveredCount = count;
+            current.demand.updateAndGet(value -> value == Long.MAX_VALUE ? value : value - deliveredCount);
+            batch.clear();
+        }
+
+        /**
+         * Cancelled subscription is removed - subscriber gets onError only when it requested wrong number of messages
+         */
+        private void endSubscription(InboundSubscription current) {
+            synchronized (CommunicatorClient.this) {
+                if (subscription == current)
+                    subscription = null;
+            }
+            if (current.error != null)
+                current.subscriber.onError(current.error);
+        }
+    }
+
+    /**
+     * Close client - messages queued before close are sent (at most CLOSE_TIMEOUT_MILLIS), then LOGOUT is sent
+     * and socket is closed; messages which were not sent stay in spool for next run (login group) or their futures fail
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        messagesToServer.wakeUp();
+        if (Thread.currentThread() != transmitThread) {
+            try {
+                transmitThread.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!clientSocket.isClosed()) {
+            clientSocket.sendMessageToServer("LOGOUT", ExtraInfo.SHUTDOWN);
+            clientSocket.closeSocket(); // unblocks ReadConnection worker
+        }
+        messagesToServer.close();
+        LockSupport.unpark(deliverThread); // messagesFromServer is closed by ReadConnection - it can still add messages
+        metrics.close();
+    }
+
+    /**
+     * Wait until all workers of client end - after close, or when connection was lost for good
+     * @throws InterruptedException - when waiting thread is interrupted
+     */
+    public void join() throws InterruptedException {
+        readThread.join();
+        transmitThread.join();
+        completeThread.join();
+        deliverThread.join();
+    }
+
+    /**
+     * @return true if client was closed by user or connection was lost for good
+     */
+    public boolean isClosed() {
+        return closed || clientSocket.isClosed();
+    }
+
+    /**
+     * @return why connection was lost for good, null if client is open or it was closed without error
+     */
+    public IOException getFailure() {
+        return clientSocket.getFailure();
+    }
+
+    /**
+     * @return groups of client (login group and groups joined by joinGroup)
+     */
+    public GroupRegistry getGroupRegistry() {
+        return clientSocket.getGroupRegistry();
+    }
+
+    /**
+     * @return connection of client - for commands which use it directly (eg. history, sending files)
+     */
+    public ClientSocketHandler getSocketHandler() {
+        return clientSocket;
+    }
+}
@@ -0,0 +1,57 @@
+package pl.springtest.communicatorclient.files;
+
+import java.util.Locale;
+
+/**
+ * Payloads of frames of file sent to group:
+ * - FILE_START: "<id> <size> <name>"
+ * - FILE_CHUNK: varint id + bytes of file (only binary framing, see BinaryFraming)
+ * - FILE_END: "<id> <size> <crc32 hex>"
+ * ID is chosen by sender, files of one sender are sent one after another
+ */
+abstract class FileFrames {
+    static String startPayload(int id, long size, String name) {
+        return id + " " + size + " " + name;
+    }
+
+    static String endPayload(int id, long size, long crc) {
+        return id + " " + size + " " + Long.toHexString(crc);
+    }
+
+    /**
+     * @param payload - payload of FILE_START or FILE_END
+     * @return ID, size and name or CRC, null if payload is malformed
+     */
+    static String[] parse(String payload) {
+        String[] fields = payload.split(" ", 3);
+        if (fields.length != 3 || !fields[0].matches("\\d{1,9}") || !fields[1].matches("\\d{1,18}") || fields[2].isEmpty())
+            return null;
+        return fields;
+    }
+
+    /**
+     * @param name - name of file given by sender
+     * @return name which can be used only in directory of received files - without path and special characters
+     */
+    static String safeFileName(String name) {
+        String safeName = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1)
+                .replaceAll("[\\x00-\\x1F:*?\"<>|]", "_")
+                .replaceAll("^\\.+", "");
+        return safeName.isEmpty() ? "file" : safeName;
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        if (bytes < 1024 * 1024)
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    /**
+     * @return speed in MB/s
+     */
+    static String formatSpeed(long bytes, long nanos) {
+        return String.format(Locale.ROOT, "%.1f MB/s", bytes * 1e9 / (1024.0 * 1024) / Math.max(1, nanos));
+    }
+}
@@ -0,0 +1,211 @@
+package pl.springtest.communicatorclient.files;
+
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+import pl.springtest.communicatorclient.toServerConnection.BinaryFraming;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.FileFrameHandler;
+import pl.springtest.communicatorclient.toServerConnection.ServerMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Writes files sent to group by other clients (see FileSender) to directory of received files
+ * Chunk goes from receive buffer straight to "*.part" file by FileChannel.write - it is not copied to Java heap,
+ * CRC32 is computed from the same buffer; after FILE_END size and CRC are checked and file gets its name
+ * (existing file is not overwritten - number is added to name)
+ * One file of every sender at once - next file of sender aborts not finished one
+ * Files bigger than limit are not received - size from FILE_START is checked, and chunks are never written past it
+ * Not thread safe - it is used only by thread reading from server
+ */
+public class FileReassembler implements FileFrameHandler {
+    private final Path directory;
+    private final long maxBytes;
+    private final String ownName;
+    private final Consumer<String> console;
+    private final Map<String, IncomingFile> incomingFiles = new HashMap<String, IncomingFile>(); // by sender
+
+    private static class IncomingFile {
+        final String sender;
+        final int id;
+        final long size;
+        final String name;
+        final Path partPath;
+        final FileChannel channel;
+        final CRC32 crc = new CRC32();
+        final long startNanos = System.nanoTime();
+        long receivedBytes = 0;
+
+        IncomingFile(String sender, int id, long size, String name, Path partPath, FileChannel channel) {
+            this.sender = sender;
+            this.id = id;
+            this.size = size;
+            this.name = name;
+            this.partPath = partPath;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * @param directory - directory of received files, created with first file
+     * @param maxBytes - maximum size of received file
+     * @param ownName - name of this client - own files sent back by server are skipped
+     * @param console - receives lines to show in console
+     */
+    public FileReassembler(Path directory, long maxBytes, String ownName, Consumer<String> console) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.ownName = ownName;
+        this.console = console;
+    }
+
+    @Override
+    public void fileControlFrame(ServerMessage message) {
+        String sender = message.getClientName().toString();
+        if (sender.equals(ownName))
+            return;
+        String[] fields = FileFrames.parse(message.getMessage().toString());
+        if (fields == null) {
+            console.accept("Malformed " + message.getExtraInfo() + " frame from " + sender + " skipped");
+            return;
+        }
+        if (message.getExtraInfo() == ExtraInfo.FILE_START)
+            start(sender, Integer.parseInt(fields[0]), Long.parseLong(fields[1]), fields[2]);
+        else
+            finish(sender, Integer.parseInt(fields[0]), Long.parseLong(fields[1]), fields[2]);
+    }
+
+    private void start(String sender, int id, long size, String name) {
+        IncomingFile previousFile = incomingFiles.remove(sender);
+        if (previousFile != null)
+            abort(previousFile, "next file was started");
+        String safeName = FileFrames.safeFileName(name);
+        if (size > maxBytes) {
+            console.accept("File " + safeName + " (" + FileFrames.formatBytes(size) + ") from " + sender
+                    + " skipped - it is bigger than " + FileFrames.formatBytes(maxBytes));
+            return;
+        }
+        Path partPath = null;
+        try {
+            Files.createDirectories(directory);
+            partPath = Files.createTempFile(directory, safeName + ".", ".part");
+            FileChannel channel = FileChannel.open(partPath, StandardOpenOption.WRITE);
+            incomingFiles.put(sender, new IncomingFile(sender, id, size, safeName, partPath, channel));
+            console.accept("Receiving file " + safeName + " (" + FileFrames.formatBytes(size) + ") from " + sender);
+        } catch (IOException e) {
+            deletePart(partPath);
+            console.accept("File " + safeName + " from " + sender + " can not be received: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void fileChunk(String sender, ByteBuffer buffer, int start, int end) {
+        IncomingFile file = incomingFiles.get(sender);
+        int id = BinaryFraming.getVarint(buffer, start, end);
+        if (file == null || id != file.id)
+            return; // file was aborted or its start was lost
+        int dataStart = start + BinaryFraming.varintSize(id);
+        if (file.receivedBytes + (end - dataStart) > file.size) { // size was checked against maxBytes by start
+            incomingFiles.remove(sender);
+            abort(file, "it is longer than " + file.size + " bytes");
+            return;
+        }
+        int limit = buffer.limit();
+        int position = buffer.position();
+        try {
+            buffer.limit(end).position(dataStart);
+            file.crc.update(buffer);
+            buffer.position(dataStart);
+            while (buffer.hasRemaining())
+                file.channel.write(buffer);
+            file.receivedBytes += end - dataStart;
+            if (ClientMetrics.ENABLED)
+                ClientMetrics.FILE_BYTES_RECEIVED.add(end - dataStart);
+        } catch (IOException e) {
+            incomingFiles.remove(sender);
+            abort(file, e.getMessage());
+        } finally {
+            buffer.limit(limit).position(position);
+        }
+    }
+
+    private void finish(String sender, int id, long size, String crc) {
+        IncomingFile file = incomingFiles.get(sender);
+        if (file == null || id != file.id)
+            return;
+        incomingFiles.remove(sender);
+        if (file.receivedBytes != size || size != file.size) {
+            abort(file, "received " + file.receivedBytes + " of " + size + " bytes");
+            return;
+        }
+        if (!Long.toHexString(file.crc.getValue()).equals(crc)) {
+            abort(file, "wrong CRC32");
+            return;
+        }
+        try {
+            file.channel.close();
+            Path path = moveToFreeName(file.partPath, file.name);
+            console.accept("Received file " + file.name + " (" + FileFrames.formatBytes(size) + ") from " + sender + " in "
+                    + (System.nanoTime() - file.startNanos) / 1000000 + " ms, "
+                    + FileFrames.formatSpeed(size, System.nanoTime() - file.startNanos) + ": " + path);
+        } catch (IOException e) {
+            abort(file, e.getMessage());
+        }
+    }
+
+    /**
+     * @return path of file - name, or name with number when file with this name exists
+     */
+    private Path moveToFreeName(Path partPath, String name) throws IOException {
+        int dot = name.lastIndexOf('.');
+        String base = (dot > 0) ? name.substring(0, dot) : name;
+        String extension = (dot > 0) ? name.substring(dot) : "";
+        for (int number = 0; ; number++) {
+            Path path = directory.resolve(number == 0 ? name : base + " (" + number + ")" + extension);
+            try {
+                return Files.move(partPath, path); // no REPLACE_EXISTING
+            } catch (FileAlreadyExistsException e) {
+                ; // next number
+            }
+        }
+    }
+
+    /**
+     * Abort all not finished files - their chunks were lost with connection to server
+     */
+    public void abortAll() {
+        for (IncomingFile file : new ArrayList<IncomingFile>(incomingFiles.values()))
+            abort(file, "connection to server was lost");
+        incomingFiles.clear();
+    }
+
+    private void abort(IncomingFile file, String reason) {
+        try {
+            file.channel.close();
+        } catch (IOException e) {
+            ; // file is deleted anyway
+        }
+        deletePart(file.partPath);
+        console.accept("Receiving file " + file.name + " from " + file.sender + " failed: " + reason);
+    }
+
+    private static void deletePart(Path partPath) {
+        if (partPath == null)
+            return;
+        try {
+            Files.deleteIfExists(partPath);
+        } catch (IOException e) {
+            ; // only not finished part is left
+        }
+    }
+}
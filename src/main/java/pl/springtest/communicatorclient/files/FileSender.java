@@ -0,0 +1,172 @@
+package pl.springtest.communicatorclient.files;
+
+import pl.springtest.communicatorclient.messages.ConsoleCommand;
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+import pl.springtest.communicatorclient.toServerConnection.BinaryFraming;
+import pl.springtest.communicatorclient.toServerConnection.ClientSocketHandler;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.workers.WorkerExecutor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Console command /send <path> - file is sent to active group by worker, one file at once (see FileFrames)
+ * Bytes of chunks go from page cache to socket by FileChannel.transferTo, CRC32 is computed from mapped file -
+ * file is not copied to Java heap
+ * Socket is released after every chunk (ClientSocketHandler has fair lock), so chat messages are not starved by file;
+ * speed can be also limited (ConnectionSettings.fileMaxBytesPerSecond)
+ * Progress is shown in console every PROGRESS_INTERVAL_MILLIS
+ */
+public class FileSender implements ConsoleCommand {
+    public static final String COMMAND = "/send";
+    public static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    private static final long MAP_WINDOW_BYTES = 64 * 1024 * 1024; // mapped part of file used for CRC32
+    private static final String USAGE = "Usage: " + COMMAND + " <path>";
+
+    private final ClientSocketHandler clientSocket;
+    private final WorkerExecutor workerExecutor;
+    private final Consumer<String> console;
+    private final IntSupplier activeGroup;
+    private final int chunkBytes;
+    private final long maxBytesPerSecond;
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    private int nextId = 0;
+
+    /**
+     * @param clientSocket - connection to server
+     * @param workerExecutor - starts worker sending file
+     * @param console - receives progress lines to show in console
+     * @param activeGroup - gives number of group which gets file (see GroupRegistry)
+     * @param chunkBytes - maximum number of bytes of file in one frame
+     * @param maxBytesPerSecond - limit of speed, 0 - no limit
+     */
+    public FileSender(ClientSocketHandler clientSocket, WorkerExecutor workerExecutor, Consumer<String> console,
+                      IntSupplier activeGroup, int chunkBytes, long maxBytesPerSecond) {
+        this.clientSocket = clientSocket;
+        this.workerExecutor = workerExecutor;
+        this.console = console;
+        this.activeGroup = activeGroup;
+        this.chunkBytes = Math.max(1, chunkBytes);
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    /**
+     * Start sending of file
+     * @param line - send command typed by user
+     * @return lines to show in console
+     */
+    @Override
+    public List<String> execute(String line) {
+        List<String> lines = new ArrayList<String>();
+        String argument = line.substring(COMMAND.length()).trim();
+        Path path;
+        try {
+            path = Paths.get(argument);
+        } catch (InvalidPathException e) {
+            path = null;
+        }
+        if (argument.isEmpty() || path == null || path.getFileName() == null) {
+            lines.add(USAGE);
+        } else if (!Files.isRegularFile(path) || !Files.isReadable(path)) {
+            lines.add("File can not be read: " + path);
+        } else if (!clientSocket.isBinaryFraming()) {
+            lines.add("Files can be sent only when server accepts binary framing (communicator.framing=binary)");
+        } else if (!clientSocket.getGroupRegistry().isJoined(activeGroup.getAsInt())) {
+            lines.add("Group " + clientSocket.getGroupRegistry().nameOf(activeGroup.getAsInt()) + " is not joined");
+        } else if (!sending.compareAndSet(false, true)) {
+            lines.add("Other file is being sent - wait until it ends");
+        } else {
+            Path file = path;
+            int id = ++nextId;
+            int group = activeGroup.getAsInt();
+            workerExecutor.start("Thread - FileSender", () -> send(file, id, group));
+        }
+        return lines;
+    }
+
+    /**
+     * Send file - error is shown in console
+     */
+    private void send(Path path, int id, int group) {
+        String name = FileFrames.safeFileName(path.getFileName().toString());
+        try (FileChannel file = FileChannel.open(path)) {
+            long size = file.size();
+            long connection = clientSocket.getConnections();
+            console.accept("Sending file " + name + " (" + FileFrames.formatBytes(size) + ")");
+            long startNanos = System.nanoTime();
+            clientSocket.sendFileFrame(connection, group, ExtraInfo.FILE_START,
+                    utf8(FileFrames.startPayload(id, size, name)), null, 0, 0);
+
+            ByteBuffer idPrefix = ByteBuffer.allocate(BinaryFraming.MAX_VARINT_SIZE);
+            BinaryFraming.putVarint(idPrefix, id);
+            idPrefix.flip();
+            CRC32 crc = new CRC32();
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            long progressNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MILLIS);
+            for (long position = 0; position < size; ) {
+                int length = (int) Math.min(chunkBytes, size - position);
+                if (window == null || position + length > windowStart + window.capacity()) {
+                    windowStart = position;
+                    window = file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_BYTES, size - position));
+                }
+                int windowPosition = (int) (position - windowStart);
+                window.limit(windowPosition + length).position(windowPosition);
+                crc.update(window);
+
+                idPrefix.rewind();
+                clientSocket.sendFileFrame(connection, group, ExtraInfo.FILE_CHUNK, idPrefix, file, position, length);
+                position += length;
+                if (ClientMetrics.ENABLED)
+                    ClientMetrics.FILE_BYTES_SENT.add(length);
+
+                if (maxBytesPerSecond > 0) // wait until speed is not above limit
+                    LockSupport.parkNanos(startNanos + (long) (position * 1e9 / maxBytesPerSecond) - System.nanoTime());
+                long nowNanos = System.nanoTime();
+                if (nowNanos >= progressNanos && position < size) {
+                    console.accept("Sending file " + name + ": " + position * 100 / size + "% ("
+                            + FileFrames.formatBytes(position) + " of " + FileFrames.formatBytes(size) + ", "
+                            + FileFrames.formatSpeed(position, nowNanos - startNanos) + ")");
+                    progressNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MILLIS);
+                }
+            }
+
+            clientSocket.sendFileFrame(connection, group, ExtraInfo.FILE_END,
+                    utf8(FileFrames.endPayload(id, size, crc.getValue())), null, 0, 0);
+            long nanos = System.nanoTime() - startNanos;
+            console.accept("Sent file " + name + " (" + FileFrames.formatBytes(size) + ") in "
+                    + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, " + FileFrames.formatSpeed(size, nanos));
+        } catch (IOException e) {
+            console.accept("Sending file " + name + " failed: " + e.getMessage());
+        } finally {
+            sending.set(false);
+        }
+    }
+
+    private static ByteBuffer utf8(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true if file is being sent
+     */
+    public boolean isSending() {
+        return sending.get();
+    }
+}
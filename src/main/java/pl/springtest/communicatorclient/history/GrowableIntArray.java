@@ -0,0 +1,37 @@
+package pl.springtest.communicatorclient.history;
+
+import java.util.Arrays;
+
+/**
+ * Array of ints which grows when values are added - secondary indexes of history without boxing (4 bytes per entry)
+ * Not thread safe
+ */
+class GrowableIntArray {
+    private int[] values;
+    private int size = 0;
+
+    GrowableIntArray(int initialCapacity) {
+        values = new int[Math.max(1, initialCapacity)];
+    }
+
+    void add(int value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, values.length * 2);
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return size of array in bytes
+     */
+    long capacityBytes() {
+        return 4L * values.length;
+    }
+}
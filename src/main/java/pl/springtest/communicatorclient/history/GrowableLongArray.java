@@ -0,0 +1,54 @@
+package pl.springtest.communicatorclient.history;
+
+import java.util.Arrays;
+
+/**
+ * Array of longs which grows when values are added - indexes of history without boxing (8 bytes per entry)
+ * Not thread safe
+ */
+class GrowableLongArray {
+    private long[] values;
+    private int size = 0;
+
+    GrowableLongArray(int initialCapacity) {
+        values = new long[Math.max(1, initialCapacity)];
+    }
+
+    void add(long value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, values.length * 2);
+        values[size++] = value;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return size of array in bytes
+     */
+    long capacityBytes() {
+        return 8L * values.length;
+    }
+
+    /**
+     * @param value - value to find, values have to be sorted
+     * @return index of the last value not bigger than given one, -1 if all values are bigger
+     */
+    int floorIndex(long value) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= value)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        return high;
+    }
+}
@@ -0,0 +1,88 @@
+package pl.springtest.communicatorclient.history;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Console command which shows messages from MessageHistory - it is not sent to server :
+ * - /history [count] - the newest messages
+ * - /history @sender [count] - the newest messages of sender
+ * - /history #group [count] - the newest messages of group
+ * - /history 30m [count], /history 2h [count] - the newest messages of last minutes or hours
+ * Default count is DEFAULT_COUNT
+ */
+public abstract class HistoryCommand {
+    public static final String COMMAND = "/history";
+    public static final int DEFAULT_COUNT = 20;
+    private static final String USAGE = "Usage: " + COMMAND + " [@sender | #group | <minutes>m | <hours>h] [count]";
+
+    /**
+     * @param line - history command typed by user
+     * @param messageHistory - history of messages, null if history is turned off
+     * @return lines to show in console
+     */
+    public static List<String> execute(String line, MessageHistory messageHistory) {
+        List<String> lines = new ArrayList<String>();
+        if (messageHistory == null) {
+            lines.add("History of messages is turned off");
+            return lines;
+        }
+        String argumentsLine = line.substring(COMMAND.length()).trim();
+        String[] arguments = argumentsLine.isEmpty() ? new String[0] : argumentsLine.split("\\s+");
+        String filter = "";
+        int count = DEFAULT_COUNT;
+        try {
+            int next = 0;
+            if (arguments.length > 0 && !arguments[0].matches("\\d+"))
+                filter = arguments[next++];
+            if (next < arguments.length)
+                count = Integer.parseInt(arguments[next++]);
+            if (next < arguments.length || count < 1 || (!filter.isEmpty() && filter.length() < 2))
+                throw new NumberFormatException();
+        } catch (NumberFormatException e) {
+            lines.add(USAGE);
+            return lines;
+        }
+
+        List<HistoryMessage> messages;
+        if (filter.isEmpty()) {
+            messages = messageHistory.last(count);
+        } else if (filter.startsWith("@")) {
+            messages = messageHistory.lastFromSender(filter.substring(1), count);
+        } else if (filter.startsWith("#")) {
+            messages = messageHistory.lastInGroup(filter.substring(1), count);
+        } else {
+            long periodMillis = periodMillis(filter);
+            if (periodMillis < 0) {
+                lines.add(USAGE);
+                return lines;
+            }
+            long now = System.currentTimeMillis();
+            messages = messageHistory.range(now - periodMillis, now, count);
+        }
+        lines.add("--- history: " + messages.size() + " of " + messageHistory.size() + " messages ---");
+        for (HistoryMessage message : messages)
+            lines.add(message.toDisplayText());
+        return lines;
+    }
+
+    /**
+     * @param period - number with unit: m - minutes, h - hours
+     * @return period in milliseconds, -1 if it is not period
+     */
+    private static long periodMillis(String period) {
+        TimeUnit unit;
+        switch (period.charAt(period.length() - 1)) {
+            case 'm': unit = TimeUnit.MINUTES; break;
+            case 'h': unit = TimeUnit.HOURS; break;
+            default: return -1;
+        }
+        try {
+            long value = Long.parseLong(period.substring(0, period.length() - 1));
+            return (value < 0) ? -1 : unit.toMillis(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
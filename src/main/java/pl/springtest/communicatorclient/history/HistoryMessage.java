@@ -0,0 +1,73 @@
+package pl.springtest.communicatorclient.history;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Message from server kept in MessageHistory
+ */
+public class HistoryMessage {
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    private final long sequence;
+    private final long timeMillis;
+    private final String clientName;
+    private final String groupId;
+    private final String message;
+
+    /**
+     * @param sequence - number of message in history (from 0, without gaps)
+     * @param timeMillis - time when message was received (System.currentTimeMillis)
+     * @param clientName - name of sender
+     * @param groupId - group of message
+     * @param message - text of message
+     */
+    public HistoryMessage(long sequence, long timeMillis, String clientName, String groupId, String message) {
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.clientName = clientName;
+        this.groupId = groupId;
+        this.message = message;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return text shown in console - "[date time] sender: message"
+     */
+    public String toDisplayText() {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault());
+        return "[" + time.format(TIME_FORMATTER) + "] " + clientName + ": " + message;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryMessage{" +
+                "sequence=" + sequence +
+                ", timeMillis=" + timeMillis +
+                ", clientName='" + clientName + '\'' +
+                ", groupId='" + groupId + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,173 @@
+package pl.springtest.communicatorclient.history;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One file of MessageHistory - records appended to memory-mapped file
+ * Record:
+ * - length of rest of record in bytes (int), 0 ends records
+ * - sequence (long), time in milliseconds (long)
+ * - sender: length (short), UTF-8 bytes; group: length (short), UTF-8 bytes
+ * - UTF-8 message (rest of record)
+ * Record is published by writing its length as last step, so record torn by crash is never read
+ * Not thread safe - used under lock of MessageHistory
+ */
+class HistorySegment {
+    static final int LENGTH_SIZE = 4;
+    static final int FIXED_SIZE = 8 + 8 + 2 + 2;
+    private static final int SEQUENCE_OFFSET = LENGTH_SIZE;
+    private static final int TIME_OFFSET = SEQUENCE_OFFSET + 8;
+    private static final int SENDER_OFFSET = TIME_OFFSET + 8;
+
+    private final long firstSequence;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer segment;
+    private int endPosition = 0;
+
+    /**
+     * @param path - file of segment, created if it does not exist
+     * @param firstSequence - sequence of first record of segment
+     * @param capacity - size of file in bytes (bigger existing file keeps its size)
+     * @throws IOException - when file can not be mapped
+     */
+    HistorySegment(Path path, long firstSequence, int capacity) throws IOException {
+        this.firstSequence = firstSequence;
+        fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int size = (int) Math.max(capacity, Math.min(fileChannel.size(), Integer.MAX_VALUE));
+            segment = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param sender - UTF-8 name of sender
+     * @param group - UTF-8 group ID
+     * @param message - UTF-8 message
+     * @return size of record in file
+     */
+    static int recordSize(byte[] sender, byte[] group, byte[] message) {
+        return LENGTH_SIZE + FIXED_SIZE + sender.length + group.length + message.length;
+    }
+
+    /**
+     * Add record at end of segment
+     * @return position of record, -1 if record does not fit
+     */
+    int append(long sequence, long timeMillis, byte[] sender, byte[] group, byte[] message) {
+        int position = endPosition;
+        int recordEnd = position + recordSize(sender, group, message);
+        if (recordEnd > segment.capacity() - LENGTH_SIZE) // end of records has to fit too
+            return -1;
+        segment.putLong(position + SEQUENCE_OFFSET, sequence);
+        segment.putLong(position + TIME_OFFSET, timeMillis);
+        segment.position(position + SENDER_OFFSET);
+        segment.putShort((short) sender.length).put(sender);
+        segment.putShort((short) group.length).put(group);
+        segment.put(message);
+        segment.putInt(recordEnd, 0);
+        segment.putInt(position, recordEnd - position - LENGTH_SIZE); // publishes record
+        endPosition = recordEnd;
+        return position;
+    }
+
+    /**
+     * Find end of records written before - used once, after segment was opened
+     * @param visitor - called for every record, in order
+     */
+    void recover(RecordVisitor visitor) {
+        int position = 0;
+        while (position + LENGTH_SIZE <= segment.capacity()) {
+            int length = segment.getInt(position);
+            if (length < FIXED_SIZE || length > segment.capacity() - position - LENGTH_SIZE)
+                break;
+            visitor.visit(position);
+            position += LENGTH_SIZE + length;
+        }
+        endPosition = position;
+    }
+
+    /**
+     * Record found by recover
+     */
+    interface RecordVisitor {
+        /**
+         * @param position - position of record in segment
+         */
+        void visit(int position);
+    }
+
+    /**
+     * @param position - position of record
+     * @return position of next record, equal to getEndPosition after last record
+     */
+    int next(int position) {
+        return position + LENGTH_SIZE + segment.getInt(position);
+    }
+
+    long sequence(int position) {
+        return segment.getLong(position + SEQUENCE_OFFSET);
+    }
+
+    long timeMillis(int position) {
+        return segment.getLong(position + TIME_OFFSET);
+    }
+
+    String sender(int position) {
+        return string(position + SENDER_OFFSET + 2, segment.getShort(position + SENDER_OFFSET) & 0xFFFF);
+    }
+
+    String group(int position) {
+        int groupLengthOffset = position + SENDER_OFFSET + 2 + (segment.getShort(position + SENDER_OFFSET) & 0xFFFF);
+        return string(groupLengthOffset + 2, segment.getShort(groupLengthOffset) & 0xFFFF);
+    }
+
+    /**
+     * @param position - position of record
+     * @return whole record
+     */
+    HistoryMessage read(int position) {
+        int senderLength = segment.getShort(position + SENDER_OFFSET) & 0xFFFF;
+        int groupLengthOffset = position + SENDER_OFFSET + 2 + senderLength;
+        int groupLength = segment.getShort(groupLengthOffset) & 0xFFFF;
+        int messageOffset = groupLengthOffset + 2 + groupLength;
+        int recordEnd = next(position);
+        return new HistoryMessage(sequence(position), timeMillis(position),
+                string(position + SENDER_OFFSET + 2, senderLength), string(groupLengthOffset + 2, groupLength),
+                string(messageOffset, recordEnd - messageOffset));
+    }
+
+    private String string(int position, int length) {
+        byte[] bytes = new byte[length];
+        segment.position(position);
+        segment.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    int getEndPosition() {
+        return endPosition;
+    }
+
+    /**
+     * Write mapped pages to disk and close file
+     */
+    void close() {
+        try {
+            segment.force();
+            fileChannel.close();
+        } catch (IOException e) {
+            ; // pages are written by system anyway
+        }
+    }
+}
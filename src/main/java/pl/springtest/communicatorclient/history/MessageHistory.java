@@ -0,0 +1,397 @@
+package pl.springtest.communicatorclient.history;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Local history of messages from server - append-only log of memory-mapped segment files in one directory
+ * Every message gets sequence (from 0, without gaps) and time of receiving (never smaller than time of previous message)
+ * Indexes are kept in memory and built again by scanning segments when history is opened:
+ * - sparse index - position and time of every INDEX_INTERVAL-th message, so message is found by sequence or time
+ *   with binary search and at most INDEX_INTERVAL - 1 steps in segment
+ * - secondary indexes - sequences of messages of every sender and of every group (4 bytes per message in each)
+ * Segment is file "segment-<sequence of its first message>.log" of segmentBytes (sparse file - only written part uses disk),
+ * new segment is started when message does not fit; old segments can be deleted when client is not running
+ * Thread safe
+ */
+public class MessageHistory {
+    public static final int INDEX_INTERVAL = 64;
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+    private final List<HistorySegment> segments = new ArrayList<HistorySegment>();
+    private final GrowableLongArray sparsePositions = new GrowableLongArray(1024); // segment number << 32 | position
+    private final GrowableLongArray sparseTimes = new GrowableLongArray(1024);
+    private final Map<String, GrowableIntArray> senderIndex = new HashMap<String, GrowableIntArray>();
+    private final Map<String, GrowableIntArray> groupIndex = new HashMap<String, GrowableIntArray>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongSupplier clock;
+    private long firstSequence = 0;
+    private long nextSequence = 0;
+    private long lastTimeMillis = 0;
+    private boolean closed = false;
+
+    /**
+     * Open history - messages stored by previous runs are indexed again
+     * @param directory - directory of segments, created if it does not exist
+     * @param segmentBytes - size of new segment files (bigger message gets bigger segment)
+     * @throws IOException - when segments can not be read or directory is used by other process
+     */
+    public MessageHistory(Path directory, int segmentBytes) throws IOException {
+        this(directory, segmentBytes, System::currentTimeMillis);
+    }
+
+    /**
+     * Open history with own clock - tests set time of messages
+     * @param directory - directory of segments, created if it does not exist
+     * @param segmentBytes - size of new segment files (bigger message gets bigger segment)
+     * @param clock - time of receiving of appended messages in milliseconds
+     * @throws IOException - when segments can not be read or directory is used by other process
+     */
+    MessageHistory(Path directory, int segmentBytes, LongSupplier clock) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.clock = clock;
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lockChannel.close();
+            throw new IOException("History " + directory + " is already used", e);
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException("History " + directory + " is used by other process");
+        }
+        try {
+            recover();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map all segments in order of sequences and index their messages
+     * @throws IOException - when segment can not be mapped or segments do not follow each other
+     */
+    private void recover() throws IOException {
+        List<Path> segmentPaths = new ArrayList<Path>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files)
+                segmentPaths.add(file);
+        }
+        Collections.sort(segmentPaths); // sequences in names have the same number of digits
+        for (Path segmentPath : segmentPaths) {
+            long segmentFirstSequence = segmentSequence(segmentPath);
+            if (segments.isEmpty()) {
+                firstSequence = segmentFirstSequence;
+                nextSequence = segmentFirstSequence;
+            } else if (segmentFirstSequence != nextSequence) {
+                throw new IOException("History segment " + segmentPath + " does not follow message " + (nextSequence - 1));
+            }
+            HistorySegment segment = new HistorySegment(segmentPath, segmentFirstSequence, segmentBytes);
+            segments.add(segment);
+            int segmentNumber = segments.size() - 1;
+            segment.recover(position -> index(segment, segmentNumber, position,
+                    segment.timeMillis(position), segment.sender(position), segment.group(position)));
+        }
+    }
+
+    private static long segmentSequence(Path segmentPath) throws IOException {
+        String name = segmentPath.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Wrong name of history segment: " + segmentPath, e);
+        }
+    }
+
+    /**
+     * Add message at nextSequence to indexes
+     */
+    private void index(HistorySegment segment, int segmentNumber, int position, long timeMillis, String sender, String group) {
+        int relativeSequence = (int) (nextSequence - firstSequence);
+        if (relativeSequence % INDEX_INTERVAL == 0) {
+            sparsePositions.add((long) segmentNumber << 32 | position);
+            sparseTimes.add(timeMillis);
+        }
+        senderIndex.computeIfAbsent(sender, key -> new GrowableIntArray(16)).add(relativeSequence);
+        groupIndex.computeIfAbsent(group, key -> new GrowableIntArray(1024)).add(relativeSequence);
+        lastTimeMillis = timeMillis;
+        nextSequence++;
+    }
+
+    /**
+     * Add message at end of history - time of message is current time
+     * @param clientName - name of sender
+     * @param groupId - group of message
+     * @param message - text of message
+     * @return sequence of message, -1 if history is closed
+     * @throws IOException - when new segment can not be created
+     */
+    public long append(String clientName, String groupId, String message) throws IOException {
+        byte[] sender = nameBytes(clientName);
+        byte[] group = nameBytes(groupId);
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            if (closed)
+                return -1;
+            if (nextSequence - firstSequence >= Integer.MAX_VALUE)
+                throw new IOException("History " + directory + " is full - move old segments away");
+            long timeMillis = Math.max(clock.getAsLong(), lastTimeMillis);
+            HistorySegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            int position = (segment == null) ? -1 : segment.append(nextSequence, timeMillis, sender, group, text);
+            if (position < 0) {
+                int recordSize = HistorySegment.recordSize(sender, group, text);
+                if (segment != null && segment.getEndPosition() == 0) { // empty segment too small for message - file is mapped again
+                    segment.close();
+                    segments.remove(segments.size() - 1);
+                }
+                segment = new HistorySegment(directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX)),
+                        nextSequence, Math.max(segmentBytes, recordSize + HistorySegment.LENGTH_SIZE));
+                segments.add(segment);
+                position = segment.append(nextSequence, timeMillis, sender, group, text);
+            }
+            long sequence = nextSequence;
+            index(segment, segments.size() - 1, position, timeMillis, clientName, groupId);
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] nameBytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return (bytes.length > MAX_NAME_BYTES) ? Arrays.copyOf(bytes, MAX_NAME_BYTES) : bytes;
+    }
+
+    /**
+     * @param count - maximum number of messages
+     * @return the newest messages, oldest first
+     */
+    public List<HistoryMessage> last(int count) {
+        lock.lock();
+        try {
+            return readRange(Math.max(firstSequence, nextSequence - Math.max(0, count)), nextSequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param fromMillis - time of the oldest message, inclusive
+     * @param toMillis - time of the newest message, inclusive
+     * @param limit - maximum number of messages - the newest ones are returned
+     * @return messages received in given time, oldest first
+     */
+    public List<HistoryMessage> range(long fromMillis, long toMillis, int limit) {
+        lock.lock();
+        try {
+            if (fromMillis > toMillis)
+                return new ArrayList<HistoryMessage>();
+            long end = firstSequenceAfter(toMillis);
+            long start = Math.max(firstSequenceAfter(fromMillis - 1), end - Math.max(0, limit));
+            return readRange(start, end);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param clientName - name of sender
+     * @param count - maximum number of messages
+     * @return the newest messages of sender, oldest first
+     */
+    public List<HistoryMessage> lastFromSender(String clientName, int count) {
+        lock.lock();
+        try {
+            return readIndexed(senderIndex.get(clientName), count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param groupId - group of messages
+     * @param count - maximum number of messages
+     * @return the newest messages of group, oldest first
+     */
+    public List<HistoryMessage> lastInGroup(String groupId, int count) {
+        lock.lock();
+        try {
+            return readIndexed(groupIndex.get(groupId), count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param timeMillis - time
+     * @return sequence of first message received later than given time, nextSequence if there is no such message
+     */
+    private long firstSequenceAfter(long timeMillis) {
+        int entry = sparseTimes.floorIndex(timeMillis);
+        if (entry < 0)
+            return firstSequence;
+        long sequence = firstSequence + (long) entry * INDEX_INTERVAL;
+        long position = sparsePositions.get(entry);
+        while (sequence < nextSequence && segment(position).timeMillis((int) position) <= timeMillis) {
+            sequence++;
+            if (sequence < nextSequence)
+                position = nextPosition(position);
+        }
+        return sequence;
+    }
+
+    private List<HistoryMessage> readRange(long start, long end) {
+        List<HistoryMessage> messages = new ArrayList<HistoryMessage>((int) Math.max(0, end - start));
+        if (closed || start >= end)
+            return messages;
+        long position = position(start);
+        for (long sequence = start; sequence < end; sequence++) {
+            if (sequence > start)
+                position = nextPosition(position);
+            messages.add(segment(position).read((int) position));
+        }
+        return messages;
+    }
+
+    private List<HistoryMessage> readIndexed(GrowableIntArray sequences, int count) {
+        List<HistoryMessage> messages = new ArrayList<HistoryMessage>();
+        if (closed || sequences == null)
+            return messages;
+        for (int i = Math.max(0, sequences.size() - Math.max(0, count)); i < sequences.size(); i++) {
+            long position = position(firstSequence + sequences.get(i));
+            messages.add(segment(position).read((int) position));
+        }
+        return messages;
+    }
+
+    /**
+     * @param sequence - sequence of stored message
+     * @return segment number << 32 | position of message in segment
+     */
+    private long position(long sequence) {
+        long relativeSequence = sequence - firstSequence;
+        int entry = (int) (relativeSequence / INDEX_INTERVAL);
+        long position = sparsePositions.get(entry);
+        for (long i = (long) entry * INDEX_INTERVAL; i < relativeSequence; i++)
+            position = nextPosition(position);
+        return position;
+    }
+
+    /**
+     * @param position - position of message which is not the last one
+     * @return position of next message - in next segment when it is last message of segment
+     */
+    private long nextPosition(long position) {
+        int segmentNumber = (int) (position >>> 32);
+        HistorySegment segment = segments.get(segmentNumber);
+        int next = segment.next((int) position);
+        if (next >= segment.getEndPosition())
+            return (long) (segmentNumber + 1) << 32;
+        return (long) segmentNumber << 32 | next;
+    }
+
+    private HistorySegment segment(long position) {
+        return segments.get((int) (position >>> 32));
+    }
+
+    /**
+     * @return number of stored messages
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return nextSequence - firstSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return sequence of the oldest stored message (messages of deleted segments are not stored)
+     */
+    public long getFirstSequence() {
+        lock.lock();
+        try {
+            return firstSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of segment files
+     */
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return memory used by arrays of indexes in bytes (without maps and their keys)
+     */
+    public long getIndexBytes() {
+        lock.lock();
+        try {
+            long bytes = sparsePositions.capacityBytes() + sparseTimes.capacityBytes();
+            for (GrowableIntArray sequences : senderIndex.values())
+                bytes += sequences.capacityBytes();
+            for (GrowableIntArray sequences : groupIndex.values())
+                bytes += sequences.capacityBytes();
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write mapped pages to disk and release directory - next messages are not stored, queries return nothing
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            for (HistorySegment segment : segments)
+                segment.close();
+            if (fileLock != null)
+                fileLock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            ; // pages are written by system anyway
+        } finally {
+            lock.unlock();
+        }
+    }
+}
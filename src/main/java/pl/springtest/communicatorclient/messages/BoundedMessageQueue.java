@@ -0,0 +1,240 @@
+package pl.springtest.communicatorclient.messages;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free bounded queue based on array (sequence number per slot - D. Vyukov's bounded queue)
+ * Many threads can add messages, one thread takes them (it can sleep until there is any message)
+ * When queue is full, policy decides: BLOCK producer, DROP_OLDEST message (it can be passed to listener) or FAIL adding
+ * Statistics: actual depth, high-water mark, number of dropped and rejected messages
+ * @param <E> - type of queued elements
+ */
+public class BoundedMessageQueue<E> {
+    private static final long BLOCKED_PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+    private final QueueOverflowPolicy overflowPolicy;
+    private final Consumer<? super E> droppedListener; // null - dropped elements are only counted
+
+    private final AtomicLong highWaterMark = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile Thread waitingConsumer = null;
+    private final AtomicBoolean wakeUpRequested = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    /**
+     * Create empty queue
+     * @param capacity - maximum number of elements (rounded up to power of 2)
+     * @param overflowPolicy - what to do when queue is full
+     */
+    public BoundedMessageQueue(int capacity, QueueOverflowPolicy overflowPolicy) {
+        this(capacity, overflowPolicy, null);
+    }
+
+    /**
+     * Create empty queue
+     * @param capacity - maximum number of elements (rounded up to power of 2)
+     * @param overflowPolicy - what to do when queue is full
+     * @param droppedListener - gets elements dropped by DROP_OLDEST policy (in thread of producer), null - none
+     */
+    public BoundedMessageQueue(int capacity, QueueOverflowPolicy overflowPolicy, Consumer<? super E> droppedListener) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+        this.overflowPolicy = overflowPolicy;
+        this.droppedListener = droppedListener;
+    }
+
+    /**
+     * Add element according to overflow policy, then wake up consumer
+     * @param element - element to add
+     * @return true if element was added; false if queue was full (FAIL policy) or closed
+     */
+    public boolean add(E element) {
+        while (!offer(element)) {
+            if (closed)
+                return false;
+            if (overflowPolicy == QueueOverflowPolicy.FAIL) {
+                rejectedCount.incrementAndGet();
+                return false;
+            } else if (overflowPolicy == QueueOverflowPolicy.DROP_OLDEST) {
+                E dropped = poll();
+                if (dropped != null) {
+                    droppedCount.incrementAndGet();
+                    if (droppedListener != null)
+                        droppedListener.accept(dropped);
+                }
+            } else {
+                LockSupport.parkNanos(this, BLOCKED_PRODUCER_PARK_NANOS);
+            }
+        }
+        updateHighWaterMark();
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+        return true;
+    }
+
+    /**
+     * Try to add element without waiting
+     * @param element - element to add
+     * @return true if added, false if queue is full
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = enqueuePosition.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1); // publish element
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false; // full
+            }
+            // other producer took this slot - try next one
+        }
+    }
+
+    /**
+     * Take oldest element
+     * @return oldest element, null if queue is empty
+     */
+    public E poll() {
+        while (true) {
+            long position = dequeuePosition.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1); // slot is free for next round
+                    return element;
+                }
+            } else if (difference < 0) {
+                return null; // empty
+            }
+        }
+    }
+
+    /**
+     * Move all queued elements to collection
+     * @param target - collection to add elements to (eg. reused list)
+     * @return number of moved elements
+     */
+    public int drainTo(Collection<? super E> target) {
+        int count = 0;
+        E element;
+        while ((element = poll()) != null) {
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Sleep until queue is not empty, queue is closed, consumer is woken up by wakeUp or time elapsed - only one thread can wait
+     * @param timeoutNanos - maximum time of waiting, Long.MAX_VALUE - without limit
+     * @return true if queue is not empty
+     */
+    public boolean awaitNotEmpty(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (isEmpty() && !closed) {
+                if (wakeUpRequested.getAndSet(false))
+                    break;
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    long waitNanos = deadline - System.nanoTime();
+                    if (waitNanos <= 0)
+                        break;
+                    LockSupport.parkNanos(this, waitNanos);
+                }
+                if (Thread.interrupted())
+                    break;
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+        return !isEmpty();
+    }
+
+    /**
+     * Wake up consumer waiting in awaitNotEmpty even if queue is empty (eg. it has other work) - if consumer does not wait,
+     * its next awaitNotEmpty returns at once
+     */
+    public void wakeUp() {
+        wakeUpRequested.set(true);
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Close queue - wake up waiting consumer and blocked producers, no more elements will be added
+     */
+    public void close() {
+        closed = true;
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return actual number of elements in queue
+     */
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private void updateHighWaterMark() {
+        long depth = size();
+        long mark;
+        while (depth > (mark = highWaterMark.get()) && !highWaterMark.compareAndSet(mark, depth))
+            ;
+    }
+}
@@ -0,0 +1,15 @@
+package pl.springtest.communicatorclient.messages;
+
+import java.util.List;
+
+/**
+ * Command typed in console which is executed by client, it is not sent to server (eg. /history)
+ * Commands are given to MessageHandler by name
+ */
+public interface ConsoleCommand {
+    /**
+     * @param line - whole line typed by user
+     * @return lines to show in console
+     */
+    List<String> execute(String line);
+}
@@ -0,0 +1,44 @@
+package pl.springtest.communicatorclient.messages;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Write batches of messages to console - whole batch goes through one big buffer and is flushed once
+ * When batch is very big (client could not keep up with server), only the newest messages are written
+ * and the older ones are collapsed to one line (catch-up mode)
+ * Settings (system properties):
+ * - communicator.console.catchUpThreshold - batch size which turns on catch-up mode (default 5000, 0 - never)
+ * - communicator.console.catchUpKeep - number of newest messages written in catch-up mode (default 500)
+ */
+public class ConsoleRenderer {
+    public static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private final PrintWriter output;
+    private final int catchUpThreshold = Integer.getInteger("communicator.console.catchUpThreshold", 5000);
+    private final int catchUpKeep = Integer.getInteger("communicator.console.catchUpKeep", 500);
+
+    /**
+     * @param console - stream to write to (eg. System.out)
+     */
+    public ConsoleRenderer(OutputStream console) {
+        output = new PrintWriter(new BufferedWriter(new OutputStreamWriter(console), OUTPUT_BUFFER_SIZE), false);
+    }
+
+    /**
+     * Write messages, one per line, and flush console once
+     * @param messages - messages to write
+     */
+    public void render(List<String> messages) {
+        int first = 0;
+        if (catchUpThreshold > 0 && messages.size() > catchUpThreshold)
+            first = Math.max(0, messages.size() - Math.max(0, catchUpKeep)); // catchUpKeep can be bigger than threshold
+        if (first > 0)
+            output.println("... " + first + " older messages skipped ...");
+        for (int i = first; i < messages.size(); i++)
+            output.println(messages.get(i));
+        output.flush();
+    }
+}
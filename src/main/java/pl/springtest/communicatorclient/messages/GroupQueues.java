@@ -0,0 +1,248 @@
+package pl.springtest.communicatorclient.messages;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue of every group (BoundedMessageQueue) with one consumer, which takes elements group by group in round robin:
+ * at most quantum elements of one group at once, so one busy group can not starve other groups
+ * Group is number from GroupRegistry - queue of group is created with its first element
+ * Many threads can add elements, one thread takes them (it can sleep until there is any element)
+ * @param <E> - type of queued elements
+ */
+public class GroupQueues<E> {
+    private final int capacity;
+    private final QueueOverflowPolicy overflowPolicy;
+    private final int quantum;
+    private final Consumer<? super E> droppedListener;
+    private volatile BoundedMessageQueue<E>[] queues;
+    private int nextGroup = 0; // group checked first by next drain (only consumer)
+    private volatile Thread waitingConsumer = null;
+    private final AtomicBoolean wakeUpRequested = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    /**
+     * @param capacity - maximum number of elements of one group
+     * @param overflowPolicy - what to do when queue of group is full
+     * @param quantum - maximum number of elements of one group taken at once
+     */
+    public GroupQueues(int capacity, QueueOverflowPolicy overflowPolicy, int quantum) {
+        this(capacity, overflowPolicy, quantum, null);
+    }
+
+    /**
+     * @param capacity - maximum number of elements of one group
+     * @param overflowPolicy - what to do when queue of group is full
+     * @param quantum - maximum number of elements of one group taken at once
+     * @param droppedListener - gets elements dropped by DROP_OLDEST policy (in thread of producer), null - none
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public GroupQueues(int capacity, QueueOverflowPolicy overflowPolicy, int quantum, Consumer<? super E> droppedListener) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.quantum = Math.max(1, quantum);
+        this.droppedListener = droppedListener;
+        queues = new BoundedMessageQueue[0];
+    }
+
+    /**
+     * Add element to queue of group according to overflow policy, then wake up consumer
+     * @param group - number of group
+     * @param element - element to add
+     * @return true if element was added; false if queue of group was full (FAIL policy) or queues are closed
+     */
+    public boolean add(int group, E element) {
+        if (closed || !queue(group).add(element))
+            return false;
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+        return true;
+    }
+
+    private BoundedMessageQueue<E> queue(int group) {
+        BoundedMessageQueue<E>[] groupQueues = queues;
+        if (group < groupQueues.length && groupQueues[group] != null)
+            return groupQueues[group];
+        synchronized (this) { // only when group gets its first element - array is copied, so consumer sees whole queue
+            BoundedMessageQueue<E>[] newQueues = Arrays.copyOf(queues, Math.max(queues.length, group + 1));
+            if (newQueues[group] == null) {
+                newQueues[group] = new BoundedMessageQueue<E>(capacity, overflowPolicy, droppedListener);
+                if (closed) // close did not see this queue - producer blocked in it is woken up at once
+                    newQueues[group].close();
+            }
+            queues = newQueues;
+            return newQueues[group];
+        }
+    }
+
+    /**
+     * Take elements of next group which has any - groups are taken in round robin
+     * Only consumer thread should take elements
+     * @param target - list to add elements to
+     * @return number of group of added elements, -1 if all queues are empty
+     */
+    public int drainNext(List<? super E> target) {
+        return drainNext(target, quantum);
+    }
+
+    /**
+     * Take elements of next group which has any, at most max (eg. demand of subscriber) - groups are taken in round robin
+     * Only consumer thread should take elements
+     * @param target - list to add elements to
+     * @param max - maximum number of elements, quantum is used if it is smaller
+     * @return number of group of added elements, -1 if all queues are empty
+     */
+    public int drainNext(List<? super E> target, int max) {
+        BoundedMessageQueue<E>[] groupQueues = queues;
+        for (int i = 0; i < groupQueues.length; i++) {
+            int group = (nextGroup + i) % groupQueues.length;
+            BoundedMessageQueue<E> queue = groupQueues[group];
+            if (queue == null || queue.isEmpty())
+                continue;
+            drainGroup(group, target, max);
+            nextGroup = group + 1;
+            return group;
+        }
+        return -1;
+    }
+
+    /**
+     * Take at most quantum elements of group
+     * @param group - number of group
+     * @param target - list to add elements to
+     * @return number of added elements
+     */
+    public int drainGroup(int group, List<? super E> target) {
+        return drainGroup(group, target, quantum);
+    }
+
+    private int drainGroup(int group, List<? super E> target, int max) {
+        BoundedMessageQueue<E>[] groupQueues = queues;
+        if (group >= groupQueues.length || groupQueues[group] == null)
+            return 0;
+        int limit = Math.min(quantum, max);
+        int count = 0;
+        E element;
+        while (count < limit && (element = groupQueues[group].poll()) != null) {
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Take elements of all groups - quantum of every group in turn, until queues are empty
+     * (at most as many elements as were queued at start, so busy producers can not keep consumer here forever)
+     * @param target - list to add elements to
+     * @return number of added elements
+     */
+    public int drainAll(List<? super E> target) {
+        int start = target.size();
+        int limit = size();
+        while (target.size() - start < limit && drainNext(target) != -1)
+            ;
+        return target.size() - start;
+    }
+
+    /**
+     * Sleep until any queue is not empty, queues are closed, consumer is woken up by wakeUp or time elapsed -
+     * only one thread can wait
+     * @param timeoutNanos - maximum time of waiting, Long.MAX_VALUE - without limit
+     * @return true if any queue is not empty
+     */
+    public boolean awaitNotEmpty(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        waitingConsumer = Thread.currentThread();
+        try {
+            while (isEmpty() && !closed) {
+                if (wakeUpRequested.getAndSet(false))
+                    break;
+                if (timeoutNanos == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    long waitNanos = deadline - System.nanoTime();
+                    if (waitNanos <= 0)
+                        break;
+                    LockSupport.parkNanos(this, waitNanos);
+                }
+                if (Thread.interrupted())
+                    break;
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+        return !isEmpty();
+    }
+
+    /**
+     * Wake up consumer waiting in awaitNotEmpty even if queues are empty - if consumer does not wait,
+     * its next awaitNotEmpty returns at once
+     */
+    public void wakeUp() {
+        wakeUpRequested.set(true);
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Close queues - wake up waiting consumer and blocked producers, no more elements will be added
+     */
+    public void close() {
+        closed = true;
+        synchronized (this) { // queue created at the same time is closed here or by queue
+            for (BoundedMessageQueue<E> queue : queues)
+                if (queue != null)
+                    queue.close();
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return number of elements of all groups
+     */
+    public int size() {
+        int size = 0;
+        for (BoundedMessageQueue<E> queue : queues)
+            if (queue != null)
+                size += queue.size();
+        return size;
+    }
+
+    /**
+     * @return the biggest number of elements which were waiting in queue of one group at once
+     */
+    public long getHighWaterMark() {
+        long highWaterMark = 0;
+        for (BoundedMessageQueue<E> queue : queues)
+            if (queue != null)
+                highWaterMark = Math.max(highWaterMark, queue.getHighWaterMark());
+        return highWaterMark;
+    }
+
+    /**
+     * @return number of elements dropped (DROP_OLDEST) or rejected (FAIL) because queue of group was full
+     */
+    public long getLostCount() {
+        long lost = 0;
+        for (BoundedMessageQueue<E> queue : queues)
+            if (queue != null)
+                lost += queue.getDroppedCount() + queue.getRejectedCount();
+        return lost;
+    }
+}
@@ -1,111 +1,221 @@
 package pl.springtest.communicatorclient.messages;
 
+import pl.springtest.communicatorclient.client.CommunicatorClient;
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+import pl.springtest.communicatorclient.metrics.MetricsScope;
 import pl.springtest.communicatorclient.statement.ClientStatement;
-import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.InboundMessage;
+import pl.springtest.communicatorclient.workers.WorkerExecutor;
+import pl.springtest.communicatorclient.workers.WorkerExecutors;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Read System.in and write System.out - messages from client to server and from server to client
+ * Read System.in and write System.out - console of CommunicatorClient
+ * Workers are started by WorkerExecutor - they block only on locks which do not pin virtual threads (no synchronized)
+ * Console commands (eg. /history, /send) are not sent to server - they are executed by client
+ * Typed message goes to active group; messages from server come as subscriber of CommunicatorClient and they are shown
+ * group by group in round robin, so one busy group does not starve others; messages of client (eg. results of commands)
+ * go with login group
+ * Subscriber requests as many messages as were written to console - console which can not keep up leaves messages
+ * in CommunicatorClient, which drops the oldest ones
  */
-public class MessageHandler {
-    private List<String> messagesToServer;
-    private List<String> messagesFromServer;
-    private boolean connectionToServerOK;
-    private ReadInput readInput = new ReadInput();
-    private WriteOutput writeOutput = new WriteOutput();
+public class MessageHandler implements Flow.Subscriber<InboundMessage> {
+    private final GroupQueues<String> messagesFromServer; // DROP_OLDEST - full queue of one group does not stop reading of others
+    private final AtomicLong messagesFromServerReceivedNanos = new AtomicLong(); // when the oldest message was read from socket, 0 - none
+    private final AtomicLong notRequestedMessages = new AtomicLong(); // messages from server delivered since last request
+    private volatile Flow.Subscription subscription = null;
+    private volatile int activeGroup = 0; // group of typed messages
+    private volatile boolean connectionToServerOK;
+    private final Map<String, ConsoleCommand> consoleCommands;
+    private final ConsoleCommand messageToServer;
+    private final ReadInput readInput;
+    private final WriteOutput writeOutput;
+    private final Thread readInputThread;
+    private final Thread writeOutputThread;
+    private final MetricsScope metrics = ClientMetrics.REGISTRY.scope("console"); // closed when WriteOutput ends
 
     /**
-     * Create clean list of messages to and from server
-     * It has to be connection to server established
+     * Create console on System.in and System.out - threads are chosen by WorkerExecutors.getDefault
+     * @param messageToServer - sends typed line which is not command, gives lines to show in console
      */
-    public MessageHandler() {
-        messagesToServer = new ArrayList<String>();
-        messagesFromServer = new ArrayList<String>();
+    public MessageHandler(ConsoleCommand messageToServer) {
+        this(WorkerExecutors.getDefault(), System.in, System.out, Collections.<String, ConsoleCommand>emptyMap(), messageToServer);
+    }
+
+    /**
+     * Create console - messages from server are shown when it subscribes CommunicatorClient
+     * @param workerExecutor - starts ReadInput and WriteOutput workers
+     * @param input - messages typed by user
+     * @param output - console for messages from server
+     * @param consoleCommands - commands executed by client by name with "/" (eg. "/history") - map is copied
+     * @param messageToServer - sends typed line which is not command, gives lines to show in console
+     */
+    public MessageHandler(WorkerExecutor workerExecutor, InputStream input, OutputStream output,
+                          Map<String, ConsoleCommand> consoleCommands, ConsoleCommand messageToServer) {
+        this.consoleCommands = new HashMap<String, ConsoleCommand>(consoleCommands);
+        this.messageToServer = messageToServer;
+        messagesFromServer = new GroupQueues<String>(CommunicatorClient.MESSAGES_FROM_SERVER_CAPACITY,
+                QueueOverflowPolicy.DROP_OLDEST, CommunicatorClient.QUEUE_QUANTUM);
         connectionToServerOK = true;
+        readInput = new ReadInput(input, output);
+        writeOutput = new WriteOutput(output);
+        metrics.gauge("receiveQueueDepth", messagesFromServer::size);
+        metrics.gauge("receiveQueueLost", messagesFromServer::getLostCount);
 
         // activate threads for writing and reading
-
-        readInput.start();;
-        writeOutput.start();
+        readInputThread = workerExecutor.start("Thread - ReadInput", readInput);
+        writeOutputThread = workerExecutor.start("Thread - WriteOutput", writeOutput);
     }
 
     /**
-     * Thread reading input messages from System.in
-     * When read, it is added to messagesToServer list
-     * Thread will close when there is no longer connection to server
+     * Worker reading input messages from System.in
+     * Typed message is given to messageToServer
+     * Worker will end when there is no longer connection to server
      */
-    private class ReadInput extends Thread {
-        Scanner input = new Scanner(System.in);
+    private class ReadInput implements Runnable {
+        private final Scanner input;
+        private final PrintStream prompt;
         String newMessage = null;
+
+        ReadInput(InputStream input, OutputStream prompt) {
+            this.input = new Scanner(input);
+            this.prompt = (prompt instanceof PrintStream) ? (PrintStream) prompt : new PrintStream(prompt, true);
+        }
+
         @Override
         public void run() {
-            this.setName("Thread - ReadInput");
             while (connectionToServerOK) {
-                System.out.print("> ");
+                prompt.print("> ");
                 newMessage = input.nextLine();
-                synchronized (messagesToServer) {
-                    messagesToServer.add(newMessage);
-                }
+                ConsoleCommand consoleCommand = consoleCommand(newMessage);
+                addMessagesFromServer((consoleCommand != null ? consoleCommand : messageToServer).execute(newMessage));
             }
             ClientStatement.Info("End of ReadInput thread");
         }
     }
 
     /**
-     * Thread writing output to System.out
+     * Worker writing output to System.out
+     * Messages of all groups are taken in round robin (quantum of every group in turn) and written without lock,
+     * so thread delivering messages from server is not blocked by console
      */
-    private class WriteOutput extends Thread {
+    private class WriteOutput implements Runnable {
+        private final ConsoleRenderer consoleRenderer;
+        private final List<String> newMessages = new ArrayList<String>();
+
+        WriteOutput(OutputStream output) {
+            consoleRenderer = new ConsoleRenderer(output);
+        }
+
         @Override
         public void run() {
-            this.setName("Thread - WriteOutput");
             while (connectionToServerOK) {
-                synchronized (messagesFromServer) {
-                    try {
-                        messagesFromServer.wait(); // wait for any change (new message added)
-                    } catch (InterruptedException e) {
-                        ClientStatement.Error("InterruptedException - WriteOutput occurred.", ClientStatement.NO_EXIT);
-                    } finally {
-                        // writing messages from list and then delete it from list - list is only for new unhandled messages
-                        while (messagesFromServer.size() > 0) {
-                            System.out.println(messagesFromServer.get(0));
-                            messagesFromServer.remove(0);
-                        }
-                    }
-                }
+                messagesFromServer.awaitNotEmpty(Long.MAX_VALUE); // wait for new messages
+                long receivedNanos = messagesFromServerReceivedNanos.getAndSet(0);
+                messagesFromServer.drainAll(newMessages);
+                consoleRenderer.render(newMessages);
+                if (ClientMetrics.ENABLED && !newMessages.isEmpty() && receivedNanos != 0)
+                    ClientMetrics.READ_TO_PRINT_NANOS.record(System.nanoTime() - receivedNanos);
+                newMessages.clear();
+                long written = notRequestedMessages.getAndSet(0);
+                Flow.Subscription currentSubscription = subscription;
+                if (written > 0 && currentSubscription != null)
+                    currentSubscription.request(written);
             }
+            metrics.close();
             ClientStatement.Info("End of WriteOutput thread");
         }
     }
 
-    public boolean isMessagesToServerEmpty() {
-        return messagesToServer.isEmpty();
+    /**
+     * Console subscribes messages from server - it requests as many as fit to its queue
+     * @param subscription - subscription of CommunicatorClient
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(CommunicatorClient.MESSAGES_FROM_SERVER_CAPACITY);
+    }
+
+    /**
+     * @param message - message from server, shown in queue of its group
+     */
+    @Override
+    public void onNext(InboundMessage message) {
+        messagesFromServerReceivedNanos.compareAndSet(0, message.getReceivedNanos());
+        messagesFromServer.add(message.getGroup(), message.toDisplayText());
+        notRequestedMessages.incrementAndGet();
     }
 
     /**
-     * Get copy of list and then clear original list
-     * @return copy of messagesToServer
+     * Connection was lost and it could not be established again - application exits
+     * @param throwable - why connection was lost
      */
-    public List<String> GetMessagesToServerAndClear() {
-        List<String> copyMessagesToServer = new ArrayList<String>();
-
-        synchronized(messagesToServer) {
-            // make a copy of list
-            for (String mess : messagesToServer)
-                copyMessagesToServer.add(mess);
-            messagesToServer.clear();
-        }
-        return copyMessagesToServer;
+    @Override
+    public void onError(Throwable throwable) {
+        resetConnectionToServerOK();
+        ClientStatement.Error(throwable.getMessage(), ClientStatement.DO_EXIT);
+    }
+
+    /**
+     * Client was closed - by user, by server or because connection could not be established again
+     */
+    @Override
+    public void onComplete() {
+        resetConnectionToServerOK();
+    }
+
+    /**
+     * @param line - line typed by user
+     * @return command registered for first word of line, null if line is message to server
+     */
+    private ConsoleCommand consoleCommand(String line) {
+        if (!line.startsWith("/"))
+            return null;
+        int space = line.indexOf(' ');
+        return consoleCommands.get(space == -1 ? line : line.substring(0, space));
+    }
+
+    /**
+     * @param group - number of group of next typed messages
+     */
+    public void setActiveGroup(int group) {
+        activeGroup = group;
+    }
+
+    public int getActiveGroup() {
+        return activeGroup;
     }
 
+    /**
+     * Add message of client (eg. result of command) - it is shown with login group
+     * @param newMessage - message to show
+     */
     public void addMessageFromServer(String newMessage) {
-        synchronized (messagesFromServer) {
-            messagesFromServer.add(newMessage);
-            messagesFromServer.notify();
-        }
+        messagesFromServerReceivedNanos.compareAndSet(0, System.nanoTime());
+        messagesFromServer.add(0, newMessage);
+    }
+
+    /**
+     * Add messages of client (eg. lines of command) - they are shown with login group
+     * @param newMessages - messages to add (list is copied)
+     */
+    public void addMessagesFromServer(List<String> newMessages) {
+        messagesFromServerReceivedNanos.compareAndSet(0, System.nanoTime());
+        for (String newMessage : newMessages)
+            messagesFromServer.add(0, newMessage);
     }
 
     public boolean isConnectionToServerOK() {
@@ -114,9 +224,17 @@ public class MessageHandler {
 
     public void resetConnectionToServerOK() {
         connectionToServerOK = false;
-        synchronized (messagesFromServer) {
-            messagesFromServer.notify(); // wake up WriteOutput thread before closing this thread
-        }
+        messagesFromServer.close(); // wake up WriteOutput thread before closing this thread
+    }
+
+    /**
+     * Wait until ReadInput and WriteOutput workers end
+     * ReadInput ends after next line of input, when connection to server was reset
+     * @throws InterruptedException - when waiting thread is interrupted
+     */
+    public void join() throws InterruptedException {
+        writeOutputThread.join();
+        readInputThread.join();
     }
 
     @Override
@@ -125,12 +243,11 @@ public class MessageHandler {
         if (o == null || getClass() != o.getClass()) return false;
         MessageHandler that = (MessageHandler) o;
         return connectionToServerOK == that.connectionToServerOK &&
-                Objects.equals(messagesToServer, that.messagesToServer) &&
                 Objects.equals(messagesFromServer, that.messagesFromServer);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(messagesToServer, messagesFromServer, connectionToServerOK);
+        return Objects.hash(messagesFromServer, connectionToServerOK);
     }
 }
@@ -0,0 +1,10 @@
+package pl.springtest.communicatorclient.messages;
+
+/**
+ * What to do with new message when queue is full
+ */
+public enum QueueOverflowPolicy {
+    BLOCK,
+    DROP_OLDEST,
+    FAIL;
+}
@@ -0,0 +1,128 @@
+package pl.springtest.communicatorclient.metrics;
+
+import pl.springtest.communicatorclient.statement.ClientStatement;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of connection to server - recorded by encoder, decoder and console
+ * Settings (system properties):
+ * - communicator.metrics - "false" turns off recording (default "true")
+ * - communicator.metrics.snapshotFile - file to which snapshot of all metrics is appended periodically (default none)
+ * - communicator.metrics.snapshotSeconds - period of snapshots (default 10 s)
+ * Metrics are visible by JMX as MBean pl.springtest.communicatorclient:type=Metrics,name=<client name> (see MetricsMBean)
+ * Counters and histograms are shared by clients of application, gauges (eg. queue depth) belong to one client -
+ * their names start with <client name>-<number>. (see MetricsScope), they are removed when client is closed
+ * Times are in nanoseconds
+ */
+public abstract class ClientMetrics {
+    public static final boolean ENABLED = !"false".equals(System.getProperty("communicator.metrics", "true"));
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+    public static final LongAdder MESSAGES_SENT = REGISTRY.counter("messagesSent");
+    public static final LongAdder BYTES_SENT = REGISTRY.counter("bytesSent");
+    public static final LongAdder FLUSHES = REGISTRY.counter("flushes");
+    public static final LongAdder MESSAGES_RECEIVED = REGISTRY.counter("messagesReceived");
+    public static final LongAdder BYTES_RECEIVED = REGISTRY.counter("bytesReceived");
+    public static final LongAdder MALFORMED_FRAMES = REGISTRY.counter("malformedFrames"); // skipped text frames
+    public static final LongAdder FILE_BYTES_SENT = REGISTRY.counter("fileBytesSent"); // bytes of files, without frame headers
+    public static final LongAdder FILE_BYTES_RECEIVED = REGISTRY.counter("fileBytesReceived");
+    public static final LatencyHistogram ENCODE_NANOS = REGISTRY.histogram("encodeNanos"); // one batch, with compression
+    public static final LatencyHistogram DECODE_NANOS = REGISTRY.histogram("decodeNanos"); // frames of one read
+    public static final LatencyHistogram READ_TO_PRINT_NANOS = REGISTRY.histogram("readToPrintNanos"); // socket read -> console flush
+    public static final LatencyHistogram HEARTBEAT_RTT_NANOS = REGISTRY.histogram("heartbeatRttNanos"); // heartbeat -> answer read
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    private static boolean started = false;
+
+    /**
+     * Record batch written to server
+     * @param messages - number of messages in batch
+     * @param bytes - number of bytes written (after compression)
+     * @param encodeNanos - time of encoding (and compression) of batch
+     */
+    public static void recordSent(int messages, int bytes, long encodeNanos) {
+        MESSAGES_SENT.add(messages);
+        BYTES_SENT.add(bytes);
+        FLUSHES.increment();
+        ENCODE_NANOS.record(encodeNanos);
+    }
+
+    /**
+     * Record one read from server
+     * @param messages - number of decoded messages
+     * @param bytes - number of bytes read
+     * @param decodeNanos - time of decoding of frames
+     */
+    public static void recordReceived(int messages, int bytes, long decodeNanos) {
+        MESSAGES_RECEIVED.add(messages);
+        BYTES_RECEIVED.add(bytes);
+        DECODE_NANOS.record(decodeNanos);
+    }
+
+    /**
+     * Register MBean and start periodic snapshots (if they are set) - only first call does it
+     * @param clientName - name of client in name of MBean and of default snapshot file
+     */
+    public static synchronized void start(String clientName) {
+        if (!ENABLED || started)
+            return;
+        started = true;
+        try {
+            ObjectName objectName = new ObjectName("pl.springtest.communicatorclient:type=Metrics,name=" + ObjectName.quote(clientName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(REGISTRY), objectName);
+        } catch (JMException e) {
+            ClientStatement.Warning("Metrics MBean can not be registered: " + e.getMessage());
+        }
+
+        String snapshotFile = System.getProperty("communicator.metrics.snapshotFile");
+        if (snapshotFile != null) {
+            long periodMillis = TimeUnit.SECONDS.toMillis(Long.getLong("communicator.metrics.snapshotSeconds", 10));
+            Thread snapshotWriter = new Thread(() -> writeSnapshots(snapshotFile, Math.max(1, periodMillis)), "Thread - MetricsSnapshot");
+            snapshotWriter.setDaemon(true);
+            snapshotWriter.start();
+        }
+    }
+
+    /**
+     * Append one line with all metrics to file every period, until application ends
+     */
+    private static void writeSnapshots(String snapshotFile, long periodMillis) {
+        while (true) {
+            try {
+                Thread.sleep(periodMillis);
+                Files.write(Paths.get(snapshotFile), snapshotLine(REGISTRY.snapshot()).getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                ClientStatement.Warning("IOException occurred when writing metrics snapshot: " + e.getMessage());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param snapshot - metrics
+     * @return line "date time - name=value, name=value..."
+     */
+    public static String snapshotLine(Map<String, Long> snapshot) {
+        StringBuilder line = new StringBuilder(LocalDateTime.now().format(DATE_TIME_FORMATTER)).append(" -");
+        String separator = " ";
+        for (Map.Entry<String, Long> metric : snapshot.entrySet()) {
+            line.append(separator).append(metric.getKey()).append('=').append(metric.getValue());
+            separator = ", ";
+        }
+        return line.append(System.lineSeparator()).toString();
+    }
+}
@@ -0,0 +1,88 @@
+package pl.springtest.communicatorclient.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with log-linear buckets (like HdrHistogram):
+ * every power of 2 is split to 64 buckets, so value is kept with precision better than 1.6%
+ * Values can be recorded by many threads at the same time without locks
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKET_HALF_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Record one value
+     * @param value - value to record (eg. latency in nanoseconds), negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        long max;
+        while (value > (max = maxValue.get()) && !maxValue.compareAndSet(max, value))
+            ;
+    }
+
+    /**
+     * Value at percentile - the highest value which is equivalent (in the same bucket)
+     * @param percentile - percentile from 0 to 100 (eg. 99.9)
+     * @return value at percentile, 0 if histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0)
+            return 0;
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            cumulativeCount += counts.get(i);
+            if (cumulativeCount >= countAtPercentile)
+                return Math.min(highestEquivalentValue(i), maxValue.get());
+        }
+        return maxValue.get();
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    /**
+     * Remove all recorded values (eg. after warm-up)
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        totalCount.set(0);
+        maxValue.set(0);
+    }
+
+    /**
+     * Values below 128 have own buckets; bigger values are shifted so 7 most significant bits are left
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    private static long highestEquivalentValue(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT)
+            return bucketIndex;
+        int shift = bucketIndex / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = bucketIndex - (long) shift * SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,77 @@
+package pl.springtest.communicatorclient.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+import java.util.Map;
+
+/**
+ * JMX view of MetricsRegistry - every metric of snapshot is read-only attribute of type long,
+ * operation "reset" sets counters and histograms to 0
+ * Attributes are read from registry at every call, so metrics registered later are visible too
+ */
+public class MetricsMBean implements DynamicMBean {
+    private final MetricsRegistry registry;
+
+    /**
+     * @param registry - metrics to show
+     */
+    public MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = registry.snapshot().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException("No metric " + attribute);
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metric " + attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Long> snapshot = registry.snapshot();
+        AttributeList attributeList = new AttributeList();
+        for (String attribute : attributes)
+            if (snapshot.containsKey(attribute))
+                attributeList.add(new Attribute(attribute, snapshot.get(attribute)));
+        return attributeList;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList(); // all attributes are read-only
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if (!actionName.equals("reset"))
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        registry.reset();
+        return null;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Long> snapshot = registry.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (String name : snapshot.keySet())
+            attributes[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+        MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Set counters and histograms to 0",
+                new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(), "Metrics of CommunicatorClient", attributes, null,
+                new MBeanOperationInfo[]{reset}, null);
+    }
+}
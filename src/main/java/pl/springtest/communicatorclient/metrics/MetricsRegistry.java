@@ -0,0 +1,98 @@
+package pl.springtest.communicatorclient.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named metrics of application:
+ * - counters - LongAdder, striped, so threads which record at the same time do not contend on one variable
+ * - histograms - LatencyHistogram of times in nanoseconds
+ * - gauges - values read only when snapshot is taken (eg. queue depth), so they cost nothing when they are not read
+ * Metrics are created once and kept in fields by recording code - registry is used only to find and read them
+ * Gauges of clients are registered by MetricsScope of every client
+ */
+public class MetricsRegistry {
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+    private final AtomicInteger scopes = new AtomicInteger();
+
+    /**
+     * @param name - name of counter
+     * @return counter - created by first call
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * @param name - name of histogram
+     * @return histogram - created by first call
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Register gauge - gauge registered before with the same name is replaced
+     * @param name - name of gauge
+     * @param value - reads current value
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Remove gauge - only when it was not replaced by other one
+     * @param name - name of gauge
+     * @param value - gauge registered by gauge
+     */
+    public void removeGauge(String name, LongSupplier value) {
+        gauges.remove(name, value);
+    }
+
+    /**
+     * @param owner - name of owner of gauges (eg. client name)
+     * @return new scope - names of its gauges start with owner + "-" + number of scope + "."
+     */
+    public MetricsScope scope(String owner) {
+        return new MetricsScope(this, owner + "-" + scopes.incrementAndGet() + ".");
+    }
+
+    /**
+     * Current values of all metrics, sorted by name
+     * Histogram gives values: <name>.count, <name>.p50, <name>.p99, <name>.p999, <name>.max
+     * @return name of metric -> value
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet())
+            snapshot.put(counter.getKey(), counter.getValue().sum());
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet())
+            snapshot.put(gauge.getKey(), gauge.getValue().getAsLong());
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            snapshot.put(entry.getKey() + ".count", histogram.getTotalCount());
+            snapshot.put(entry.getKey() + ".p50", histogram.getValueAtPercentile(50));
+            snapshot.put(entry.getKey() + ".p99", histogram.getValueAtPercentile(99));
+            snapshot.put(entry.getKey() + ".p999", histogram.getValueAtPercentile(99.9));
+            snapshot.put(entry.getKey() + ".max", histogram.getMaxValue());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Set counters and histograms to 0 (gauges show current state - they are not reset)
+     */
+    public void reset() {
+        for (LongAdder counter : counters.values())
+            counter.reset();
+        for (LatencyHistogram histogram : histograms.values())
+            histogram.reset();
+    }
+}
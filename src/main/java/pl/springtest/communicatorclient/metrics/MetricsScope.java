@@ -0,0 +1,56 @@
+package pl.springtest.communicatorclient.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Gauges of one client (or console) in MetricsRegistry - their names have prefix of scope (eg. "Adam-1."),
+ * so gauges of many clients in one application do not replace each other
+ * Close removes gauges from registry - closed client is not kept by them (its queues, spool and history)
+ */
+public class MetricsScope implements AutoCloseable {
+    private final MetricsRegistry registry;
+    private final String prefix;
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param registry - registry of gauges
+     * @param prefix - added to names of gauges
+     */
+    MetricsScope(MetricsRegistry registry, String prefix) {
+        this.registry = registry;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Register gauge in registry as prefix + name - it is not registered when scope is closed
+     * @param name - name of gauge in scope
+     * @param value - reads current value
+     */
+    public synchronized void gauge(String name, LongSupplier value) {
+        if (closed)
+            return;
+        gauges.put(prefix + name, value);
+        registry.gauge(prefix + name, value);
+    }
+
+    /**
+     * @return prefix of names of gauges
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Remove gauges of scope from registry
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet())
+            registry.removeGauge(gauge.getKey(), gauge.getValue());
+        gauges.clear();
+    }
+}
@@ -0,0 +1,133 @@
+package pl.springtest.communicatorclient.sessions;
+
+import pl.springtest.communicatorclient.statement.ClientStatement;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One thread with one selector - handles sockets of many sessions
+ * Other threads give work to event loop by execute (eg. register session, flush messages)
+ */
+class EventLoop implements Runnable {
+    public static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE); // shared by all sessions of this loop
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean(false);
+    private final AtomicInteger sessionCount = new AtomicInteger(0);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Open selector and start thread of event loop
+     * @param name - name of thread
+     * @throws IOException - when selector can not be open
+     */
+    EventLoop(String name) throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    /**
+     * Run task by event loop thread
+     * Selector is woken up only once for many tasks added before loop takes them
+     * @param task - task to run
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread && wakeUpPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    /**
+     * Add new session to this loop
+     * @param session - session with channel connecting to server
+     */
+    void addSession(Session session) {
+        sessionCount.incrementAndGet();
+        execute(session::register);
+    }
+
+    void sessionClosed() {
+        sessionCount.decrementAndGet();
+    }
+
+    int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    ByteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /**
+     * Close all sessions and stop thread
+     */
+    void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                ClientStatement.Warning("IOException occurred in event loop selector.");
+                break;
+            }
+            wakeUpPending.set(false);
+            runTasks();
+
+            Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+            while (selectedKeys.hasNext()) {
+                SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+                Session session = (Session) key.attachment();
+                try {
+                    if (key.isValid() && key.isConnectable())
+                        session.handleConnect();
+                    if (key.isValid() && key.isReadable())
+                        session.handleRead();
+                    if (key.isValid() && key.isWritable())
+                        session.flush();
+                } catch (CancelledKeyException e) {
+                    session.closeSession("Session key cancelled", false);
+                }
+            }
+        }
+
+        runTasks();
+        for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys()))
+            ((Session) key.attachment()).closeSession("Session engine closed", true);
+        try {
+            selector.close();
+        } catch (IOException e) {
+            ; // nothing more can be done
+        }
+        ClientStatement.Info("End of " + thread.getName() + " thread");
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+            task.run();
+    }
+}
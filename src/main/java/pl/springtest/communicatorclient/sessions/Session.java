@@ -0,0 +1,302 @@
+package pl.springtest.communicatorclient.sessions;
+
+import pl.springtest.communicatorclient.messages.BoundedMessageQueue;
+import pl.springtest.communicatorclient.messages.QueueOverflowPolicy;
+import pl.springtest.communicatorclient.statement.ClientStatement;
+import pl.springtest.communicatorclient.toServerConnection.BinaryFraming;
+import pl.springtest.communicatorclient.toServerConnection.ConnectionSettings;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.FrameCompression;
+import pl.springtest.communicatorclient.toServerConnection.FrameDecoder;
+import pl.springtest.communicatorclient.toServerConnection.MessageEncoder;
+import pl.springtest.communicatorclient.toServerConnection.ServerMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One client connection to server with its own identity (client name and group ID)
+ * Session has no threads - its socket is handled by one event loop of SessionEngine
+ * send and close can be called by any thread; other methods are called only by event loop thread
+ * Listener which throws RuntimeException closes only its session - event loop keeps serving other sessions
+ */
+public class Session {
+    public static final int RECEIVE_BUFFER_SIZE = 4 * 1024;
+    public static final int MESSAGES_TO_SERVER_CAPACITY = Integer.getInteger("communicator.session.queueCapacity", 256);
+
+    private final String clientName;
+    private final String groupId;
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final SessionListener listener;
+    private final MessageEncoder messageEncoder;
+    private final FrameDecoder frameDecoder = new FrameDecoder(RECEIVE_BUFFER_SIZE);
+    private final BoundedMessageQueue<String> messagesToServer =
+            new BoundedMessageQueue<String>(MESSAGES_TO_SERVER_CAPACITY, QueueOverflowPolicy.FAIL);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean open = true;
+
+    // used only by event loop thread
+    private SelectionKey selectionKey = null;
+    private String unsentMessage = null; // taken from queue, but did not fit to write buffer
+    private ByteBuffer unsentBytes = null; // rest of frames which socket did not accept
+
+    Session(SocketChannel channel, EventLoop eventLoop, String clientName, String groupId, SessionListener listener) {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.clientName = clientName;
+        this.groupId = groupId;
+        this.listener = listener;
+        this.messageEncoder = new MessageEncoder(clientName, groupId);
+    }
+
+    /**
+     * Queue message to server - it is sent by event loop thread
+     * @param message - text message to server
+     * @return true if message was queued; false if session is closed or its queue is full
+     */
+    public boolean send(String message) {
+        if (!open || !messagesToServer.add(message))
+            return false;
+        if (flushScheduled.compareAndSet(false, true))
+            eventLoop.execute(this::flush);
+        return true;
+    }
+
+    /**
+     * Send LOGOUT and close session
+     */
+    public void close() {
+        eventLoop.execute(() -> closeSession("Closed by client", true));
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Register channel in selector of event loop - called by event loop thread
+     */
+    void register() {
+        try {
+            if (channel.isConnectionPending()) {
+                selectionKey = channel.register(eventLoop.getSelector(), SelectionKey.OP_CONNECT, this);
+            } else {
+                selectionKey = channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+                connected();
+            }
+        } catch (IOException e) {
+            closeSession("IOException occurred when registering session: " + e.getMessage(), false);
+        }
+    }
+
+    /**
+     * Channel is ready to finish connection
+     */
+    void handleConnect() {
+        try {
+            if (!channel.finishConnect())
+                return;
+            selectionKey.interestOps(SelectionKey.OP_READ);
+            connected();
+        } catch (IOException e) {
+            closeSession("IOException occurred when connecting: " + e.getMessage(), false);
+        }
+    }
+
+    /**
+     * Send LOGIN (before messages queued while connecting) and inform listener
+     */
+    private void connected() {
+        unsentBytes = encodeFrame(ConnectionSettings.loginMessage(), ExtraInfo.NEW_CONNECTION);
+        flush();
+        if (!open)
+            return;
+        try {
+            listener.onConnected(this);
+        } catch (RuntimeException e) {
+            closeSession(listenerFailed("onConnected", e), true);
+        }
+    }
+
+    /**
+     * Channel has data to read
+     */
+    void handleRead() {
+        List<ServerMessage> frames;
+        try {
+            frames = frameDecoder.readFrames(channel);
+        } catch (IOException e) {
+            closeSession("IOException occurred when reading message from server: " + e.getMessage(), false);
+            return;
+        }
+        if (frames == null) {
+            closeSession("Server closed connection", false);
+            return;
+        }
+        for (ServerMessage message : frames) {
+            if (message.isServerShuttingDown()) {
+                closeSession("Server is shutting down", false);
+                return;
+            }
+            if (message.getExtraInfo() == ExtraInfo.FRAMING) {
+                int[] ids = BinaryFraming.parseAccept(message.getMessage().toString());
+                if (ids != null)
+                    messageEncoder.useBinaryFraming(ids[0], ids[1]); // frames already encoded are sent in text format
+                continue;
+            }
+            if (message.getExtraInfo() == ExtraInfo.COMPRESSION) {
+                String accept = message.getMessage().toString();
+                if (FrameCompression.isAccepted(accept))
+                    messageEncoder.useCompression(ConnectionSettings.newCompressor(accept));
+                continue;
+            }
+            try {
+                listener.onMessage(this, message.toDisplayText());
+            } catch (RuntimeException e) {
+                closeSession(listenerFailed("onMessage", e), true);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write queued messages - frames are encoded to write buffer shared by all sessions of event loop
+     * What socket does not accept is kept in session and written when channel is writable again
+     */
+    void flush() {
+        flushScheduled.set(false);
+        if (!open || selectionKey == null || !channel.isConnected())
+            return; // messages will be sent after connection is finished
+
+        try {
+            ByteBuffer writeBuffer = eventLoop.getWriteBuffer();
+            while (true) {
+                if (unsentBytes != null) {
+                    channel.write(unsentBytes);
+                    if (unsentBytes.hasRemaining()) {
+                        setWriteInterest(true);
+                        return;
+                    }
+                    unsentBytes = null;
+                }
+
+                writeBuffer.clear();
+                String message;
+                while ((message = (unsentMessage != null) ? unsentMessage : messagesToServer.poll()) != null) {
+                    unsentMessage = null;
+                    if (!messageEncoder.encode(message, ExtraInfo.NO_INFO, writeBuffer)) {
+                        if (writeBuffer.position() == 0)
+                            unsentBytes = encodeFrame(message, ExtraInfo.NO_INFO); // bigger than write buffer
+                        else
+                            unsentMessage = message;
+                        break;
+                    }
+                }
+                writeBuffer.flip();
+                if (!writeBuffer.hasRemaining() && unsentBytes == null) {
+                    setWriteInterest(false);
+                    return;
+                }
+
+                ByteBuffer batch = messageEncoder.compressBatch(writeBuffer);
+                channel.write(batch);
+                if (batch.hasRemaining()) {
+                    // write buffer is shared - rest has to be copied to session
+                    unsentBytes = ByteBuffer.allocate(batch.remaining());
+                    unsentBytes.put(batch).flip();
+                    setWriteInterest(true);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            closeSession("IOException occurred when sending message to server: " + e.getMessage(), false);
+        } catch (CancelledKeyException e) {
+            closeSession("Session key cancelled", false);
+        }
+    }
+
+    /**
+     * Close channel and inform listener - called by event loop thread
+     * @param reason - why session is closed
+     * @param sendLogout - true if queued messages and LOGOUT should be sent before closing (best effort - without waiting)
+     */
+    void closeSession(String reason, boolean sendLogout) {
+        if (!open)
+            return;
+        if (sendLogout && selectionKey != null && channel.isConnected()) {
+            flush();
+            if (open && unsentBytes == null) {
+                try {
+                    channel.write(encodeFrame("LOGOUT", ExtraInfo.SHUTDOWN));
+                } catch (IOException e) {
+                    ; // connection is being closed anyway
+                }
+            }
+        }
+        open = false;
+        messagesToServer.close();
+        if (selectionKey != null)
+            selectionKey.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ; // nothing more can be done
+        }
+        if (messageEncoder.getCompressor() != null)
+            messageEncoder.getCompressor().close();
+        if (frameDecoder.getDecompressor() != null)
+            frameDecoder.getDecompressor().close();
+        eventLoop.sessionClosed();
+        try {
+            listener.onClosed(this, reason);
+        } catch (RuntimeException e) {
+            listenerFailed("onClosed", e);
+        }
+    }
+
+    /**
+     * Report exception thrown by listener as warning
+     * @param method - method of listener which threw exception
+     * @param e - thrown exception
+     * @return reason of closing session
+     */
+    private String listenerFailed(String method, RuntimeException e) {
+        String reason = "Listener of session " + clientName + " failed in " + method + ": " + e;
+        ClientStatement.Warning(reason);
+        return reason;
+    }
+
+    private void setWriteInterest(boolean writeInterest) {
+        int interestOps = SelectionKey.OP_READ | (writeInterest ? SelectionKey.OP_WRITE : 0);
+        if (selectionKey.interestOps() != interestOps)
+            selectionKey.interestOps(interestOps);
+    }
+
+    /**
+     * Encode one frame to its own buffer
+     * @param message - text message to server
+     * @param extraInfo - extra info of message
+     * @return buffer ready to be written
+     */
+    private ByteBuffer encodeFrame(String message, ExtraInfo extraInfo) {
+        ByteBuffer frame = ByteBuffer.allocate(256 + message.length() * 3);
+        while (!messageEncoder.encode(message, extraInfo, frame))
+            frame = ByteBuffer.allocate(frame.capacity() * 2);
+        frame.flip();
+        return frame;
+    }
+}
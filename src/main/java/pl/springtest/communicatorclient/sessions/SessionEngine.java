@@ -0,0 +1,86 @@
+package pl.springtest.communicatorclient.sessions;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many client sessions in one JVM - every session has its own identity (client name and group ID)
+ * Sockets of all sessions are handled by few event loops (one thread and one selector each),
+ * by default one event loop per core - there is no thread per session
+ */
+public class SessionEngine {
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop = new AtomicInteger(0);
+
+    /**
+     * Create engine with one event loop per available core
+     * @throws IOException - when selector can not be open
+     */
+    public SessionEngine() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create engine and start its event loops
+     * @param eventLoopCount - number of event loop threads
+     * @throws IOException - when selector can not be open
+     */
+    public SessionEngine(int eventLoopCount) throws IOException {
+        eventLoops = new EventLoop[Math.max(1, eventLoopCount)];
+        for (int i = 0; i < eventLoops.length; i++)
+            eventLoops[i] = new EventLoop("Thread - EventLoop-" + i);
+    }
+
+    /**
+     * Start connecting new session - LOGIN is sent when connection is established
+     * Sessions are assigned to event loops in turn
+     * @param addressIP - server address IP
+     * @param port - servers port to connect
+     * @param clientName - client name which is added to messages data
+     * @param groupId - communicator group ID which is added to messages data
+     * @param listener - receives messages and state changes of session
+     * @return new session - messages sent before connection is established are queued
+     * @throws IOException - when socket can not be open
+     */
+    public Session openSession(String addressIP, int port, String clientName, String groupId, SessionListener listener) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(new InetSocketAddress(addressIP, port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        EventLoop eventLoop = eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)];
+        Session session = new Session(channel, eventLoop, clientName, groupId, listener);
+        eventLoop.addSession(session);
+        return session;
+    }
+
+    /**
+     * @return number of open sessions in all event loops
+     */
+    public int getSessionCount() {
+        int sessionCount = 0;
+        for (EventLoop eventLoop : eventLoops)
+            sessionCount += eventLoop.getSessionCount();
+        return sessionCount;
+    }
+
+    public int getEventLoopCount() {
+        return eventLoops.length;
+    }
+
+    /**
+     * Close all sessions (LOGOUT is sent) and stop event loops
+     */
+    public void close() {
+        for (EventLoop eventLoop : eventLoops)
+            eventLoop.close();
+    }
+}
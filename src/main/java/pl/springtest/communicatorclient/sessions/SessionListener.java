@@ -0,0 +1,27 @@
+package pl.springtest.communicatorclient.sessions;
+
+/**
+ * Receives events of session - methods are called by event loop thread, so they should not block
+ * RuntimeException thrown by method closes the session (onClosed is still called)
+ */
+public interface SessionListener {
+    /**
+     * Session is connected and LOGIN was sent to server
+     * @param session - connected session
+     */
+    void onConnected(Session session);
+
+    /**
+     * New message from server
+     * @param session - session which received message
+     * @param message - decoded message (clientName: message)
+     */
+    void onMessage(Session session, String message);
+
+    /**
+     * Session is closed - by client, by server (shutdown or end of stream) or because of error
+     * @param session - closed session
+     * @param reason - why session was closed
+     */
+    void onClosed(Session session, String reason);
+}
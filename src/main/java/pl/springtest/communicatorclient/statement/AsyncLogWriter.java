@@ -0,0 +1,264 @@
+package pl.springtest.communicatorclient.statement;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes log lines to files in background thread
+ * Threads calling append only put line to bounded ring buffer; flusher thread writes lines in batches
+ * through one channel per file, which is open as long as application works
+ * Files are rolled when they reach maximum size: file -> file.1 -> file.2 ... (oldest is deleted)
+ * Settings (system properties):
+ * - communicator.log.bufferSize - number of lines in ring buffer (default 8192)
+ * - communicator.log.maxFileSize - maximum size of log file in bytes (default 10 MB)
+ * - communicator.log.maxBackups - number of rolled files kept (default 3)
+ * - communicator.log.overflow - DROP or BLOCK - what to do with info lines when buffer is full (default BLOCK)
+ */
+class AsyncLogWriter {
+    static final int INFO_LOG = 0;
+    static final int ERROR_LOG = 1;
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    private final ArrayBlockingQueue<LogLine> ringBuffer;
+    private final LogFile[] logFiles;
+    private final LogOverflowPolicy overflowPolicy;
+    private final AtomicLong appendedLines = new AtomicLong();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final Object flushLock = new Object();
+    private volatile long writtenLines = 0;
+    private final Thread flusher = new Thread(this::flushLoop, "Thread - LogFlusher");
+
+    // cache of formatted time - it changes once per second
+    private final ZoneId zoneId = ZoneId.systemDefault();
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedDateAndTime;
+
+    /**
+     * Create writer with settings from system properties and start flusher thread, files are open when first line is written
+     * @param infoFileName - file for info lines
+     * @param errorFileName - file for error lines
+     */
+    AsyncLogWriter(String infoFileName, String errorFileName) {
+        this(infoFileName, errorFileName, Integer.getInteger("communicator.log.bufferSize", 8192),
+                LogOverflowPolicy.valueOf(System.getProperty("communicator.log.overflow", LogOverflowPolicy.BLOCK.name())),
+                Long.getLong("communicator.log.maxFileSize", 10 * 1024 * 1024),
+                Integer.getInteger("communicator.log.maxBackups", 3));
+        start();
+        // write everything what is still in buffer when application is closing
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(500), "Thread - LogShutdown"));
+    }
+
+    /**
+     * Create writer - lines wait in ring buffer until start
+     * @param infoFileName - file for info lines
+     * @param errorFileName - file for error lines
+     * @param bufferSize - number of lines in ring buffer
+     * @param overflowPolicy - what to do with info lines when buffer is full
+     * @param maxFileSize - maximum size of log file in bytes
+     * @param maxBackups - number of rolled files kept
+     */
+    AsyncLogWriter(String infoFileName, String errorFileName, int bufferSize, LogOverflowPolicy overflowPolicy,
+                   long maxFileSize, int maxBackups) {
+        ringBuffer = new ArrayBlockingQueue<LogLine>(bufferSize);
+        this.overflowPolicy = overflowPolicy;
+        logFiles = new LogFile[] {
+                new LogFile(infoFileName, maxFileSize, maxBackups),
+                new LogFile(errorFileName, maxFileSize, maxBackups)
+        };
+    }
+
+    /**
+     * Start flusher thread (daemon)
+     */
+    void start() {
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Put line to ring buffer - time is taken now, but formatted later by flusher thread
+     * Error lines are never dropped; info lines are dropped when buffer is full and policy is DROP
+     * @param logFile - INFO_LOG or ERROR_LOG
+     * @param message - line to write
+     */
+    void append(int logFile, String message) {
+        LogLine line = new LogLine(logFile, System.currentTimeMillis(), message);
+
+        if (logFile == INFO_LOG && overflowPolicy == LogOverflowPolicy.DROP) {
+            if (!ringBuffer.offer(line)) {
+                droppedLines.incrementAndGet();
+                return;
+            }
+        } else {
+            try {
+                ringBuffer.put(line);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                droppedLines.incrementAndGet();
+                return;
+            }
+        }
+        appendedLines.incrementAndGet();
+    }
+
+    /**
+     * Wait until all lines appended so far are written to files
+     * @param timeoutMillis - maximum time of waiting
+     */
+    void flush(long timeoutMillis) {
+        long linesToWrite = appendedLines.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        synchronized (flushLock) {
+            long waitTime;
+            while (writtenLines < linesToWrite && (waitTime = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    flushLock.wait(waitTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Flusher thread - takes all lines which are in buffer and writes them as one batch per file
+     */
+    private void flushLoop() {
+        List<LogLine> batch = new ArrayList<LogLine>(MAX_BATCH_SIZE);
+
+        while (true) {
+            try {
+                batch.add(ringBuffer.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            ringBuffer.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+            long dropped = droppedLines.getAndSet(0);
+            if (dropped > 0)
+                logFiles[INFO_LOG].pending.append(getDateAndTime(System.currentTimeMillis()))
+                        .append(" - ").append(dropped).append(" log lines dropped - buffer was full\n");
+            for (LogLine line : batch)
+                logFiles[line.logFile].pending.append(getDateAndTime(line.timeMillis)).append(" - ").append(line.message).append('\n');
+            for (LogFile logFile : logFiles)
+                logFile.writePending();
+
+            synchronized (flushLock) {
+                writtenLines += batch.size();
+                flushLock.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Format time - formatter is used only when second changes
+     * @param timeMillis - time in milliseconds
+     * @return formatted date and time
+     */
+    private String getDateAndTime(long timeMillis) {
+        long second = TimeUnit.MILLISECONDS.toSeconds(timeMillis);
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedDateAndTime = DATE_TIME_FORMATTER.format(LocalDateTime.ofInstant(Instant.ofEpochSecond(second), zoneId));
+        }
+        return cachedDateAndTime;
+    }
+
+    /**
+     * One line waiting in ring buffer
+     */
+    private static class LogLine {
+        final int logFile;
+        final long timeMillis;
+        final String message;
+
+        LogLine(int logFile, long timeMillis, String message) {
+            this.logFile = logFile;
+            this.timeMillis = timeMillis;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Log file with long-lived channel - used only by flusher thread
+     */
+    private static class LogFile {
+        final StringBuilder pending = new StringBuilder();
+        private final Path path;
+        private final long maxFileSize;
+        private final int maxBackups;
+        private FileChannel channel = null;
+        private long size = 0;
+
+        LogFile(String fileName, long maxFileSize, int maxBackups) {
+            this.path = Paths.get(fileName);
+            this.maxFileSize = maxFileSize;
+            this.maxBackups = maxBackups;
+        }
+
+        /**
+         * Write all pending lines by one write, roll file before if it would be too big
+         */
+        void writePending() {
+            if (pending.length() == 0)
+                return;
+            ByteBuffer bytes = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+            pending.setLength(0);
+
+            try {
+                if (channel == null)
+                    open();
+                if (size > 0 && size + bytes.remaining() > maxFileSize)
+                    roll();
+                while (bytes.hasRemaining())
+                    size += channel.write(bytes);
+            } catch (IOException e) {
+                ; // do nothing - there is no place to log it
+            }
+        }
+
+        private void open() throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            size = channel.size();
+        }
+
+        /**
+         * Move file to file.1 (file.1 to file.2 etc.) and open new empty file
+         */
+        private void roll() throws IOException {
+            channel.close();
+            channel = null;
+            if (maxBackups > 0) {
+                for (int i = maxBackups - 1; i > 0; i--) {
+                    Path older = Paths.get(path + "." + i);
+                    if (Files.exists(older))
+                        Files.move(older, Paths.get(path + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(path, Paths.get(path + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(path);
+            }
+            open();
+        }
+    }
+}
@@ -1,58 +1,87 @@
 package pl.springtest.communicatorclient.statement;
 
-import pl.springtest.communicatorclient.toServerConnection.ClientData;
-
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
 
 /**
  * Print statements from server
+ * Error - statement of application, it is also printed to System.out
+ * Warning - error of library (connection, spool, history, metrics), it is only logged - application can show it
+ * by its warning listener (console application shows it in console, service keeps its System.out clean)
+ * Log files log_errors_<name> and log_info_<name> are shared by all clients of application - name is set by useLogName
+ * before first statement (eg. by first client), later it can not change
  */
 public abstract class ClientStatement {
     public static final boolean NO_EXIT = false;
     public static final boolean DO_EXIT = true;
-    private static final String errorFileName = "log_errors_" + ClientData.name;
-    private static final String infoFileName = "log_info_" + ClientData.name;
+    public static final String DEFAULT_LOG_NAME = "communicator";
+    private static String logName = DEFAULT_LOG_NAME; // under lock of class
+    private static volatile AsyncLogWriter logWriter = null; // created by first statement
+    private static volatile Consumer<String> warningListener = null;
+
+    /**
+     * Set name of log files - only before first statement, files of running application are not renamed
+     * @param name - name of log files (eg. client name)
+     * @return true if name is used; false if log files are already open with other name
+     */
+    public static synchronized boolean useLogName(String name) {
+        if (logWriter != null)
+            return logName.equals(name);
+        logName = name;
+        return true;
+    }
+
+    private static AsyncLogWriter logWriter() {
+        AsyncLogWriter writer = logWriter;
+        if (writer != null)
+            return writer;
+        synchronized (ClientStatement.class) {
+            if (logWriter == null)
+                logWriter = new AsyncLogWriter("log_info_" + logName, "log_errors_" + logName);
+            return logWriter;
+        }
+    }
+
+    /**
+     * @param listener - gets text of every warning (eg. to show it in console), null - warnings are only logged
+     */
+    public static void setWarningListener(Consumer<String> listener) {
+        warningListener = listener;
+    }
 
     /**
      * Error statement
+     * Line is written to file by background thread; when application should exit, it waits until line is written
      * @param message - message to print
      * @param exitApplication - true, if application should exit after print statement; false otherwise
      */
     public static void Error(String message, boolean exitApplication) {
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(errorFileName, true));
-            writer.append(ClientStatement.getDateAndTime() + " - " + message + "\n");
-            writer.close();
-        }catch (IOException e) {
-            ; // do nothing
-        }
+        logWriter().append(AsyncLogWriter.ERROR_LOG, message);
         System.out.println("Error: " + message);
-        if (exitApplication)
+        if (exitApplication) {
+            logWriter().flush(1000);
             System.exit(-1);
+        }
+    }
+
+    /**
+     * Warning statement - error of library, client keeps working
+     * Line is written to error file by background thread and passed to warning listener, not printed
+     * @param message - message to log
+     */
+    public static void Warning(String message) {
+        logWriter().append(AsyncLogWriter.ERROR_LOG, message);
+        Consumer<String> listener = warningListener;
+        if (listener != null)
+            listener.accept("Error: " + message);
     }
 
     /**
      * Info statement
+     * Line is written to file by background thread
      * @param message - message to print
      */
     public static void Info(String message) {
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(infoFileName, true));
-            writer.append(ClientStatement.getDateAndTime() + " - " + message + "\n");
-            writer.close();
-        }catch (IOException e) {
-            ; // do nothing
-        }
+        logWriter().append(AsyncLogWriter.INFO_LOG, message);
         //System.out.println("Info: " + message);
     }
-
-    private static String getDateAndTime() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
-        LocalDateTime actualDT = LocalDateTime.now();
-        return formatter.format(actualDT);
-    }
 }
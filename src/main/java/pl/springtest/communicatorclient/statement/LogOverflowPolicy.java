@@ -0,0 +1,9 @@
+package pl.springtest.communicatorclient.statement;
+
+/**
+ * What to do with info statement when log buffer is full
+ */
+public enum LogOverflowPolicy {
+    DROP,
+    BLOCK;
+}
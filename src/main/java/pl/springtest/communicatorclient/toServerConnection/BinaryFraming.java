@@ -0,0 +1,120 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary framing - optional wire format, used only when server accepts it (text format is fallback)
+ * Negotiation:
+ * - client sends LOGIN frame (EXTRA:NEW_CONNECTION) in text format with offer in message - "LOGIN BINARY/1"
+ * - server which supports binary framing answers with text frame EXTRA:FRAMING and message
+ *   "BINARY/1 <clientNameId> <groupId>" - IDs of this client used in its binary frames
+ * - server which does not support it treats offer like normal LOGIN - both sides stay with text format
+ * Frame (all numbers are unsigned LEB128 varints - 7 bits per byte, the shortest form):
+ * - type byte: 0x80 | code of EXTRA (ExtraInfo.getCode) - high bit is never set in first byte of text frame,
+ *   so text and binary frames can be mixed in one stream
+ * - ID of client name, ID of group
+ * - length of payload in bytes
+ * - payload - raw UTF-8 message, it can contain "\n"
+ * Definition frame (only from server) binds ID to text before first frame which uses this ID:
+ * - type byte 0xFF, ID, kind (KIND_CLIENT_NAME or KIND_GROUP), length, UTF-8 text
+ * IDs are valid for one connection
+ */
+public abstract class BinaryFraming {
+    public static final String OFFER = "BINARY/1";
+    public static final int FRAME_FLAG = 0x80;
+    public static final int DEFINITION_TYPE = 0xFF;
+    public static final int KIND_CLIENT_NAME = 0;
+    public static final int KIND_GROUP = 1;
+    public static final int MAX_VARINT_SIZE = 5;
+    public static final int NEED_MORE_DATA = -1;
+    public static final int MALFORMED = -2;
+
+    /**
+     * @param value - not negative number
+     * @return number of bytes of varint
+     */
+    public static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    /**
+     * Write not negative number as varint
+     * @param target - buffer with at least varintSize(value) bytes remaining
+     * @param value - not negative number
+     */
+    public static void putVarint(ByteBuffer target, int value) {
+        while ((value & ~0x7F) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+
+    /**
+     * Read varint without changing position of buffer - it takes varintSize(result) bytes
+     * @param source - buffer with data
+     * @param index - index of first byte of varint
+     * @param limit - index after last available byte
+     * @return not negative number; NEED_MORE_DATA if varint is not complete; MALFORMED if it is too long or not in the shortest form
+     */
+    public static int getVarint(ByteBuffer source, int index, int limit) {
+        long value = 0;
+        for (int i = 0; i < MAX_VARINT_SIZE; i++) {
+            if (index + i >= limit)
+                return NEED_MORE_DATA;
+            int b = source.get(index + i);
+            value |= (long) (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                if (value > Integer.MAX_VALUE || varintSize((int) value) != i + 1)
+                    return MALFORMED;
+                return (int) value;
+            }
+        }
+        return MALFORMED;
+    }
+
+    /**
+     * Number of bytes of text encoded to UTF-8 (malformed surrogate is replaced by one byte, like CharsetEncoder does)
+     * @param text - text to encode
+     * @return length in bytes
+     */
+    public static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Read IDs from server answer to offer
+     * @param message - MESSAGE of EXTRA:FRAMING frame
+     * @return {clientNameId, groupId}, null if server did not accept binary framing
+     */
+    public static int[] parseAccept(String message) {
+        String[] parts = message.split(" ");
+        if (parts.length != 3 || !parts[0].equals(OFFER))
+            return null;
+        try {
+            int[] ids = {Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+            return (ids[0] >= 0 && ids[1] >= 0) ? ids : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
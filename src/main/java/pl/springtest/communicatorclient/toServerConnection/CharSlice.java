@@ -0,0 +1,69 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+/**
+ * Part of char array seen as CharSequence - fields of ServerMessage point to decoded frame without copying
+ * Slice is reused for next frames, so it is valid only as long as its ServerMessage
+ */
+final class CharSlice implements CharSequence {
+    private static final char[] EMPTY = new char[0];
+
+    private char[] chars = EMPTY;
+    private int start = 0;
+    private int length = 0;
+
+    /**
+     * @param chars - array with text
+     * @param start - index of first char
+     * @param end - index after last char
+     */
+    void set(char[] chars, int start, int end) {
+        this.chars = chars;
+        this.start = start;
+        this.length = end - start;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        return chars[start + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length || from > to)
+            throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + length);
+        return new String(chars, start + from, to - from);
+    }
+
+    /**
+     * @param text - text to compare
+     * @return true if slice has the same chars as text
+     */
+    boolean contentEquals(char[] text) {
+        if (text.length != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (chars[start + i] != text[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Add chars of slice without calling charAt for every char
+     * @param builder - builder to append to
+     */
+    void appendTo(StringBuilder builder) {
+        builder.append(chars, start, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, start, length);
+    }
+}
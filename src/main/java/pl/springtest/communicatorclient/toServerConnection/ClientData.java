@@ -1,6 +0,0 @@
-package pl.springtest.communicatorclient.toServerConnection;
-
-public abstract class ClientData {
-    public static String name;
-    public static String groupID;
-}
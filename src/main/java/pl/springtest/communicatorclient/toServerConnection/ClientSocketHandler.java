@@ -1,189 +1,709 @@
 package pl.springtest.communicatorclient.toServerConnection;
 
-import pl.springtest.communicatorclient.info.AppInfo;
+import pl.springtest.communicatorclient.files.FileReassembler;
+import pl.springtest.communicatorclient.history.MessageHistory;
+import pl.springtest.communicatorclient.metrics.MetricsScope;
 import pl.springtest.communicatorclient.statement.ClientStatement;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Connect to server and then manage reading and transmitting message by socket
+ * Senders are synchronized by ReentrantLock - blocking write inside synchronized block would pin virtual thread to its carrier
+ * Messages to server go through OutboundSpool - they are removed from it only after they were written to socket
+ * Lost connection is established again by thread reading from server (ReconnectSupervisor), LOGIN is sent again
+ * and messages from spool are sent in order
+ * Messages from server are stored in MessageHistory
+ * Heartbeat finds half-open connection - when server does not answer, socket is closed and connection is established again
+ * Files are sent chunk by chunk (see FileSender) - sendLock is fair, so waiting chat messages are written between chunks;
+ * files from other clients are written to disk by FileReassembler when receiving of files is turned on
+ * Many groups share the socket (GroupRegistry) - frames to server have GROUP_ID of their group, frames from server are
+ * assigned to groups by GROUP_ID; joined groups are joined again after reconnect
+ * Only messages to login group go through spool - messages to other groups are sent only when JOIN of their group
+ * was answered (also after reconnect)
+ * Client never exits application - lost connection which can not be established again closes client (see getFailure)
  */
 public class ClientSocketHandler {
-    private Socket clientSocket = null;
-    private PrintWriter outMessage = null;
-    private BufferedReader inMessage = null;
+    private final String addressIP;
+    private final int port;
+    private final String clientName;
+    private final String groupId;
+    private volatile SocketChannel socketChannel = null;
+    private MessageEncoder messageEncoder = null;
+    private FrameDecoder frameDecoder = null; // new for every connection - used only by thread reading from server
+    private final List<InboundMessage> messagesFromServer = new ArrayList<InboundMessage>();
+    private final GroupRegistry groupRegistry;
+    private final ReentrantLock sendLock = new ReentrantLock(true); // fair - file chunks do not starve chat messages
+    private long connections = 0; // number of established connections (under sendLock)
+    private final OutboundSpool outboundSpool; // null - messages are sent without spool
+    private final List<String> spooledBatch = new ArrayList<String>(); // reused by senders (under sendLock)
+    private final ReconnectSupervisor reconnectSupervisor = ConnectionSettings.newReconnectSupervisor();
+    private volatile MessageHistory messageHistory; // null - messages are not stored
+    private final Heartbeat heartbeat = ConnectionSettings.newHeartbeat(); // null - heartbeats are not sent
+    private final FileReassembler fileReassembler; // null - files from group are skipped
+    private volatile boolean closed = false;
+    private volatile IOException failure = null; // why connection was lost for good
 
     /**
      * Create new socket connection client-server
+     * Messages left in spool by previous run of this client are sent after LOGIN
      * @param addressIP - server address IP
      * @param port - servers port to connect
+     * @param clientName - client name which is added to messages data
+     * @param groupId - communicator group ID of LOGIN
+     * @param metrics - scope of gauges of client (spool, reconnects, heartbeats, history) - closed by owner of client
+     * @throws IOException - when connection can not be established (spool and history are closed)
      */
-    public ClientSocketHandler(String addressIP, int port) {
+    public ClientSocketHandler(String addressIP, int port, String clientName, String groupId, MetricsScope metrics)
+            throws IOException {
+        this.addressIP = addressIP;
+        this.port = port;
+        this.clientName = clientName;
+        this.groupId = groupId;
+        groupRegistry = new GroupRegistry(groupId);
+        fileReassembler = ConnectionSettings.newFileReassembler(clientName,
+                line -> messagesFromServer.add(InboundMessage.notice(groupId, line)));
+        outboundSpool = ConnectionSettings.openSpool(clientName);
+        if (outboundSpool != null)
+            metrics.gauge("spoolPending", outboundSpool::size);
+        metrics.gauge("reconnects", reconnectSupervisor::getReconnects);
+        if (heartbeat != null) {
+            metrics.gauge("heartbeatRttSmoothedNanos", () -> heartbeat.getRttStatistics().getSmoothedNanos());
+            metrics.gauge("heartbeatRttVariationNanos", () -> heartbeat.getRttStatistics().getVariationNanos());
+            metrics.gauge("heartbeatMissed", heartbeat::getMissedBeats);
+            metrics.gauge("deadPeers", heartbeat::getDeadPeers);
+        }
+        messageHistory = ConnectionSettings.openHistory(clientName);
+        if (messageHistory != null)
+            metrics.gauge("historyMessages", messageHistory::size);
+        try {
+            reconnectAttempt();
+        } catch (IOException e) {
+            closeSocket();
+            throw e;
+        }
+        if (outboundSpool != null && !outboundSpool.isEmpty()) {
+            ClientStatement.Info("Messages to server left in spool by previous run: " + outboundSpool.size());
+            sendSpooledMessages();
+        }
+    }
+
+    /**
+     * Open socket and send LOGIN - encoder and decoder are new, so binary framing and compression are negotiated again
+     * @throws IOException - when connection can not be established
+     */
+    private void connect() throws IOException {
+        SocketChannel newSocketChannel = SocketChannel.open(new InetSocketAddress(addressIP, port)); // blocking mode
+        String loginMessage = ConnectionSettings.loginMessage();
+        ClientStatement.Info("Message to server: " + loginMessage);
+        sendLock.lock();
+        try {
+            socketChannel = newSocketChannel;
+            messageEncoder = new MessageEncoder(clientName, groupId);
+            frameDecoder = new FrameDecoder();
+            frameDecoder.setFileFrameHandler(fileReassembler);
+            connections++;
+            if (heartbeat != null)
+                heartbeat.reset();
+            messageEncoder.write(loginMessage, ExtraInfo.NEW_CONNECTION, newSocketChannel);
+            for (int group = GroupRegistry.LOGIN_GROUP + 1; group < groupRegistry.size(); group++) {
+                messageEncoder.defineGroup(group, groupRegistry.nameOf(group));
+                if (groupRegistry.stateOf(group) != GroupRegistry.State.LEFT)
+                    writeJoin(group);
+            }
+        } catch (IOException e) {
+            newSocketChannel.close();
+            throw e;
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Send JOIN to server - group gets messages when server answers it
+     * @param groupId - group ID
+     * @return number of group (see GroupRegistry)
+     */
+    public int joinGroup(String groupId) {
+        sendLock.lock();
         try {
-            clientSocket = new Socket(addressIP, port);
-            outMessage = new PrintWriter(clientSocket.getOutputStream(), true);
-        } catch (UnknownHostException e) {
-            ClientStatement.Error("UnknownHostException occurred.", ClientStatement.DO_EXIT);
+            int group = groupRegistry.intern(groupId);
+            if (groupRegistry.stateOf(group) != GroupRegistry.State.LEFT)
+                return group;
+            messageEncoder.defineGroup(group, groupId);
+            writeJoin(group);
+            return group;
         } catch (IOException e) {
-            ClientStatement.Error("IOException occurred.", ClientStatement.DO_EXIT);
+            if (!closed)
+                breakConnection(); // group is JOINING - it is joined again after reconnect
+            return groupRegistry.numberOf(groupId);
+        } finally {
+            sendLock.unlock();
         }
-        // initial message to server
-        sendMessageToServer("LOGIN", ExtraInfo.NEW_CONNECTION);
+    }
+
+    private void writeJoin(int group) throws IOException {
+        groupRegistry.setState(group, GroupRegistry.State.JOINING);
+        ClientStatement.Info("Joining group " + groupRegistry.nameOf(group));
+        messageEncoder.write("JOIN", ExtraInfo.JOIN, group, socketChannel);
     }
 
     /**
-     * Prepare text message to one line format (all expect MESSAGE ended by ";" - MESSAGE ends by "\n"):
-     * "VERSION_INFO:" + version (eg. "2.1.3;")
-     * "CLIENT_NAME:" + name (eq. "Adam;")
-     * "GROUP_ID:" + groupId (eq. "Group123;"
-     * "EXTRA:" + extra info to server (eg. "SHUTDOWN;" - client is shutting down)
-     * "MESSAGE:" + message from parameter
-     * EXTRA list:
-     * - SHUTDOWN - client is shutting down (since ver. 1.0.0)
-     * - NEW_CONNECTION - client send information about new connection to server (since ver. 1.0.0)
-     * GROUP_ID can be "BROADCAST" - sending to everyone, but message should be from server, not client
-     * @param message - text message to server
-     * @param extraInfo - information about extra info to add (eg. SHUTDOWN)
-     * @return prepared string with data
+     * Send LEAVE to server - messages of group are not shown any more
+     * @param group - number of group
+     * @return false if group is login group or it was not joined
      */
-    private static String prepareMessage(String message, ExtraInfo extraInfo) {
-        String preparedMessage = "VERSION_INFO:" + AppInfo.VERSION_INFO + ";";
-        preparedMessage += "CLIENT_NAME:" + ClientData.name + ";";
-        preparedMessage += "GROUP_ID:" + ClientData.groupID + ";";
-        if (extraInfo == ExtraInfo.SHUTDOWN)
-            preparedMessage += "EXTRA:SHUTDOWN;";
-        else if (extraInfo == ExtraInfo.NEW_CONNECTION)
-            preparedMessage += "EXTRA:NEW_CONNECTION;";
-        else
-            preparedMessage += "EXTRA:;";
-        preparedMessage += "MESSAGE:" + message + "\n";
+    public boolean leaveGroup(int group) {
+        sendLock.lock();
+        try {
+            if (group == GroupRegistry.LOGIN_GROUP || groupRegistry.stateOf(group) == GroupRegistry.State.LEFT)
+                return false;
+            groupRegistry.setState(group, GroupRegistry.State.LEFT);
+            ClientStatement.Info("Leaving group " + groupRegistry.nameOf(group));
+            messageEncoder.write("LEAVE", ExtraInfo.LEAVE, group, socketChannel);
+        } catch (IOException e) {
+            if (!closed)
+                breakConnection(); // group is LEFT - it is not joined again after reconnect
+        } finally {
+            sendLock.unlock();
+        }
+        return true;
+    }
 
-        return preparedMessage;
+    /**
+     * @return groups of connection
+     */
+    public GroupRegistry getGroupRegistry() {
+        return groupRegistry;
     }
 
     /**
-     * Decode message to String with userName and message
-     * @param message - full message to decode
-     * @return clientName: message
+     * Send frame of file - bytes of file are written to socket by FileChannel.transferTo, without copying to Java memory
+     * Frame is not sent when connection was established again after sender started, so file is never continued on new connection
+     * @param connection - value of getConnections when sending of file started
+     * @param group - number of group
+     * @param extraInfo - FILE_START, FILE_CHUNK or FILE_END
+     * @param prefix - first bytes of payload
+     * @param file - file, null if payload is only prefix
+     * @param position - position of first byte of file in payload
+     * @param length - number of bytes of file in payload
+     * @throws IOException - when connection was lost, binary framing is not used or file can not be read
      */
-    private static String decodeMessage(String message) {
-        int clientNameStartIndex = message.indexOf("CLIENT_NAME:") + 12; // 12 is number of characters in "CLIENT_NAME:"
-        int clientNameEndIndex = message.indexOf(";", clientNameStartIndex);
-        int messageStartIndex = message.indexOf("MESSAGE:") + 8; // 8 is number of characters in "MESSAGE:"
-        int messageEndIndex = message.length();
-        return message.substring(clientNameStartIndex, clientNameEndIndex) + ": " + message.substring(messageStartIndex, messageEndIndex);
+    public void sendFileFrame(long connection, int group, ExtraInfo extraInfo, ByteBuffer prefix, FileChannel file, long position,
+                              int length) throws IOException {
+        sendLock.lock();
+        try {
+            if (closed || connection != connections || !socketChannel.isOpen())
+                throw new IOException("Connection to server was lost");
+            if (!messageEncoder.isBinaryFraming())
+                throw new IOException("Server did not accept binary framing - file can not be sent");
+            if (!groupRegistry.isJoined(group))
+                throw new IOException("Group " + groupRegistry.nameOf(group) + " was left");
+            try {
+                messageEncoder.writeFileFrame(extraInfo, group, prefix, file, position, length, socketChannel);
+            } catch (IOException e) {
+                breakConnection(); // frame could be written partially - thread reading from server connects again
+                throw e;
+            }
+        } finally {
+            sendLock.unlock();
+        }
     }
 
-    private static boolean isServerShuttingDown(String message) {
-        int messageStartIndex = message.indexOf("MESSAGE:");
-        int shutdownStartIndex = message.indexOf("EXTRA:SHUTDOWN;");
-        if (shutdownStartIndex != -1 && shutdownStartIndex < messageStartIndex) // not in MESSAGE: body and EXTRA:SHUTDOWN; exist - server is shutting down
-            return true;
-        return false;
+    /**
+     * @return number of established connections - it changes when connection is established again
+     */
+    public long getConnections() {
+        sendLock.lock();
+        try {
+            return connections;
+        } finally {
+            sendLock.unlock();
+        }
     }
 
     /**
-     * Send message to server
+     * @return true if server accepted binary framing on current connection
+     */
+    public boolean isBinaryFraming() {
+        sendLock.lock();
+        try {
+            return messageEncoder.isBinaryFraming();
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Send message to server without spool (eg. LOGOUT)
+     * Synchronized only with other senders - reading from server is independent
      * @param message - data to send
      * @param extraInfo - information about extra info
      */
     public void sendMessageToServer(String message, ExtraInfo extraInfo) {
-        //ClientStatement.Info("Message to server: " + message);
-        ClientStatement.Info(this.prepareMessage(message, extraInfo));
-        outMessage.write(this.prepareMessage(message, extraInfo));
-        outMessage.flush();
+        ClientStatement.Info("Message to server: " + message);
+        sendLock.lock();
+        try {
+            messageEncoder.write(message, extraInfo, socketChannel);
+        } catch (IOException e) {
+            if (!closed) {
+                ClientStatement.Warning("IOException occurred when sending message to server.");
+                breakConnection();
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Start heartbeats of connection
+     * @param beatDue - wakes up thread which calls sendDueHeartbeat (it must not block)
+     */
+    public void startHeartbeat(Runnable beatDue) {
+        if (heartbeat != null)
+            heartbeat.start(beatDue, this::peerDead);
+    }
+
+    /**
+     * Send heartbeat if its time came - called by thread which sends messages
+     */
+    public void sendDueHeartbeat() {
+        if (heartbeat == null)
+            return;
+        String beat = heartbeat.nextBeat();
+        if (beat == null)
+            return;
+        sendLock.lock();
+        try {
+            if (isConnected())
+                messageEncoder.write(beat, ExtraInfo.HEARTBEAT, socketChannel);
+        } catch (IOException e) {
+            if (!closed) {
+                ClientStatement.Warning("IOException occurred when sending heartbeat to server.");
+                breakConnection();
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Server did not answer heartbeats - socket is closed, so thread reading from server connects again (or closes client)
+     * Called by TimerWheel thread
+     */
+    private void peerDead() {
+        if (closed || !isConnected())
+            return;
+        ClientStatement.Warning("Server did not answer " + ConnectionSettings.heartbeatMaxMissed + " heartbeats - connection is dead.");
+        breakConnection();
+    }
+
+    /**
+     * @return heartbeat of connection, null if heartbeats are turned off
+     */
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * Send many messages to server - they are added to spool and then spool is sent in writes of ConnectionSettings.maxBatchBytes
+     * When there is no connection, messages wait in spool until connection is established again
+     * @param messages - data to send
+     * @param extraInfo - information about extra info, the same for all messages (only NO_INFO messages are spooled)
+     * @return number of messages written to socket or stored in spool - the first ones
+     */
+    public int sendMessagesToServer(List<String> messages, ExtraInfo extraInfo) {
+        return sendMessagesToServer(messages, extraInfo, GroupRegistry.LOGIN_GROUP);
+    }
+
+    /**
+     * Send many messages to group - messages to login group go through spool (see sendMessagesToServer),
+     * messages to other groups are sent only when group is joined
+     * @param messages - data to send
+     * @param extraInfo - information about extra info, the same for all messages
+     * @param group - number of group (see GroupRegistry)
+     * @return number of messages written to socket or stored in spool - the first ones
+     */
+    public int sendMessagesToServer(List<String> messages, ExtraInfo extraInfo, int group) {
+        if (outboundSpool == null || extraInfo != ExtraInfo.NO_INFO || group != GroupRegistry.LOGIN_GROUP)
+            return sendMessagesWithoutSpool(messages, extraInfo, group);
+        int spooled = outboundSpool.append(messages);
+        if (spooled < messages.size() && !closed)
+            ClientStatement.Warning("Spool of messages to server is full - " + (messages.size() - spooled)
+                    + " messages are not sent.");
+        sendSpooledMessages();
+        return spooled;
+    }
+
+    private int sendMessagesWithoutSpool(List<String> messages, ExtraInfo extraInfo, int group) {
+        for (String message : messages)
+            ClientStatement.Info("Message to server: " + message);
+        sendLock.lock();
+        try {
+            if (!groupRegistry.isJoined(group)) {
+                ClientStatement.Info(messages.size() + " messages to group " + groupRegistry.nameOf(group)
+                        + " are not sent - group is not joined");
+                return 0;
+            }
+            messageEncoder.writeBatch(messages, extraInfo, group, socketChannel, ConnectionSettings.maxBatchBytes);
+            return messages.size();
+        } catch (IOException e) {
+            if (!closed) {
+                ClientStatement.Warning("IOException occurred when sending messages to server.");
+                breakConnection();
+            }
+            return 0;
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * Send all messages from spool, in order, when there is connection
+     * Messages are removed from spool only after whole batch was written
+     */
+    private void sendSpooledMessages() {
+        sendLock.lock();
+        try {
+            while (isConnected() && !outboundSpool.isEmpty()) {
+                spooledBatch.clear();
+                int sentPosition = outboundSpool.readBatch(spooledBatch, ConnectionSettings.maxBatchBytes);
+                for (String message : spooledBatch)
+                    ClientStatement.Info("Message to server: " + message);
+                messageEncoder.writeBatch(spooledBatch, ExtraInfo.NO_INFO, socketChannel, ConnectionSettings.maxBatchBytes);
+                outboundSpool.markSent(sentPosition);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                ClientStatement.Info("IOException occurred when sending messages to server - " + outboundSpool.size()
+                        + " messages wait in spool for connection");
+                breakConnection();
+            }
+        } finally {
+            sendLock.unlock();
+        }
     }
 
     /**
-     * Read message from server
-     * @return - received data
+     * Read messages from server
+     * Blocks until at least one whole frame is received or socket is closed
+     * All frames completed by one network read are returned together
+     * When connection is lost, it is established again before return (or client is closed)
+     * @return - received and decoded messages (list is reused - it is valid until next call), empty if there is no message (eg. socket closed)
      */
-    public String readMessageFromServer() {
-        String message = null;
+    public List<InboundMessage> readMessagesFromServer() {
+        List<ServerMessage> frames = null;
+        messagesFromServer.clear();
 
         try {
-            inMessage = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            frames = frameDecoder.readFrames(socketChannel);
         } catch (IOException e) {
-            ClientStatement.Error("IOException occurred when tried to get InputStream from socket.", ClientStatement.DO_EXIT);
+            if (fileReassembler != null)
+                fileReassembler.abortAll(); // chunks of files received by this connection are lost
+            if (!closed)
+                reconnectOrClose("IOException occurred when reading message from server.", e);
+            return messagesFromServer;
+        }
+
+        if (frames == null) {
+            if (fileReassembler != null)
+                fileReassembler.abortAll();
+            if (!closed)
+                reconnectOrClose("Server closed connection.", null);
+            return messagesFromServer;
+        }
+
+        for (ServerMessage message : frames) {
+            if (message.isServerShuttingDown()) {
+                ClientStatement.Info("Server is shutting down. I'm closing application");
+                this.closeSocket();
+                break;
+            }
+            if (message.getExtraInfo() == ExtraInfo.FRAMING) {
+                useBinaryFraming(message.getMessage().toString());
+                continue;
+            }
+            if (message.getExtraInfo() == ExtraInfo.COMPRESSION) {
+                useCompression(message.getMessage().toString());
+                continue;
+            }
+            if (message.getExtraInfo() == ExtraInfo.HEARTBEAT) { // heartbeats of other clients are not shown too
+                if (heartbeat != null && clientName.contentEquals(message.getClientName()))
+                    heartbeat.answerReceived(message.getMessage().toString(), frameDecoder.getLastReadNanos());
+                continue;
+            }
+            int group = groupRegistry.numberOf(message.getGroupId());
+            if (message.getExtraInfo() == ExtraInfo.JOIN || message.getExtraInfo() == ExtraInfo.LEAVE) {
+                if (message.getExtraInfo() == ExtraInfo.JOIN && group != -1)
+                    joinAnswered(group, message.getMessage().toString());
+                continue;
+            }
+            if (group == -1) {
+                group = GroupRegistry.LOGIN_GROUP; // eg. BROADCAST
+            } else if (!groupRegistry.isJoined(group)) {
+                continue; // group was left - frames sent before LEAVE was received by server
+            }
+            InboundMessage inboundMessage = new InboundMessage(message.getClientName().toString(),
+                    message.getGroupId().toString(), group, message.getMessage().toString(), frameDecoder.getLastReadNanos());
+            messagesFromServer.add(inboundMessage);
+            storeInHistory(inboundMessage);
+        }
+        return messagesFromServer;
+    }
+
+    /**
+     * Server answered JOIN - group gets messages, next frames to it are binary if binary framing is used
+     * @param group - number of group
+     * @param answer - MESSAGE of JOIN frame - binary ID of group (JOIN of other client forwarded by server has other text)
+     */
+    private void joinAnswered(int group, String answer) {
+        if (!answer.matches("\\d{1,9}"))
+            return;
+        sendLock.lock();
+        try {
+            if (groupRegistry.stateOf(group) != GroupRegistry.State.JOINING)
+                return; // group was left before answer
+            messageEncoder.useGroupId(group, Integer.parseInt(answer)); // ignored without binary framing
+            groupRegistry.setState(group, GroupRegistry.State.JOINED);
+        } finally {
+            sendLock.unlock();
         }
+        messagesFromServer.add(InboundMessage.notice(groupId, "Joined group " + groupRegistry.nameOf(group)));
+    }
 
+    /**
+     * Add message to history - history is turned off when it can not store message
+     * @param message - message shown to user
+     */
+    private void storeInHistory(InboundMessage message) {
+        MessageHistory history = messageHistory;
+        if (history == null)
+            return;
         try {
-            if (!inMessage.ready())
-                return null;
-            message = inMessage.readLine();
+            history.append(message.getClientName(), message.getGroupId(), message.getMessage());
         } catch (IOException e) {
-            ClientStatement.Error("IOException occurred when reading message from server.", ClientStatement.DO_EXIT);
+            ClientStatement.Warning("IOException occurred when storing message in history: " + e.getMessage()
+                    + " - next messages are not stored");
+            messageHistory = null;
+            history.close();
         }
+    }
+
+    /**
+     * @return local history of messages from server, null if history is turned off
+     */
+    public MessageHistory getMessageHistory() {
+        return messageHistory;
+    }
+
+    /**
+     * @return System.nanoTime when messages returned by last readMessagesFromServer were received
+     */
+    public long getLastReadNanos() {
+        return frameDecoder.getLastReadNanos();
+    }
 
-        if (isServerShuttingDown(message)) {
-            ClientStatement.Info("Server is shutting down. I'm closing application");
-            this.closeSocket();
-            return null;
+    /**
+     * Connection was lost - connect again (LOGIN is sent again, then messages from spool)
+     * @param reason - statement about lost connection
+     * @param cause - error which broke connection, null if server closed it - client is closed with failure
+     *              only after error (see getFailure)
+     */
+    private void reconnectOrClose(String reason, IOException cause) {
+        breakConnection();
+        ClientStatement.Warning(reconnectSupervisor.isEnabled() ? reason + " Reconnecting." : reason);
+        if (reconnectSupervisor.reconnect(this::reconnectAttempt, () -> closed)) {
+            if (closed)
+                breakConnection(); // client was closed during reconnect
+            else
+                sendSpooledMessages();
+            return;
         }
+        if (closed)
+            return;
+        if (outboundSpool != null && !outboundSpool.isEmpty())
+            ClientStatement.Info("Messages to server kept in spool for next run: " + outboundSpool.size());
+        if (cause != null)
+            failure = new IOException("Can not reconnect to server.", cause);
+        closeSocket();
+    }
 
-        return this.decodeMessage(message);
+    private void reconnectAttempt() throws IOException {
+        try {
+            connect();
+        } catch (UnresolvedAddressException e) {
+            throw new IOException("unknown host", e);
+        }
+    }
+
+    /**
+     * Close socket, but not client - thread reading from server is woken up and connects again
+     */
+    private void breakConnection() {
+        SocketChannel brokenSocketChannel = socketChannel;
+        if (brokenSocketChannel == null || !brokenSocketChannel.isOpen())
+            return;
+        if (heartbeat != null)
+            heartbeat.reset(); // connection is not checked until next one is established
+        try {
+            brokenSocketChannel.close();
+        } catch (IOException e) {
+            ; // socket is not used any more
+        }
+        logCompressionSummary();
+        closeCompression();
+    }
+
+    /**
+     * Server accepted binary framing - next frames to server are binary
+     * Synchronized with senders - encoder can not be changed during sending
+     * @param accept - MESSAGE of EXTRA:FRAMING frame
+     */
+    private void useBinaryFraming(String accept) {
+        int[] ids = BinaryFraming.parseAccept(accept);
+        if (ids == null) {
+            ClientStatement.Warning("Wrong answer to binary framing offer: " + accept);
+            return;
+        }
+        sendLock.lock();
+        try {
+            messageEncoder.useBinaryFraming(ids[0], ids[1]);
+        } finally {
+            sendLock.unlock();
+        }
+        ClientStatement.Info("Server accepted binary framing");
+    }
+
+    /**
+     * Server accepted compression - next batches to server are compressed (frames from server are decompressed by FrameDecoder)
+     * Synchronized with senders - encoder can not be changed during sending
+     * @param accept - MESSAGE of EXTRA:COMPRESSION frame
+     */
+    private void useCompression(String accept) {
+        if (!FrameCompression.isAccepted(accept)) {
+            ClientStatement.Warning("Wrong answer to compression offer: " + accept);
+            return;
+        }
+        FrameCompressor compressor = ConnectionSettings.newCompressor(accept);
+        sendLock.lock();
+        try {
+            messageEncoder.useCompression(compressor);
+        } finally {
+            sendLock.unlock();
+        }
+        ClientStatement.Info("Server accepted compression: " + accept);
     }
 
     /**
      * Check connection to server
-     * @return information about socket - closed or not
+     * @return true if socket is open (false also during reconnect)
      */
     public boolean isConnected() {
-        return !clientSocket.isClosed();
+        SocketChannel currentSocketChannel = socketChannel;
+        return currentSocketChannel != null && currentSocketChannel.isOpen();
     }
 
     /**
-     * Close socket to server
+     * @return why client was closed - connection was broken by error and it could not be established again;
+     * null if client is open, it was closed by user or server closed connection
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return true if client was closed - connection will not be established again
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close socket to server - connection will not be established again
+     * Messages which were not sent stay in spool for next run
      */
     public void closeSocket() {
         boolean error = false;
+        boolean wasConnected = isConnected();
+        closed = true;
 
         try {
             error = false;
-            if (clientSocket != null)
-                clientSocket.close();
+            if (socketChannel != null)
+                socketChannel.close();
         } catch (IOException e) {
-            ClientStatement.Error("Closing Socket: IOException occurred.", ClientStatement.NO_EXIT);
+            ClientStatement.Warning("Closing Socket: IOException occurred.");
             error = true;
         } finally {
             if (!error)
                 ClientStatement.Info("Closed socket");
         }
-        if (outMessage != null) {
-            outMessage.close();
-            ClientStatement.Info("Closed OutputStream");
+        if (wasConnected)
+            logCompressionSummary();
+        closeCompression();
+        if (outboundSpool != null) {
+            sendLock.lock(); // sender can not use spool during closing
+            try {
+                outboundSpool.close();
+            } finally {
+                sendLock.unlock();
+            }
         }
+        if (messageHistory != null)
+            messageHistory.close();
+        if (heartbeat != null) {
+            heartbeat.stop();
+            if (heartbeat.getRttStatistics().getSamples() > 0)
+                ClientStatement.Info("Heartbeat " + heartbeat.getRttStatistics().getSummary());
+        }
+    }
+
+    /**
+     * Free native memory of compression of broken connection - next connection has new encoder and decoder
+     * Compressor is closed under sendLock (senders write to closed socket without compression until reconnect),
+     * decompressor can be closed during read - reading thread gets IOException like from closed socket
+     */
+    private void closeCompression() {
+        sendLock.lock();
         try {
-            error = false;
-            if (inMessage != null)
-                inMessage.close();
-        } catch (IOException e) {
-            ClientStatement.Error("Closing BufferedReader: IOException occurred.", ClientStatement.NO_EXIT);
-            error = true;
+            if (messageEncoder != null && messageEncoder.getCompressor() != null)
+                messageEncoder.getCompressor().close();
+            if (frameDecoder != null && frameDecoder.getDecompressor() != null)
+                frameDecoder.getDecompressor().close();
         } finally {
-            if (!error)
-                ClientStatement.Info("Closed InputStream");
+            sendLock.unlock();
         }
     }
 
+    private void logCompressionSummary() {
+        FrameCompressor compressor = messageEncoder.getCompressor();
+        if (compressor != null)
+            ClientStatement.Info("Compression to server: " + compressor.getSummary());
+        FrameDecompressor decompressor = frameDecoder.getDecompressor();
+        if (decompressor != null)
+            ClientStatement.Info("Compression from server: " + decompressor.getSummary());
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ClientSocketHandler that = (ClientSocketHandler) o;
-        return Objects.equals(clientSocket, that.clientSocket) &&
-                Objects.equals(outMessage, that.outMessage) &&
-                Objects.equals(inMessage, that.inMessage);
+        return Objects.equals(socketChannel, that.socketChannel) &&
+                Objects.equals(messageEncoder, that.messageEncoder);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(clientSocket, outMessage, inMessage);
+        return Objects.hash(socketChannel, messageEncoder);
     }
 }
@@ -1,128 +1,132 @@
 package pl.springtest.communicatorclient.toServerConnection;
 
+import pl.springtest.communicatorclient.client.CommunicatorClient;
+import pl.springtest.communicatorclient.files.FileSender;
+import pl.springtest.communicatorclient.history.HistoryCommand;
+import pl.springtest.communicatorclient.messages.ConsoleCommand;
 import pl.springtest.communicatorclient.messages.MessageHandler;
 import pl.springtest.communicatorclient.statement.ClientStatement;
+import pl.springtest.communicatorclient.workers.WorkerExecutor;
+import pl.springtest.communicatorclient.workers.WorkerExecutors;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
- * Object connects to server, create threads to send and read messages
+ * Console application on CommunicatorClient - typed messages are sent by client, messages from server are shown
+ * by MessageHandler, which subscribes client
+ * Threads are started by WorkerExecutor - platform or virtual (see WorkerExecutors)
+ * Console commands /history (see HistoryCommand), /send (see FileSender) and /join, /leave, /group (see GroupCommand)
+ * are executed by client
+ * Warnings of client (lost connection, full spool...) are shown in console with messages of login group
  */
 public class Connection {
-    ClientSocketHandler clientSocket = null;
+    CommunicatorClient client;
     MessageHandler messageHandler;
 
     /**
-     * Activate connection and threads to send and read messages
-     * Have ShutdownHook - to close socket
+     * Activate connection and console on System.in and System.out
+     * Have ShutdownHook - to close client
      * @param addressIP - server address IP
      * @param port - servers port to connect
      * @param clientName - client name which is added to messages data
      * @param groupId - communicator group ID which is added to messages data
      */
     public Connection(String addressIP, int port, String clientName, String groupId) {
-        ClientData.name = clientName;
-        ClientData.groupID = groupId;
-        activateConnection(addressIP, port);
-        messageHandler = new MessageHandler();
-        createReadTransmitConnectionThread();
+        this(addressIP, port, clientName, groupId, WorkerExecutors.getDefault(), System.in, System.out);
+    }
+
+    /**
+     * Activate connection and console
+     * Have ShutdownHook - to close client
+     * @param addressIP - server address IP
+     * @param port - servers port to connect
+     * @param clientName - client name which is added to messages data
+     * @param groupId - communicator group ID which is added to messages data
+     * @param workerExecutor - starts threads of client and of MessageHandler
+     * @param input - messages typed by user (eg. System.in)
+     * @param output - console for messages from server (eg. System.out)
+     */
+    public Connection(String addressIP, int port, String clientName, String groupId,
+                      WorkerExecutor workerExecutor, InputStream input, OutputStream output) {
+        this(CommunicatorClient.builder().host(addressIP).port(port).clientName(clientName).groupId(groupId),
+                workerExecutor, input, output);
+    }
+
+    /**
+     * Activate connection and console
+     * Have ShutdownHook - to close client
+     * @param clientBuilder - settings of client (address of server and identity)
+     * @param workerExecutor - starts threads of client and of MessageHandler
+     * @param input - messages typed by user (eg. System.in)
+     * @param output - console for messages from server (eg. System.out)
+     */
+    public Connection(CommunicatorClient.Builder clientBuilder, WorkerExecutor workerExecutor, InputStream input, OutputStream output) {
+        try {
+            client = clientBuilder.workerExecutor(workerExecutor).connect();
+        } catch (IOException e) {
+            ClientStatement.Error("IOException occurred when connecting to server: " + e.getMessage(), ClientStatement.DO_EXIT);
+        }
+        messageHandler = new MessageHandler(workerExecutor, input, output, consoleCommands(workerExecutor), this::sendTypedMessage);
+        ClientStatement.setWarningListener(messageHandler::addMessageFromServer); // errors of client are shown in console
+        client.subscribe(messageHandler);
 
-        // closing socket when application is being shutdown
+        // closing client when application is being shutdown
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 ClientStatement.Info("CTRL+C");
-                synchronized(clientSocket) {
-                    clientSocket.sendMessageToServer("LOGOUT", ExtraInfo.SHUTDOWN);
-                    clientSocket.closeSocket();
-                    clientSocket.notifyAll();
-                }
+                client.close(); // sends LOGOUT, unblocks workers of client
                 messageHandler.resetConnectionToServerOK();
             }
         });
     }
 
     /**
-     * Activate connection to server
-     * @param addressIP - address IP of server
-     * @param port - port to connect to server
+     * @param workerExecutor - starts worker sending file
+     * @return commands executed by client, not sent to server
      */
-    private void activateConnection(String addressIP, int port) {
-        clientSocket = new ClientSocketHandler(addressIP, port);
+    private Map<String, ConsoleCommand> consoleCommands(WorkerExecutor workerExecutor) {
+        ClientSocketHandler clientSocket = client.getSocketHandler();
+        Map<String, ConsoleCommand> consoleCommands = new HashMap<String, ConsoleCommand>();
+        consoleCommands.put(HistoryCommand.COMMAND, line -> HistoryCommand.execute(line, clientSocket.getMessageHistory()));
+        consoleCommands.put(FileSender.COMMAND, new FileSender(clientSocket, workerExecutor,
+                line -> messageHandler.addMessageFromServer(line), // messageHandler is created with commands
+                () -> messageHandler.getActiveGroup(), ConnectionSettings.fileChunkBytes, ConnectionSettings.fileMaxBytesPerSecond));
+        ConsoleCommand groupCommand = line -> GroupCommand.execute(line, clientSocket, messageHandler);
+        consoleCommands.put(GroupCommand.JOIN, groupCommand);
+        consoleCommands.put(GroupCommand.LEAVE, groupCommand);
+        consoleCommands.put(GroupCommand.GROUP, groupCommand);
+        return consoleCommands;
     }
 
     /**
-     * Start reading and transmitting messages to and from server
+     * Send typed message to active group - message which can not be sent is reported as error
+     * @param line - typed message
+     * @return no lines to show
      */
-    private void createReadTransmitConnectionThread() {
-        TransmitConnection tx = new TransmitConnection();
-        ReadConnection rx = new ReadConnection();
-        tx.start();
-        rx.start();
-    }
-
-    /**
-     * Thread to transmit messages from client to server
-     */
-    private class TransmitConnection extends Thread {
-        @Override
-        public void run() {
-            this.setName("Thread - TransmitConnection");
-            while (clientSocket.isConnected()) {
-                synchronized (clientSocket) {
-                    try {
-                        clientSocket.notify(); // wake up ReadConnection thread
-                        clientSocket.wait();
-                    } catch (InterruptedException e) {
-                        ClientStatement.Error("InterruptedException - TransmitConnection occurred.", ClientStatement.NO_EXIT);
-                    } finally {
-                        if (!messageHandler.isMessagesToServerEmpty()) {
-                            List<String> newMessagesToServer = messageHandler.GetMessagesToServerAndClear();
-
-                            for (String message : newMessagesToServer)
-                                clientSocket.sendMessageToServer(message, ExtraInfo.NO_INFO);
-                        }
-                    }
-                }
-            }
-            ClientStatement.Info("End of TransmitConnection thread");
-            synchronized (clientSocket) {
-                clientSocket.notify(); // wake up ReadConnection thread
-            }
-            messageHandler.resetConnectionToServerOK();
-        }
+    private List<String> sendTypedMessage(String line) {
+        String groupId = client.getGroupRegistry().nameOf(messageHandler.getActiveGroup());
+        client.send(groupId, line).whenComplete((sent, error) -> {
+            if (error != null)
+                ClientStatement.Error(error.getMessage(), ClientStatement.NO_EXIT);
+        });
+        return Collections.emptyList();
     }
 
     /**
-     * Thread to read messages from server to client
+     * Wait until client and console end - needed by virtual threads, they do not keep application running
+     * @throws InterruptedException - when waiting thread is interrupted
      */
-    private class ReadConnection extends Thread {
-        @Override
-        public void run() {
-            this.setName("Thread - ReadConnection");
-            while (clientSocket.isConnected()) {
-                synchronized (clientSocket) {
-                    try {
-                        clientSocket.notify(); // wake up TransmitConnection thread
-                        clientSocket.wait();
-                    } catch (InterruptedException e) {
-                        ClientStatement.Error("InterruptedException - ReadConnection occurred.", ClientStatement.NO_EXIT);
-                    } finally {
-                        if (clientSocket.isConnected()) {
-                            String message = clientSocket.readMessageFromServer();
-                            if (message != null)
-                                messageHandler.addMessageFromServer(message);
-                        }
-                    }
-                }
-            }
-            ClientStatement.Info("End of ReadConnection thread");
-            synchronized (clientSocket) {
-                clientSocket.notify(); // wake up TransmitConnection thread
-            }
-            messageHandler.resetConnectionToServerOK();
-        }
+    public void join() throws InterruptedException {
+        client.join();
+        messageHandler.join();
     }
 
     @Override
@@ -130,12 +134,12 @@ public class Connection {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Connection that = (Connection) o;
-        return Objects.equals(clientSocket, that.clientSocket) &&
+        return Objects.equals(client, that.client) &&
                 Objects.equals(messageHandler, that.messageHandler);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(clientSocket, messageHandler);
+        return Objects.hash(client, messageHandler);
     }
 }
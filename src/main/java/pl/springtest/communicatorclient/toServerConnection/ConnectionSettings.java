@@ -0,0 +1,173 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import pl.springtest.communicatorclient.files.FileReassembler;
+import pl.springtest.communicatorclient.history.MessageHistory;
+import pl.springtest.communicatorclient.statement.ClientStatement;
+import pl.springtest.communicatorclient.workers.TimerWheel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+
+/**
+ * Settings of sending messages to server
+ * Default values can be changed by system properties:
+ * - communicator.batch.maxBytes - maximum number of bytes sent by one write (default 64 KB)
+ * - communicator.batch.lingerMillis - how long to wait for next messages when many messages are sent at once (default 2 ms, 0 - never wait)
+ * - communicator.framing - "binary" offers binary framing to server in LOGIN (default "text" - server which does not
+ *   know binary framing shows offer as LOGIN message to group)
+ * - communicator.compression - "deflate" offers compression to server in LOGIN (default "none")
+ * - communicator.compression.level - level of Deflater, 1 (fast) - 9 (small) (default -1 - Deflater default)
+ * - communicator.compression.minBytes - smaller batches are sent without compression (default 64 B - text frame is never smaller)
+ * - communicator.compression.dictionary - path to preset dictionary built by bench.DictionaryTrainer (default none)
+ * - communicator.spool - file where messages to server wait until they are sent, "none" - messages are not spooled
+ *   (default "spool_<client name>" in communicator.dataDir)
+ * - communicator.dataDir - directory of files kept by client between runs (default ".communicator" in home directory of user)
+ * - communicator.spool.maxBytes - size of spool file - messages which do not fit are rejected (default 16 MB)
+ * - communicator.reconnect.maxAttempts - attempts to reconnect after lost connection (default 20, 0 - application exits)
+ * - communicator.reconnect.initialMillis - limit of delay before first attempt, doubled by every next one (default 100 ms)
+ * - communicator.reconnect.maxMillis - maximum limit of delay between attempts (default 30 s)
+ * - communicator.history - directory of local history of messages from server, "none" - history is not stored
+ *   (default "history_<client name>")
+ * - communicator.history.segmentBytes - size of segment files of history (default 64 MB)
+ * - communicator.heartbeat.intervalMillis - time between heartbeats (default 0 - heartbeats are not sent; server which
+ *   does not know heartbeats shows them as messages to group, so they are turned on only for server which answers them)
+ * - communicator.heartbeat.maxMissed - not answered heartbeats in a row after which server is dead and connection is
+ *   established again (default 3)
+ * - communicator.file.chunkBytes - maximum number of bytes of file in one frame sent by /send (default 32 KB)
+ * - communicator.file.maxBytesPerSecond - limit of speed of sending file (default 0 - no limit)
+ * - communicator.files - directory of files received from group (default none - files from group are not received)
+ * - communicator.file.maxBytes - bigger files from group are not received (default 100 MB)
+ */
+public abstract class ConnectionSettings {
+    public static int maxBatchBytes = Integer.getInteger("communicator.batch.maxBytes", 64 * 1024);
+    public static long lingerMillis = Long.getLong("communicator.batch.lingerMillis", 2);
+    public static boolean offerBinaryFraming = "binary".equals(System.getProperty("communicator.framing", "text"));
+    public static boolean offerCompression = "deflate".equals(System.getProperty("communicator.compression", "none"));
+    public static int compressionLevel = Integer.getInteger("communicator.compression.level", Deflater.DEFAULT_COMPRESSION);
+    public static int compressionMinBytes = Integer.getInteger("communicator.compression.minBytes", 64);
+    public static String compressionDictionaryPath = System.getProperty("communicator.compression.dictionary");
+    public static String spoolPath = System.getProperty("communicator.spool");
+    public static String dataDirectory = System.getProperty("communicator.dataDir",
+            Paths.get(System.getProperty("user.home"), ".communicator").toString());
+    public static int spoolMaxBytes = Integer.getInteger("communicator.spool.maxBytes", 16 * 1024 * 1024);
+    public static int reconnectMaxAttempts = Integer.getInteger("communicator.reconnect.maxAttempts", 20);
+    public static long reconnectInitialMillis = Long.getLong("communicator.reconnect.initialMillis", 100);
+    public static long reconnectMaxMillis = Long.getLong("communicator.reconnect.maxMillis", 30 * 1000);
+    public static String historyPath = System.getProperty("communicator.history");
+    public static int historySegmentBytes = Integer.getInteger("communicator.history.segmentBytes", MessageHistory.DEFAULT_SEGMENT_BYTES);
+    public static long heartbeatIntervalMillis = Long.getLong("communicator.heartbeat.intervalMillis", 0);
+    public static int heartbeatMaxMissed = Integer.getInteger("communicator.heartbeat.maxMissed", 3);
+    public static int fileChunkBytes = Integer.getInteger("communicator.file.chunkBytes", 32 * 1024);
+    public static long fileMaxBytesPerSecond = Long.getLong("communicator.file.maxBytesPerSecond", 0);
+    public static String filesPath = System.getProperty("communicator.files");
+    public static long fileMaxBytes = Long.getLong("communicator.file.maxBytes", 100 * 1024 * 1024);
+
+    private static byte[] compressionDictionary = null;
+    private static boolean compressionDictionaryLoaded = false;
+
+    /**
+     * @return message of LOGIN frame - with offers of binary framing and compression if they are enabled
+     */
+    public static String loginMessage() {
+        StringBuilder loginMessage = new StringBuilder("LOGIN");
+        if (offerBinaryFraming)
+            loginMessage.append(' ').append(BinaryFraming.OFFER);
+        if (offerCompression)
+            loginMessage.append(' ').append(FrameCompression.offer(compressionDictionary()));
+        return loginMessage.toString();
+    }
+
+    /**
+     * Preset dictionary of compression - read from file by first call
+     * @return dictionary, null if there is no dictionary or it can not be read
+     */
+    public static synchronized byte[] compressionDictionary() {
+        if (!compressionDictionaryLoaded && compressionDictionaryPath != null) {
+            try {
+                compressionDictionary = FrameCompression.loadDictionary(compressionDictionaryPath);
+            } catch (IOException e) {
+                ClientStatement.Warning("IOException occurred when reading compression dictionary: " + e.getMessage());
+            }
+        }
+        compressionDictionaryLoaded = true;
+        return compressionDictionary;
+    }
+
+    /**
+     * @param accept - MESSAGE of EXTRA:COMPRESSION frame from server
+     * @return compressor of messages to server, with dictionary if server accepted it
+     */
+    public static FrameCompressor newCompressor(String accept) {
+        return new FrameCompressor(compressionLevel, compressionMinBytes,
+                FrameCompression.acceptedDictionary(accept, compressionDictionary()));
+    }
+
+    /**
+     * Open spool of messages to server - messages not sent by previous run of the same client are kept
+     * Default spool is in data directory, which is created if it does not exist
+     * @param clientName - client name, part of default path
+     * @return spool, null if spool is turned off or can not be open (messages are sent without spool)
+     */
+    public static OutboundSpool openSpool(String clientName) {
+        if ("none".equals(spoolPath))
+            return null;
+        String path = (spoolPath != null) ? spoolPath : Paths.get(dataDirectory, "spool_" + clientName).toString();
+        try {
+            if (spoolPath == null)
+                Files.createDirectories(Paths.get(dataDirectory));
+            return new OutboundSpool(Paths.get(path), spoolMaxBytes);
+        } catch (IOException e) {
+            ClientStatement.Warning("IOException occurred when opening spool " + path + ": " + e.getMessage()
+                    + " - messages are sent without spool");
+            return null;
+        }
+    }
+
+    /**
+     * Open local history of messages from server - messages stored by previous runs of the same client are kept
+     * @param clientName - client name, part of default path
+     * @return history, null if history is turned off or can not be open
+     */
+    public static MessageHistory openHistory(String clientName) {
+        String path = (historyPath != null) ? historyPath : "history_" + clientName;
+        if (path.equals("none"))
+            return null;
+        try {
+            return new MessageHistory(Paths.get(path), historySegmentBytes);
+        } catch (IOException e) {
+            ClientStatement.Warning("IOException occurred when opening history " + path + ": " + e.getMessage()
+                    + " - messages are not stored");
+            return null;
+        }
+    }
+
+    /**
+     * @return heartbeat of connection scheduled by shared TimerWheel, null if heartbeats are turned off
+     */
+    public static Heartbeat newHeartbeat() {
+        if (heartbeatIntervalMillis <= 0)
+            return null;
+        return new Heartbeat(heartbeatIntervalMillis, heartbeatMaxMissed, TimerWheel.getShared());
+    }
+
+    /**
+     * @return supervisor of reconnects after lost connection
+     */
+    public static ReconnectSupervisor newReconnectSupervisor() {
+        return new ReconnectSupervisor(reconnectMaxAttempts, reconnectInitialMillis, reconnectMaxMillis);
+    }
+
+    /**
+     * @param clientName - client name (files of this client are not written)
+     * @param console - receives lines to show in console
+     * @return writer of files received from group, null if receiving of files is turned off
+     */
+    public static FileReassembler newFileReassembler(String clientName, Consumer<String> console) {
+        if (filesPath == null || filesPath.equals("none"))
+            return null;
+        return new FileReassembler(Paths.get(filesPath), fileMaxBytes, clientName, console);
+    }
+}
@@ -2,9 +2,55 @@ package pl.springtest.communicatorclient.toServerConnection;
 
 /**
  * List of extra info in messages
+ * Code is sent in binary frames instead of name - it can not be changed
  */
 public enum ExtraInfo {
-    NO_INFO,
-    SHUTDOWN,
-    NEW_CONNECTION;
+    NO_INFO(0),
+    SHUTDOWN(1),
+    NEW_CONNECTION(2),
+    FRAMING(3),
+    COMPRESSION(4),
+    HEARTBEAT(5),
+    FILE_START(6),
+    FILE_CHUNK(7),
+    FILE_END(8),
+    JOIN(9),
+    LEAVE(10);
+
+    private static final ExtraInfo[] BY_CODE = new ExtraInfo[128];
+
+    static {
+        for (ExtraInfo extraInfo : values())
+            BY_CODE[extraInfo.code] = extraInfo;
+    }
+
+    private final int code;
+
+    ExtraInfo(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @param code - code from binary frame
+     * @return extra info with code, NO_INFO if code is unknown
+     */
+    public static ExtraInfo fromCode(int code) {
+        ExtraInfo extraInfo = (code >= 0 && code < BY_CODE.length) ? BY_CODE[code] : null;
+        return extraInfo != null ? extraInfo : NO_INFO;
+    }
+
+    /**
+     * @param field - value of EXTRA field from text frame (eg. "SHUTDOWN")
+     * @return extra info with name, NO_INFO if field is empty or unknown
+     */
+    public static ExtraInfo fromField(String field) {
+        for (ExtraInfo extraInfo : values())
+            if (extraInfo != NO_INFO && extraInfo.name().equals(field))
+                return extraInfo;
+        return NO_INFO;
+    }
 }
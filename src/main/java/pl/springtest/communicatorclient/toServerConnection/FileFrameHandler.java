@@ -0,0 +1,23 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives frames of files sent to group (EXTRA FILE_START, FILE_CHUNK, FILE_END) - they are not shown as messages
+ * Called by thread reading from server in order of frames (see FrameDecoder)
+ */
+public interface FileFrameHandler {
+    /**
+     * @param message - FILE_START or FILE_END frame (view valid only during call)
+     */
+    void fileControlFrame(ServerMessage message);
+
+    /**
+     * Payload of binary FILE_CHUNK frame - bytes are not decoded and not copied
+     * @param sender - client name of sender
+     * @param buffer - buffer with frame (its position and limit have to be restored)
+     * @param start - index of first byte of payload
+     * @param end - index after last byte of payload
+     */
+    void fileChunk(String sender, ByteBuffer buffer, int start, int end);
+}
@@ -0,0 +1,125 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import pl.springtest.communicatorclient.info.AppInfo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Adler32;
+
+/**
+ * Compression of frames - optional, used only when server accepts it
+ * Negotiation:
+ * - client adds offer "DEFLATE/1" to message of LOGIN frame, with ID of preset dictionary if it has one ("DEFLATE/1:1a2b3c4d")
+ * - server which supports compression answers with text frame EXTRA:COMPRESSION and message "DEFLATE/1",
+ *   or "DEFLATE/1:<ID>" when it has the same dictionary - then both sides use it
+ * Compressed frame carries whole frames (text or binary) of one batch:
+ * - type byte 0xFE, length in bytes (varint, see BinaryFraming), raw deflate data ended by sync flush
+ * One deflate stream is kept for whole connection in each direction, so every batch can refer to previous ones
+ * Batches smaller than threshold are sent without compression - compressed and plain frames can be mixed in stream
+ */
+public abstract class FrameCompression {
+    public static final String OFFER = "DEFLATE/1";
+    public static final int COMPRESSED_TYPE = 0xFE;
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024; // deflate window
+
+    /**
+     * @param dictionary - preset dictionary, null if there is no dictionary
+     * @return offer added to LOGIN message
+     */
+    public static String offer(byte[] dictionary) {
+        return dictionary == null ? OFFER : OFFER + ":" + dictionaryId(dictionary);
+    }
+
+    /**
+     * @param message - MESSAGE of EXTRA:COMPRESSION frame
+     * @return true if server accepted compression
+     */
+    public static boolean isAccepted(String message) {
+        return message.equals(OFFER) || message.startsWith(OFFER + ":");
+    }
+
+    /**
+     * @param message - MESSAGE of EXTRA:COMPRESSION frame (or offer from client)
+     * @param dictionary - dictionary of this side, null if there is no dictionary
+     * @return dictionary if other side named the same one, null otherwise
+     */
+    public static byte[] acceptedDictionary(String message, byte[] dictionary) {
+        if (dictionary == null || !message.equals(offer(dictionary)))
+            return null;
+        return dictionary;
+    }
+
+    /**
+     * @param dictionary - preset dictionary
+     * @return Adler-32 of dictionary as hex text
+     */
+    public static String dictionaryId(byte[] dictionary) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary);
+        return Long.toHexString(adler32.getValue());
+    }
+
+    /**
+     * Read preset dictionary from file
+     * @param path - path to file built by main
+     * @return dictionary (only last MAX_DICTIONARY_SIZE bytes - deflate can not refer further)
+     * @throws IOException - when file can not be read
+     */
+    public static byte[] loadDictionary(String path) throws IOException {
+        byte[] dictionary = Files.readAllBytes(Paths.get(path));
+        if (dictionary.length <= MAX_DICTIONARY_SIZE)
+            return dictionary;
+        byte[] end = new byte[MAX_DICTIONARY_SIZE];
+        System.arraycopy(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, end, 0, MAX_DICTIONARY_SIZE);
+        return end;
+    }
+
+    /**
+     * Build preset dictionary from sample messages
+     * Dictionary contains header fields of text frames and words and whole messages which repeat in samples,
+     * the most valuable (count * length) at the end - deflate encodes shorter distances with fewer bits
+     * @param samples - sample messages (eg. from info log)
+     * @param maxSize - maximum size of dictionary in bytes
+     * @return dictionary
+     */
+    public static byte[] buildDictionary(List<String> samples, int maxSize) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String sample : samples) {
+            counts.merge(sample, 1, Integer::sum);
+            for (String word : sample.split("\\s+"))
+                if (word.length() > 2 && !word.equals(sample))
+                    counts.merge(word + " ", 1, Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> repeated = new ArrayList<Map.Entry<String, Integer>>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet())
+            if (entry.getValue() > 1)
+                repeated.add(entry);
+        repeated.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(), (long) a.getValue() * a.getKey().length()));
+
+        byte[] header = ("VERSION_INFO:" + AppInfo.VERSION_INFO + ";CLIENT_NAME:;GROUP_ID:;EXTRA:;MESSAGE:").getBytes(StandardCharsets.UTF_8);
+        List<byte[]> parts = new ArrayList<byte[]>();
+        int size = header.length;
+        for (Map.Entry<String, Integer> entry : repeated) {
+            byte[] part = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + part.length > maxSize)
+                continue;
+            parts.add(part);
+            size += part.length;
+        }
+
+        byte[] dictionary = new byte[size];
+        int position = 0;
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            System.arraycopy(parts.get(i), 0, dictionary, position, parts.get(i).length);
+            position += parts.get(i).length;
+        }
+        System.arraycopy(header, 0, dictionary, position, header.length);
+        return dictionary;
+    }
+}
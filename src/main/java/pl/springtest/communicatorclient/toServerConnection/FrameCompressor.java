@@ -0,0 +1,104 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses batches of frames of one connection to compressed frames (see FrameCompression)
+ * Deflater is kept for whole connection - batch is ended by sync flush, so receiver can decode it at once
+ * Not thread safe - it is used by sending thread only
+ */
+public class FrameCompressor {
+    private static final int HEADER_SPACE = 1 + BinaryFraming.MAX_VARINT_SIZE; // type byte and length
+
+    private final Deflater deflater;
+    private final int minBatchBytes;
+    private ByteBuffer output = ByteBuffer.allocate(16 * 1024);
+    private boolean closed = false; // set by sending thread (or under its lock)
+
+    // statistics
+    private long plainBytes = 0;
+    private long compressedBytes = 0;
+    private long compressedBatches = 0;
+    private long skippedBatches = 0;
+    private long compressionNanos = 0;
+
+    /**
+     * @param level - compression level of Deflater (1-9, Deflater.DEFAULT_COMPRESSION)
+     * @param minBatchBytes - smaller batches are not compressed
+     * @param dictionary - preset dictionary accepted by other side, null if there is no dictionary
+     */
+    public FrameCompressor(int level, int minBatchBytes, byte[] dictionary) {
+        this.deflater = new Deflater(level, true);
+        this.minBatchBytes = minBatchBytes;
+        if (dictionary != null)
+            deflater.setDictionary(dictionary);
+    }
+
+    /**
+     * Compress encoded frames of one batch
+     * @param frames - frames ready to be written (position - first byte, limit - after last byte)
+     * @return frames itself if batch is smaller than threshold or compressor is closed (connection is broken,
+     *         so writing fails); otherwise compressed frame ready to be written (buffer of compressor - valid until next call)
+     */
+    public ByteBuffer compressBatch(ByteBuffer frames) {
+        int batchBytes = frames.remaining();
+        if (batchBytes == 0 || closed)
+            return frames;
+        if (batchBytes < minBatchBytes) {
+            skippedBatches++;
+            return frames;
+        }
+        long startTime = System.nanoTime();
+        deflater.setInput(frames);
+        output.clear().position(HEADER_SPACE);
+        while (true) {
+            deflater.deflate(output, Deflater.SYNC_FLUSH);
+            if (output.hasRemaining())
+                break; // whole batch is flushed
+            ByteBuffer biggerOutput = ByteBuffer.allocate(output.capacity() * 2);
+            output.flip();
+            biggerOutput.put(output);
+            output = biggerOutput;
+        }
+
+        int end = output.position();
+        int length = end - HEADER_SPACE;
+        int start = HEADER_SPACE - 1 - BinaryFraming.varintSize(length);
+        output.position(start);
+        output.put((byte) FrameCompression.COMPRESSED_TYPE);
+        BinaryFraming.putVarint(output, length);
+        output.limit(end).position(start);
+
+        compressionNanos += System.nanoTime() - startTime;
+        plainBytes += batchBytes;
+        compressedBytes += end - start;
+        compressedBatches++;
+        return output;
+    }
+
+    /**
+     * Free native memory of deflater - compressor can not be used later
+     */
+    public void close() {
+        closed = true;
+        deflater.end();
+    }
+
+    public long getPlainBytes() {
+        return plainBytes;
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return text with compression ratio and CPU cost, eg. for log
+     */
+    public String getSummary() {
+        return String.format("compressed %d batches: %d B -> %d B (ratio %.2f), %.1f us per batch; not compressed %d small batches",
+                compressedBatches, plainBytes, compressedBytes, compressedBytes == 0 ? 0.0 : (double) plainBytes / compressedBytes,
+                compressedBatches == 0 ? 0.0 : compressionNanos / 1e3 / compressedBatches, skippedBatches);
+    }
+}
@@ -0,0 +1,310 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+import pl.springtest.communicatorclient.statement.ClientStatement;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental decoder of frames from server - text frames are ended by "\n", binary frames have length (see BinaryFraming)
+ * Both kinds can be mixed in one stream - binary frame starts with byte with high bit set
+ * Compressed frames (see FrameCompression) are decompressed and frames inside them are decoded the same way
+ * One receive buffer is kept for whole connection, so part of frame received by previous read is not lost
+ * Frames of one read are decoded to one char array and returned as reused ServerMessage views - fields are slices of it,
+ * so text frame is not copied to String; malformed text frames are skipped and counted
+ * Frames of files go to FileFrameHandler - payload of binary FILE_CHUNK frame is passed as bytes, without decoding
+ * Not thread safe - it should be used only by thread reading from socket
+ */
+public class FrameDecoder {
+    public static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private ByteBuffer receiveBuffer; // always in "write" mode between reads
+    private char[] frameChars; // decoded frames of last read - fields of returned messages point to it
+    private CharBuffer frameCharBuffer; // wraps frameChars for CharsetDecoder
+    private int frameCharsEnd = 0;
+    private final CharsetDecoder utf8Decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final List<ServerMessage> frames = new ArrayList<ServerMessage>();
+    private final List<ServerMessage> messageViews = new ArrayList<ServerMessage>(); // reused by every read
+    private long malformedFrames = 0;
+    private final Map<Integer, String> clientNames = new HashMap<Integer, String>(); // IDs from definition frames
+    private final Map<Integer, String> groupIds = new HashMap<Integer, String>();
+    private final int[] binaryFields = new int[3]; // client name ID (or defined ID), group ID (or kind), payload length
+    private int scannedBytes = 0; // bytes at the beginning of buffer already checked - there is no "\n" in them
+    private volatile FrameDecompressor decompressor = null; // created when server accepts compression, closed by other thread
+    private long lastReadNanos = 0;
+    private FileFrameHandler fileFrameHandler = null; // null - frames of files are skipped
+
+    public FrameDecoder() {
+        this(INITIAL_BUFFER_SIZE);
+    }
+
+    /**
+     * @param initialBufferSize - initial size of receive buffer, it grows when frame is bigger (eg. small for many sessions in one JVM)
+     */
+    public FrameDecoder(int initialBufferSize) {
+        receiveBuffer = ByteBuffer.allocateDirect(initialBufferSize);
+        frameChars = new char[initialBufferSize];
+        frameCharBuffer = CharBuffer.wrap(frameChars);
+    }
+
+    /**
+     * Read data available in channel and split it to frames
+     * Blocks as long as channel read blocks (in non-blocking mode it returns empty list when there is no data)
+     * @param channel - channel connected to server
+     * @return all messages completed by this read (list and messages are reused - they are valid until next call,
+     * ServerMessage.copy keeps message longer), null when end of stream
+     * @throws IOException - when reading failed, frame is longer than MAX_FRAME_SIZE or binary frame is malformed
+     */
+    public List<ServerMessage> readFrames(ReadableByteChannel channel) throws IOException {
+        frames.clear();
+        frameCharsEnd = 0;
+        if (!receiveBuffer.hasRemaining())
+            growReceiveBuffer();
+        int readBytes = channel.read(receiveBuffer);
+        if (readBytes == -1)
+            return null;
+        lastReadNanos = System.nanoTime();
+
+        receiveBuffer.flip();
+        int frameStart = decodeFrames(receiveBuffer, 0, receiveBuffer.limit());
+        // keep only incomplete frame at the beginning of buffer
+        receiveBuffer.position(frameStart);
+        receiveBuffer.compact();
+        if (ClientMetrics.ENABLED && readBytes > 0)
+            ClientMetrics.recordReceived(frames.size(), readBytes, System.nanoTime() - lastReadNanos);
+        return frames;
+    }
+
+    /**
+     * @param fileFrameHandler - receiver of frames of files, null - they are skipped
+     */
+    public void setFileFrameHandler(FileFrameHandler fileFrameHandler) {
+        this.fileFrameHandler = fileFrameHandler;
+    }
+
+    /**
+     * @return System.nanoTime when last read returned data - time of receiving of frames returned by readFrames
+     */
+    public long getLastReadNanos() {
+        return lastReadNanos;
+    }
+
+    /**
+     * Decode all complete frames in buffer
+     * @param buffer - receive buffer or decompressed batch
+     * @param start - index of first frame
+     * @param limit - index after last byte
+     * @return index of first byte of incomplete frame (limit if all frames were complete)
+     * @throws IOException - when frame is longer than MAX_FRAME_SIZE or binary frame is malformed
+     */
+    private int decodeFrames(ByteBuffer buffer, int start, int limit) throws IOException {
+        boolean receiving = (buffer == receiveBuffer);
+        int frameStart = start;
+        int scanFrom = receiving ? scannedBytes : start;
+        while (frameStart < limit) {
+            if ((buffer.get(frameStart) & BinaryFraming.FRAME_FLAG) != 0) {
+                int frameEnd = decodeBinaryFrame(buffer, frameStart, limit);
+                if (frameEnd == BinaryFraming.NEED_MORE_DATA)
+                    break;
+                frameStart = frameEnd;
+            } else {
+                int newline = indexOfNewline(buffer, Math.max(scanFrom, frameStart), limit);
+                if (newline == -1) {
+                    scanFrom = limit;
+                    break;
+                }
+                int frameEnd = (newline > frameStart && buffer.get(newline - 1) == '\r') ? newline - 1 : newline;
+                decodeTextFrame(buffer, frameStart, frameEnd);
+                frameStart = newline + 1;
+            }
+        }
+        if (receiving)
+            scannedBytes = Math.max(0, scanFrom - frameStart);
+        return frameStart;
+    }
+
+    private static int indexOfNewline(ByteBuffer buffer, int from, int limit) {
+        for (int i = from; i < limit; i++)
+            if (buffer.get(i) == '\n')
+                return i;
+        return -1;
+    }
+
+    /**
+     * Parse text frame to next message view - malformed frame is skipped
+     */
+    private void decodeTextFrame(ByteBuffer buffer, int start, int end) {
+        int charsStart = decodeText(buffer, start, end);
+        ServerMessage message = nextMessageView();
+        if (message.parseTextFrame(frameChars, charsStart, frameCharsEnd)) {
+            addMessage(message);
+            return;
+        }
+        malformedFrames++;
+        if (ClientMetrics.ENABLED)
+            ClientMetrics.MALFORMED_FRAMES.increment();
+        ClientStatement.Info("Malformed frame from server skipped: "
+                + new String(frameChars, charsStart, Math.min(frameCharsEnd - charsStart, 80)));
+    }
+
+    /**
+     * @return message not used by this read - messages of previous read are reused
+     */
+    private ServerMessage nextMessageView() {
+        if (frames.size() == messageViews.size())
+            messageViews.add(new ServerMessage());
+        return messageViews.get(frames.size());
+    }
+
+    /**
+     * Add message to result - answer to compression offer also starts decompression of next frames,
+     * frames of files go to FileFrameHandler (chunk in text frame is skipped - file bytes need binary framing)
+     */
+    private void addMessage(ServerMessage message) {
+        ExtraInfo extraInfo = message.getExtraInfo();
+        if (extraInfo == ExtraInfo.FILE_START || extraInfo == ExtraInfo.FILE_END) {
+            if (fileFrameHandler != null)
+                fileFrameHandler.fileControlFrame(message);
+            return;
+        }
+        if (extraInfo == ExtraInfo.FILE_CHUNK)
+            return;
+        if (message.getExtraInfo() == ExtraInfo.COMPRESSION && decompressor == null) {
+            String accept = message.getMessage().toString();
+            if (FrameCompression.isAccepted(accept))
+                decompressor = new FrameDecompressor(FrameCompression.acceptedDictionary(accept, ConnectionSettings.compressionDictionary()));
+        }
+        frames.add(message);
+    }
+
+    /**
+     * Decode binary frame - message is added to result, definition frame only binds ID to text,
+     * frames of compressed frame are decompressed and decoded
+     * @param buffer - buffer with frame
+     * @param start - index of type byte
+     * @param limit - index after last received byte
+     * @return index after frame, NEED_MORE_DATA if frame is not complete
+     * @throws IOException - when frame is malformed
+     */
+    private int decodeBinaryFrame(ByteBuffer buffer, int start, int limit) throws IOException {
+        int type = buffer.get(start) & 0xFF;
+        int position = start + 1;
+        int[] fields = binaryFields;
+        int fieldCount = (type == FrameCompression.COMPRESSED_TYPE) ? 1 : 3;
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = BinaryFraming.getVarint(buffer, position, limit);
+            if (fields[i] == BinaryFraming.NEED_MORE_DATA)
+                return BinaryFraming.NEED_MORE_DATA;
+            if (fields[i] == BinaryFraming.MALFORMED)
+                throw new IOException("Malformed binary frame from server");
+            position += BinaryFraming.varintSize(fields[i]);
+        }
+        int length = fields[fieldCount - 1];
+        if (length > MAX_FRAME_SIZE)
+            throw new IOException("Frame from server is longer than " + MAX_FRAME_SIZE + " bytes");
+        if (limit - position < length)
+            return BinaryFraming.NEED_MORE_DATA;
+
+        if (type == FrameCompression.COMPRESSED_TYPE) {
+            if (decompressor == null || buffer != receiveBuffer)
+                throw new IOException("Unexpected compressed frame from server");
+            ByteBuffer batch = decompressor.decompress(buffer, position, position + length);
+            if (decodeFrames(batch, batch.position(), batch.limit()) != batch.limit())
+                throw new IOException("Incomplete frame in compressed frame from server");
+            return position + length;
+        }
+
+        if (type == (BinaryFraming.FRAME_FLAG | ExtraInfo.FILE_CHUNK.getCode())) {
+            if (fileFrameHandler != null)
+                fileFrameHandler.fileChunk(definedText(clientNames, fields[0]), buffer, position, position + length);
+            return position + length;
+        }
+        int charsStart = decodeText(buffer, position, position + length);
+        if (type == BinaryFraming.DEFINITION_TYPE) {
+            String text = new String(frameChars, charsStart, frameCharsEnd - charsStart);
+            if (fields[1] == BinaryFraming.KIND_CLIENT_NAME)
+                clientNames.put(fields[0], text);
+            else if (fields[1] == BinaryFraming.KIND_GROUP)
+                groupIds.put(fields[0], text);
+        } else {
+            ServerMessage message = nextMessageView();
+            message.setBinaryFrame(definedText(clientNames, fields[0]), definedText(groupIds, fields[1]),
+                    ExtraInfo.fromCode(type & ~BinaryFraming.FRAME_FLAG), frameChars, charsStart, frameCharsEnd);
+            addMessage(message);
+        }
+        return position + length;
+    }
+
+    private static String definedText(Map<Integer, String> definitions, int id) {
+        String text = definitions.get(id);
+        return text != null ? text : "#" + id;
+    }
+
+    /**
+     * Decode UTF-8 bytes of text frame (without "\r\n") or payload of binary frame after previous frames of this read
+     * When they do not fit, new array is used - messages already decoded keep the old one
+     * @param buffer - buffer with frame
+     * @param start - index of first byte
+     * @param end - index after last byte
+     * @return index of first decoded char in frameChars, frameCharsEnd is index after last one
+     */
+    private int decodeText(ByteBuffer buffer, int start, int end) {
+        if (frameChars.length - frameCharsEnd < end - start) { // UTF-8 never has less bytes than chars
+            frameChars = new char[Math.max(frameChars.length, end - start)];
+            frameCharBuffer = CharBuffer.wrap(frameChars);
+            frameCharsEnd = 0;
+        }
+        int charsStart = frameCharsEnd;
+
+        int limit = buffer.limit();
+        buffer.limit(end).position(start);
+        frameCharBuffer.limit(frameChars.length).position(charsStart);
+        utf8Decoder.reset();
+        utf8Decoder.decode(buffer, frameCharBuffer, true);
+        utf8Decoder.flush(frameCharBuffer);
+        buffer.limit(limit);
+
+        frameCharsEnd = frameCharBuffer.position();
+        return charsStart;
+    }
+
+    /**
+     * @return number of skipped malformed text frames
+     */
+    public long getMalformedFrames() {
+        return malformedFrames;
+    }
+
+    /**
+     * @return decompressor of frames from server, null if compression was not accepted
+     */
+    public FrameDecompressor getDecompressor() {
+        return decompressor;
+    }
+
+    /**
+     * Make receive buffer bigger - called when whole buffer is filled by one incomplete frame
+     * @throws IOException - when frame is longer than MAX_FRAME_SIZE
+     */
+    private void growReceiveBuffer() throws IOException {
+        if (receiveBuffer.capacity() >= MAX_FRAME_SIZE)
+            throw new IOException("Frame from server is longer than " + MAX_FRAME_SIZE + " bytes");
+        ByteBuffer biggerBuffer = ByteBuffer.allocateDirect(Math.min(receiveBuffer.capacity() * 2, MAX_FRAME_SIZE));
+        receiveBuffer.flip();
+        biggerBuffer.put(receiveBuffer);
+        receiveBuffer = biggerBuffer;
+    }
+}
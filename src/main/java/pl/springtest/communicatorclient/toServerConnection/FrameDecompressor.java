@@ -0,0 +1,86 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses data of compressed frames of one connection (see FrameCompression)
+ * Inflater is kept for whole connection - compressed frames refer to data of previous ones
+ * Used by reading thread only - close can be called by other thread, then next decompress fails
+ */
+public class FrameDecompressor {
+    private final Inflater inflater = new Inflater(true);
+    private ByteBuffer output = ByteBuffer.allocate(16 * 1024);
+    private boolean closed = false; // under lock of decompressor
+
+    // statistics
+    private long compressedBytes = 0;
+    private long plainBytes = 0;
+    private long decompressionNanos = 0;
+
+    /**
+     * @param dictionary - preset dictionary accepted by both sides, null if there is no dictionary
+     */
+    public FrameDecompressor(byte[] dictionary) {
+        if (dictionary != null)
+            inflater.setDictionary(dictionary);
+    }
+
+    /**
+     * Decompress data of one compressed frame
+     * @param compressed - buffer with compressed data
+     * @param start - index of first byte of data
+     * @param end - index after last byte of data
+     * @return frames of batch (position - first byte, limit - after last byte), buffer is valid until next call
+     * @throws IOException - when data is not valid, batch is bigger than FrameDecoder.MAX_FRAME_SIZE
+     *                       or decompressor is closed
+     */
+    public synchronized ByteBuffer decompress(ByteBuffer compressed, int start, int end) throws IOException {
+        if (closed)
+            throw new IOException("Connection is closed - compressed frame from server is not decoded");
+        long startTime = System.nanoTime();
+        ByteBuffer input = compressed.duplicate();
+        input.limit(end).position(start);
+        inflater.setInput(input);
+        output.clear();
+        try {
+            while (true) {
+                inflater.inflate(output);
+                if (output.hasRemaining())
+                    break; // all data of batch is decompressed
+                if (output.capacity() >= FrameDecoder.MAX_FRAME_SIZE)
+                    throw new IOException("Compressed frame from server is longer than " + FrameDecoder.MAX_FRAME_SIZE + " bytes");
+                ByteBuffer biggerOutput = ByteBuffer.allocate(output.capacity() * 2);
+                output.flip();
+                biggerOutput.put(output);
+                output = biggerOutput;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed frame from server is not valid: " + e.getMessage());
+        }
+        output.flip();
+
+        decompressionNanos += System.nanoTime() - startTime;
+        compressedBytes += end - start;
+        plainBytes += output.remaining();
+        return output;
+    }
+
+    /**
+     * Free native memory of inflater - decompressor can not be used later
+     */
+    public synchronized void close() {
+        closed = true;
+        inflater.end();
+    }
+
+    /**
+     * @return text with compression ratio and CPU cost, eg. for log
+     */
+    public String getSummary() {
+        return String.format("decompressed %d B -> %d B (ratio %.2f), %.1f ms in total",
+                compressedBytes, plainBytes, compressedBytes == 0 ? 0.0 : (double) plainBytes / compressedBytes, decompressionNanos / 1e6);
+    }
+}
@@ -0,0 +1,64 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import pl.springtest.communicatorclient.messages.MessageHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Console commands which change groups of connection - they are not sent to server as messages:
+ * - /join <group> - join group and make it active, typed messages are sent to active group
+ * - /leave <group> - leave group (login group can not be left)
+ * - /group - show groups, /group <group> - make joined group active
+ */
+public abstract class GroupCommand {
+    public static final String JOIN = "/join";
+    public static final String LEAVE = "/leave";
+    public static final String GROUP = "/group";
+
+    /**
+     * @param line - group command typed by user
+     * @param clientSocket - connection to server
+     * @param messageHandler - keeps active group
+     * @return lines to show in console
+     */
+    public static List<String> execute(String line, ClientSocketHandler clientSocket, MessageHandler messageHandler) {
+        List<String> lines = new ArrayList<String>();
+        String[] arguments = line.trim().split("\\s+");
+        GroupRegistry groupRegistry = clientSocket.getGroupRegistry();
+        if (arguments.length > 2 || (arguments.length == 1 && !arguments[0].equals(GROUP))) {
+            lines.add("Usage: " + JOIN + " <group> | " + LEAVE + " <group> | " + GROUP + " [group]");
+        } else if (arguments[0].equals(JOIN)) {
+            int group = clientSocket.joinGroup(arguments[1]);
+            if (group >= 0)
+                messageHandler.setActiveGroup(group);
+            lines.add("Group " + arguments[1] + " is " + (group < 0 ? "not joined" : "active"));
+        } else if (arguments[0].equals(LEAVE)) {
+            int group = groupRegistry.numberOf(arguments[1]);
+            if (group == GroupRegistry.LOGIN_GROUP) {
+                lines.add("Login group can not be left");
+            } else if (group < 0 || !clientSocket.leaveGroup(group)) {
+                lines.add("Group " + arguments[1] + " is not joined");
+            } else {
+                if (messageHandler.getActiveGroup() == group)
+                    messageHandler.setActiveGroup(GroupRegistry.LOGIN_GROUP);
+                lines.add("Group " + arguments[1] + " was left");
+            }
+        } else if (arguments.length == 2) {
+            int group = groupRegistry.numberOf(arguments[1]);
+            if (group < 0 || groupRegistry.stateOf(group) == GroupRegistry.State.LEFT) {
+                lines.add("Group " + arguments[1] + " is not joined - use " + JOIN);
+            } else {
+                messageHandler.setActiveGroup(group);
+                lines.add("Group " + arguments[1] + " is active");
+            }
+        } else {
+            for (int group = 0; group < groupRegistry.size(); group++) {
+                if (groupRegistry.stateOf(group) != GroupRegistry.State.LEFT)
+                    lines.add((group == messageHandler.getActiveGroup() ? "* " : "  ") + groupRegistry.nameOf(group)
+                            + " - " + groupRegistry.stateOf(group));
+            }
+        }
+        return lines;
+    }
+}
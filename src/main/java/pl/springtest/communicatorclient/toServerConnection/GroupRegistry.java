@@ -0,0 +1,93 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import java.util.Arrays;
+
+/**
+ * Groups of connection interned to small numbers - number is index of group in arrays (headers of MessageEncoder,
+ * queues of CommunicatorClient and MessageHandler), so routing of message compares few strings and never hashes GROUP_ID
+ * Number 0 is group of LOGIN (group ID of client) - it is always joined
+ * Group is JOINING from sent JOIN until server answers it; only JOINED group gets messages; number of left group
+ * is kept for next join
+ * Thread safe - arrays are copied on change (groups change rarely, they are read for every message)
+ */
+public class GroupRegistry {
+    public static final int LOGIN_GROUP = 0;
+
+    public enum State {
+        LEFT,
+        JOINING,
+        JOINED
+    }
+
+    private volatile String[] names;
+    private volatile State[] states;
+
+    /**
+     * @param loginGroupId - group of LOGIN
+     */
+    public GroupRegistry(String loginGroupId) {
+        names = new String[]{loginGroupId};
+        states = new State[]{State.JOINED};
+    }
+
+    /**
+     * @param groupId - group ID
+     * @return number of group - new group gets next number (state LEFT)
+     */
+    public synchronized int intern(String groupId) {
+        int number = numberOf(groupId);
+        if (number != -1)
+            return number;
+        State[] newStates = Arrays.copyOf(states, states.length + 1);
+        newStates[newStates.length - 1] = State.LEFT;
+        states = newStates; // before names - reader never sees group without state
+        String[] newNames = Arrays.copyOf(names, names.length + 1);
+        newNames[newNames.length - 1] = groupId;
+        names = newNames;
+        return newNames.length - 1;
+    }
+
+    /**
+     * @param groupId - group ID (eg. slice of received frame - it is not copied)
+     * @return number of group, -1 if group was never joined
+     */
+    public int numberOf(CharSequence groupId) {
+        String[] groupNames = names;
+        for (int number = 0; number < groupNames.length; number++)
+            if (groupNames[number].contentEquals(groupId))
+                return number;
+        return -1;
+    }
+
+    public String nameOf(int number) {
+        return names[number];
+    }
+
+    public State stateOf(int number) {
+        return states[number];
+    }
+
+    public boolean isJoined(int number) {
+        State[] groupStates = states;
+        return number >= 0 && number < groupStates.length && groupStates[number] == State.JOINED;
+    }
+
+    /**
+     * @param number - number of group other than LOGIN_GROUP
+     * @param state - new state of group
+     */
+    public synchronized void setState(int number, State state) {
+        if (number == LOGIN_GROUP)
+            return;
+        State[] newStates = states.clone();
+        newStates[number] = state;
+        states = newStates;
+    }
+
+    /**
+     * @return number of groups (also left ones) - numbers are from 0 to size - 1
+     */
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,196 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+import pl.springtest.communicatorclient.workers.TimerWheel;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Heartbeat of connection - frame with EXTRA HEARTBEAT and number of beat is sent every interval, server sends it back
+ * Beats are scheduled by shared TimerWheel; wheel does not write to socket - it only wakes up sender, which sends due beat
+ * Peer is declared dead when maxMissedBeats beats in a row were not answered; it is checked only after first answer
+ * on the connection, so server which does not answer heartbeats never causes reconnects
+ * Beat which was due but not sent by next interval is missed too - sender is stuck in write to peer which does not read
+ * Round trip times of answered beats are kept in RttStatistics
+ */
+public class Heartbeat {
+    private static final int SENT_TIMES_SIZE = 16; // answers of so many last beats are measured
+
+    private final long intervalMillis;
+    private final int maxMissedBeats;
+    private final TimerWheel timerWheel;
+    private final RttStatistics rttStatistics = new RttStatistics();
+    private final long[] sentNanos = new long[SENT_TIMES_SIZE];
+    private final ReentrantLock lock = new ReentrantLock();
+    private Runnable beatDue;
+    private Runnable peerDead;
+    private TimerWheel.Timeout nextTick = null;
+    private long sentBeats = 0; // number of last sent beat
+    private long answeredBeat = 0; // number of last answered beat
+    private boolean beatPending = false;
+    private boolean answering = false; // server answered at least one beat of connection
+    private int missedBeats = 0;
+    private long deadPeers = 0;
+    private boolean stopped = false;
+
+    /**
+     * @param intervalMillis - time between beats
+     * @param maxMissedBeats - number of not answered beats in a row after which peer is dead
+     * @param timerWheel - schedules beats
+     */
+    public Heartbeat(long intervalMillis, int maxMissedBeats, TimerWheel timerWheel) {
+        this.intervalMillis = intervalMillis;
+        this.maxMissedBeats = Math.max(1, maxMissedBeats);
+        this.timerWheel = timerWheel;
+    }
+
+    /**
+     * Start beats
+     * @param beatDue - wakes up sender which calls nextBeat (run on wheel thread - it must not block)
+     * @param peerDead - breaks connection (run on wheel thread - it must not block)
+     */
+    public void start(Runnable beatDue, Runnable peerDead) {
+        lock.lock();
+        try {
+            this.beatDue = beatDue;
+            this.peerDead = peerDead;
+            stopped = false;
+            nextTick = timerWheel.schedule(intervalMillis, this::tick);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One interval passed - check answer of last beat and ask for next one
+     */
+    private void tick() {
+        boolean dead = false;
+        lock.lock();
+        try {
+            if (stopped)
+                return;
+            if (answering && (answeredBeat < sentBeats || beatPending)) { // not answered or not even sent
+                missedBeats++;
+                if (missedBeats >= maxMissedBeats) {
+                    dead = true;
+                    deadPeers++;
+                    answering = false; // next connection has to answer again
+                    missedBeats = 0;
+                }
+            }
+            beatPending = !dead;
+            nextTick = timerWheel.schedule(intervalMillis, this::tick);
+        } finally {
+            lock.unlock();
+        }
+        if (dead)
+            peerDead.run();
+        else
+            beatDue.run();
+    }
+
+    /**
+     * Take beat which should be sent now
+     * @return message of heartbeat frame, null if no beat is due
+     */
+    public String nextBeat() {
+        lock.lock();
+        try {
+            if (!beatPending || stopped)
+                return null;
+            beatPending = false;
+            sentBeats++;
+            sentNanos[(int) (sentBeats % SENT_TIMES_SIZE)] = System.nanoTime();
+            return Long.toString(sentBeats);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Heartbeat frame came back from server
+     * @param message - message of heartbeat frame
+     * @param receivedNanos - System.nanoTime when frame was read from socket
+     */
+    public void answerReceived(String message, long receivedNanos) {
+        long beat;
+        try {
+            beat = Long.parseLong(message.trim());
+        } catch (NumberFormatException e) {
+            return; // not answer to this client
+        }
+        long rttNanos;
+        lock.lock();
+        try {
+            if (beat <= answeredBeat || beat > sentBeats || sentBeats - beat >= SENT_TIMES_SIZE)
+                return; // repeated, unknown or too old answer
+            answeredBeat = beat;
+            answering = true;
+            missedBeats = 0;
+            rttNanos = receivedNanos - sentNanos[(int) (beat % SENT_TIMES_SIZE)];
+        } finally {
+            lock.unlock();
+        }
+        rttStatistics.record(rttNanos);
+        if (ClientMetrics.ENABLED)
+            ClientMetrics.HEARTBEAT_RTT_NANOS.record(rttNanos);
+    }
+
+    /**
+     * Connection was established again or lost - beats sent to previous connection are not expected any more
+     * and peer is not declared dead until server answers on new connection
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            answeredBeat = sentBeats;
+            answering = false;
+            missedBeats = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop beats - connection is closed
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            stopped = true;
+            if (nextTick != null)
+                nextTick.cancel();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public RttStatistics getRttStatistics() {
+        return rttStatistics;
+    }
+
+    /**
+     * @return number of not answered beats in a row
+     */
+    public int getMissedBeats() {
+        lock.lock();
+        try {
+            return missedBeats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many times peer was declared dead
+     */
+    public long getDeadPeers() {
+        lock.lock();
+        try {
+            return deadPeers;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+/**
+ * Message from server delivered to user of client - immutable copy of ServerMessage (views of ServerMessage are reused
+ * by FrameDecoder), so it can be kept and passed to other threads
+ * Notice is message of client itself (eg. "Joined group", progress of received file) - it has no sender
+ */
+public class InboundMessage {
+    private final String clientName;
+    private final String groupId;
+    private final int group;
+    private final String message;
+    private final long receivedNanos;
+
+    /**
+     * @param clientName - sender, null for notice of client
+     * @param groupId - group ID from frame (eg. "BROADCAST" for messages of server to everyone)
+     * @param group - number of group in GroupRegistry (login group for unknown groups)
+     * @param message - text of message
+     * @param receivedNanos - System.nanoTime when message was read from socket
+     */
+    public InboundMessage(String clientName, String groupId, int group, String message, long receivedNanos) {
+        this.clientName = clientName;
+        this.groupId = groupId;
+        this.group = group;
+        this.message = message;
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * @param groupId - login group ID
+     * @param message - text shown to user
+     * @return notice of client in login group
+     */
+    public static InboundMessage notice(String groupId, String message) {
+        return new InboundMessage(null, groupId, GroupRegistry.LOGIN_GROUP, message, System.nanoTime());
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public int getGroup() {
+        return group;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    public boolean isNotice() {
+        return clientName == null;
+    }
+
+    /**
+     * @return text shown to user - clientName: message, messages of groups joined after login start with #groupId
+     */
+    public String toDisplayText() {
+        if (isNotice())
+            return message;
+        if (group == GroupRegistry.LOGIN_GROUP)
+            return clientName + ": " + message;
+        return "#" + groupId + " " + clientName + ": " + message;
+    }
+
+    @Override
+    public String toString() {
+        return toDisplayText();
+    }
+}
@@ -0,0 +1,367 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import pl.springtest.communicatorclient.info.AppInfo;
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encode messages to server to one line format (all expect MESSAGE ended by ";" - MESSAGE ends by "\n"):
+ * "VERSION_INFO:" + version (eg. "2.1.3;")
+ * "CLIENT_NAME:" + name (eq. "Adam;")
+ * "GROUP_ID:" + groupId (eq. "Group123;"
+ * "EXTRA:" + extra info to server (eg. "SHUTDOWN;" - client is shutting down)
+ * "MESSAGE:" + message
+ * EXTRA list:
+ * - SHUTDOWN - client is shutting down (since ver. 1.0.0)
+ * - NEW_CONNECTION - client send information about new connection to server (since ver. 1.0.0)
+ * - FRAMING - server accepted binary framing offered in "LOGIN BINARY/1" (only from server, see BinaryFraming)
+ * - COMPRESSION - server accepted compression offered in LOGIN (only from server, see FrameCompression)
+ * - HEARTBEAT - heartbeat sent back by server (see Heartbeat)
+ * - FILE_START, FILE_CHUNK, FILE_END - file sent to group (only binary framing, see FileSender)
+ * - JOIN, LEAVE - client joins or leaves group from GROUP_ID, server answers JOIN with binary ID of group (see GroupRegistry)
+ * GROUP_ID can be "BROADCAST" - sending to everyone, but message should be from server, not client
+ * VERSION_INFO, CLIENT_NAME and GROUP_ID do not change during connection - they are encoded to UTF-8 only once
+ * Frames can be sent to many groups - group is number from GroupRegistry, 0 is group of this connection
+ * (other groups are added by defineGroup)
+ * After useBinaryFraming frames are encoded in binary format (see BinaryFraming) - frames to group without binary ID
+ * (JOIN is not answered yet) are still text frames
+ * After useCompression written batches are compressed (see FrameCompression)
+ * Not thread safe - callers have to synchronize sending
+ */
+public class MessageEncoder {
+    public static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final byte[][] EXTRA_FIELDS = new byte[ExtraInfo.values().length][];
+    private static final byte END_OF_FRAME = '\n';
+
+    static {
+        for (ExtraInfo extraInfo : ExtraInfo.values())
+            EXTRA_FIELDS[extraInfo.ordinal()] = ("EXTRA:" + extraField(extraInfo) + ";MESSAGE:").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private final String clientName;
+    private byte[][] headers; // VERSION_INFO, CLIENT_NAME and GROUP_ID of every group
+    private final CharsetEncoder utf8Encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private int clientNameId = -1; // set when server accepts binary framing
+    private byte[][][] binaryHeaders = null; // type byte and IDs for every group and EXTRA - set when server accepts binary framing
+    private FrameCompressor compressor = null; // set when server accepts compression
+    private ByteBuffer sendBuffer = null; // allocated by first write - encode into external buffer does not need it
+
+    /**
+     * Encode header fields of this connection
+     * @param clientName - client name which is added to messages data
+     * @param groupId - communicator group ID which is added to messages data
+     */
+    public MessageEncoder(String clientName, String groupId) {
+        this.clientName = clientName;
+        headers = new byte[1][];
+        defineGroup(GroupRegistry.LOGIN_GROUP, groupId);
+    }
+
+    /**
+     * Encode header fields of frames to group
+     * @param group - number of group
+     * @param groupId - group ID
+     */
+    public void defineGroup(int group, String groupId) {
+        if (group >= headers.length)
+            headers = Arrays.copyOf(headers, group + 1);
+        headers[group] = ("VERSION_INFO:" + AppInfo.VERSION_INFO + ";"
+                + "CLIENT_NAME:" + clientName + ";"
+                + "GROUP_ID:" + groupId + ";").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Text of EXTRA field for extra info
+     * @param extraInfo - extra info of message
+     * @return value of EXTRA field (without "EXTRA:" and ";")
+     */
+    private static String extraField(ExtraInfo extraInfo) {
+        if (extraInfo == ExtraInfo.NO_INFO)
+            return "";
+        return extraInfo.name();
+    }
+
+    /**
+     * Switch to binary framing - server accepted it and gave IDs of this connection
+     * @param clientNameId - ID of client name
+     * @param groupId - ID of group
+     */
+    public void useBinaryFraming(int clientNameId, int groupId) {
+        this.clientNameId = clientNameId;
+        binaryHeaders = new byte[headers.length][][];
+        useGroupId(GroupRegistry.LOGIN_GROUP, groupId);
+    }
+
+    /**
+     * Encode next frames to group in binary format - server answered JOIN with binary ID of group
+     * Ignored when binary framing is not used
+     * @param group - number of group
+     * @param groupId - binary ID of group
+     */
+    public void useGroupId(int group, int groupId) {
+        if (binaryHeaders == null)
+            return;
+        if (group >= binaryHeaders.length)
+            binaryHeaders = Arrays.copyOf(binaryHeaders, group + 1);
+        byte[][] groupHeaders = new byte[ExtraInfo.values().length][];
+        ByteBuffer header = ByteBuffer.allocate(1 + 2 * BinaryFraming.MAX_VARINT_SIZE);
+        for (ExtraInfo extraInfo : ExtraInfo.values()) {
+            header.clear();
+            header.put((byte) (BinaryFraming.FRAME_FLAG | extraInfo.getCode()));
+            BinaryFraming.putVarint(header, clientNameId);
+            BinaryFraming.putVarint(header, groupId);
+            groupHeaders[extraInfo.ordinal()] = Arrays.copyOf(header.array(), header.position());
+        }
+        binaryHeaders[group] = groupHeaders;
+    }
+
+    /**
+     * @param group - number of group
+     * @return binary headers of group for every EXTRA, null if frames to group are text frames
+     */
+    private byte[][] binaryHeadersOf(int group) {
+        return (binaryHeaders != null && group < binaryHeaders.length) ? binaryHeaders[group] : null;
+    }
+
+    public boolean isBinaryFraming() {
+        return binaryHeaders != null;
+    }
+
+    /**
+     * Compress next written batches - server accepted compression
+     * @param compressor - compressor of this connection
+     */
+    public void useCompression(FrameCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * @return compressor of this connection, null if compression is not used
+     */
+    public FrameCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * Prepare encoded frames of one batch for writing - compress them if compression is used
+     * @param frames - encoded frames (position - first byte, limit - after last byte)
+     * @return buffer to write - frames itself or compressed frame (buffer of compressor - valid until next call)
+     */
+    public ByteBuffer compressBatch(ByteBuffer frames) {
+        return compressor != null ? compressor.compressBatch(frames) : frames;
+    }
+
+    /**
+     * Encode one frame into buffer
+     * @param message - text message to server
+     * @param extraInfo - information about extra info to add (eg. SHUTDOWN)
+     * @param target - buffer to write frame to
+     * @return true if whole frame was written; false if there is not enough space (target is not changed)
+     */
+    public boolean encode(CharSequence message, ExtraInfo extraInfo, ByteBuffer target) {
+        return encode(message, extraInfo, GroupRegistry.LOGIN_GROUP, target);
+    }
+
+    /**
+     * Encode one frame to group into buffer
+     * @param message - text message to server
+     * @param extraInfo - information about extra info to add (eg. SHUTDOWN)
+     * @param group - number of group defined by defineGroup
+     * @param target - buffer to write frame to
+     * @return true if whole frame was written; false if there is not enough space (target is not changed)
+     */
+    public boolean encode(CharSequence message, ExtraInfo extraInfo, int group, ByteBuffer target) {
+        byte[][] groupBinaryHeaders = binaryHeadersOf(group);
+        if (groupBinaryHeaders != null)
+            return encodeBinary(message, groupBinaryHeaders[extraInfo.ordinal()], target);
+        byte[] header = headers[group];
+        byte[] extraField = EXTRA_FIELDS[extraInfo.ordinal()];
+        int frameStart = target.position();
+
+        if (target.remaining() < header.length + extraField.length + 1)
+            return false;
+        target.put(header).put(extraField);
+
+        utf8Encoder.reset();
+        CoderResult result = utf8Encoder.encode(CharBuffer.wrap(message), target, true);
+        if (!result.isOverflow())
+            result = utf8Encoder.flush(target);
+        if (result.isOverflow() || !target.hasRemaining()) {
+            target.position(frameStart);
+            return false;
+        }
+        target.put(END_OF_FRAME);
+        return true;
+    }
+
+    /**
+     * Encode binary frame - length of payload is counted before encoding, so frame is written in one pass
+     */
+    private boolean encodeBinary(CharSequence message, byte[] binaryHeader, ByteBuffer target) {
+        int payloadLength = BinaryFraming.utf8Length(message);
+        if (target.remaining() < binaryHeader.length + BinaryFraming.varintSize(payloadLength) + payloadLength)
+            return false;
+        target.put(binaryHeader);
+        BinaryFraming.putVarint(target, payloadLength);
+        utf8Encoder.reset();
+        utf8Encoder.encode(CharBuffer.wrap(message), target, true);
+        utf8Encoder.flush(target);
+        return true;
+    }
+
+    /**
+     * Encode one frame and write it to channel
+     * @param message - text message to server
+     * @param extraInfo - information about extra info to add
+     * @param channel - channel connected to server (blocking mode)
+     * @throws IOException - when writing failed
+     */
+    public void write(CharSequence message, ExtraInfo extraInfo, WritableByteChannel channel) throws IOException {
+        write(message, extraInfo, GroupRegistry.LOGIN_GROUP, channel);
+    }
+
+    /**
+     * Encode one frame to group and write it to channel
+     * @param message - text message to server
+     * @param extraInfo - information about extra info to add
+     * @param group - number of group defined by defineGroup
+     * @param channel - channel connected to server (blocking mode)
+     * @throws IOException - when writing failed
+     */
+    public void write(CharSequence message, ExtraInfo extraInfo, int group, WritableByteChannel channel) throws IOException {
+        long encodeStart = ClientMetrics.ENABLED ? System.nanoTime() : 0;
+        if (sendBuffer == null)
+            sendBuffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+        sendBuffer.clear();
+        while (!encode(message, extraInfo, group, sendBuffer))
+            sendBuffer = ByteBuffer.allocateDirect(sendBuffer.capacity() * 2);
+        writeSendBuffer(channel, 1, encodeStart);
+    }
+
+    /**
+     * Encode many frames into one buffer and write them together - one write per maxBatchBytes, not per frame
+     * Frame bigger than maxBatchBytes is written alone
+     * @param messages - text messages to server
+     * @param extraInfo - information about extra info to add to every message
+     * @param channel - channel connected to server (blocking mode)
+     * @param maxBatchBytes - maximum number of bytes written by one write
+     * @throws IOException - when writing failed
+     */
+    public void writeBatch(List<? extends CharSequence> messages, ExtraInfo extraInfo, WritableByteChannel channel, int maxBatchBytes) throws IOException {
+        writeBatch(messages, extraInfo, GroupRegistry.LOGIN_GROUP, channel, maxBatchBytes);
+    }
+
+    /**
+     * Encode many frames to group into one buffer and write them together (see writeBatch)
+     * @param messages - text messages to server
+     * @param extraInfo - information about extra info to add to every message
+     * @param group - number of group defined by defineGroup
+     * @param channel - channel connected to server (blocking mode)
+     * @param maxBatchBytes - maximum number of bytes written by one write
+     * @throws IOException - when writing failed
+     */
+    public void writeBatch(List<? extends CharSequence> messages, ExtraInfo extraInfo, int group, WritableByteChannel channel,
+                           int maxBatchBytes) throws IOException {
+        if (sendBuffer == null || sendBuffer.capacity() < maxBatchBytes)
+            sendBuffer = ByteBuffer.allocateDirect(maxBatchBytes);
+        sendBuffer.clear().limit(maxBatchBytes);
+        long encodeStart = ClientMetrics.ENABLED ? System.nanoTime() : 0;
+        int batchMessages = 0;
+
+        for (CharSequence message : messages) {
+            if (encode(message, extraInfo, group, sendBuffer)) {
+                batchMessages++;
+                continue;
+            }
+            // batch is full - send it and start new one
+            if (sendBuffer.position() > 0) {
+                writeSendBuffer(channel, batchMessages, encodeStart);
+                sendBuffer.clear().limit(maxBatchBytes);
+                encodeStart = ClientMetrics.ENABLED ? System.nanoTime() : 0;
+                batchMessages = 0;
+                if (encode(message, extraInfo, group, sendBuffer)) {
+                    batchMessages++;
+                    continue;
+                }
+            }
+            write(message, extraInfo, group, channel);
+            sendBuffer.clear().limit(maxBatchBytes);
+            encodeStart = ClientMetrics.ENABLED ? System.nanoTime() : 0;
+        }
+        if (sendBuffer.position() > 0)
+            writeSendBuffer(channel, batchMessages, encodeStart);
+    }
+
+    /**
+     * Write encoded frames of send buffer (compressed if compression is used)
+     * @param channel - channel connected to server (blocking mode)
+     * @param messages - number of frames in buffer (for metrics)
+     * @param encodeStart - System.nanoTime when encoding of frames started (for metrics)
+     * @throws IOException - when writing failed
+     */
+    private void writeSendBuffer(WritableByteChannel channel, int messages, long encodeStart) throws IOException {
+        sendBuffer.flip();
+        ByteBuffer batch = compressBatch(sendBuffer);
+        long encodeNanos = ClientMetrics.ENABLED ? System.nanoTime() - encodeStart : 0;
+        int bytes = batch.remaining();
+        while (batch.hasRemaining())
+            channel.write(batch);
+        if (ClientMetrics.ENABLED)
+            ClientMetrics.recordSent(messages, bytes, encodeNanos);
+    }
+
+    /**
+     * Write binary frame with payload made of prefix and part of file - bytes of file go from page cache to socket
+     * by FileChannel.transferTo, they are not copied to Java memory (and not compressed)
+     * @param extraInfo - information about extra info of frame
+     * @param group - number of group with binary ID (see useGroupId)
+     * @param prefix - first bytes of payload (position to limit)
+     * @param file - file, null if payload is only prefix
+     * @param position - position of first byte of file in payload
+     * @param length - number of bytes of file in payload
+     * @param channel - channel connected to server (blocking mode)
+     * @throws IOException - when writing failed, file is shorter or binary framing is not used
+     */
+    public void writeFileFrame(ExtraInfo extraInfo, int group, ByteBuffer prefix, FileChannel file, long position, int length,
+                               WritableByteChannel channel) throws IOException {
+        byte[][] groupBinaryHeaders = binaryHeadersOf(group);
+        if (groupBinaryHeaders == null)
+            throw new IOException("Server did not accept binary framing - file can not be sent");
+        long encodeStart = ClientMetrics.ENABLED ? System.nanoTime() : 0;
+        byte[] binaryHeader = groupBinaryHeaders[extraInfo.ordinal()];
+        int frameHeaderSize = binaryHeader.length + BinaryFraming.MAX_VARINT_SIZE + prefix.remaining();
+        if (sendBuffer == null || sendBuffer.capacity() < frameHeaderSize)
+            sendBuffer = ByteBuffer.allocateDirect(Math.max(INITIAL_BUFFER_SIZE, frameHeaderSize));
+        sendBuffer.clear();
+        sendBuffer.put(binaryHeader);
+        BinaryFraming.putVarint(sendBuffer, prefix.remaining() + length);
+        sendBuffer.put(prefix);
+        sendBuffer.flip();
+        int bytes = sendBuffer.remaining() + length;
+        while (sendBuffer.hasRemaining())
+            channel.write(sendBuffer);
+
+        long transferred = 0;
+        while (transferred < length) {
+            long count = file.transferTo(position + transferred, length - transferred, channel);
+            if (count <= 0)
+                throw new IOException("File is shorter than expected - it was changed during sending");
+            transferred += count;
+        }
+        if (ClientMetrics.ENABLED)
+            ClientMetrics.recordSent(1, bytes, System.nanoTime() - encodeStart);
+    }
+}
@@ -0,0 +1,229 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only spool of messages to server on memory-mapped file - messages wait in it until they are written to socket,
+ * so they survive lost connection and crash of application (mapped pages are kept by system when process dies)
+ * File:
+ * - header: magic, position of first not sent record
+ * - records: length of message in bytes + 1 (int), UTF-8 message; record with length 0 ends records
+ * Record is published by writing its length as last step, so record torn by crash is never read
+ * When all records are sent, spool starts again from beginning of file; when file is full, new messages are rejected
+ * Thread safe
+ */
+public class OutboundSpool {
+    public static final int MAGIC = 0x43535031; // "CSP1"
+    public static final int HEADER_SIZE = 16;
+    private static final int SENT_POSITION_OFFSET = 8;
+    private static final int LENGTH_SIZE = 4;
+
+    private final FileChannel fileChannel;
+    private final FileLock fileLock;
+    private final MappedByteBuffer spool;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int sentPosition;
+    private int endPosition;
+    private int pendingMessages = 0;
+    private boolean closed = false;
+
+    /**
+     * Open spool file - records not sent by previous run are kept
+     * @param path - spool file, created if it does not exist
+     * @param capacity - size of file in bytes (bigger existing file keeps its size)
+     * @throws IOException - when file can not be mapped or it is used by other process
+     */
+    public OutboundSpool(Path path, int capacity) throws IOException {
+        fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            fileLock = fileChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileChannel.close();
+            throw new IOException("Spool " + path + " is already used", e);
+        }
+        if (fileLock == null) {
+            fileChannel.close();
+            throw new IOException("Spool " + path + " is used by other process");
+        }
+        int size = (int) Math.max(Math.max(capacity, HEADER_SIZE + 2 * LENGTH_SIZE), Math.min(fileChannel.size(), Integer.MAX_VALUE));
+        spool = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        recover();
+    }
+
+    /**
+     * Find end of records and first not sent record - new or foreign file is cleared
+     */
+    private void recover() {
+        if (spool.getInt(0) != MAGIC) {
+            spool.putInt(HEADER_SIZE, 0);
+            spool.putLong(SENT_POSITION_OFFSET, HEADER_SIZE);
+            spool.putInt(0, MAGIC);
+        }
+        long savedSentPosition = spool.getLong(SENT_POSITION_OFFSET);
+        sentPosition = HEADER_SIZE;
+        int position = HEADER_SIZE;
+        int records = 0;
+        while (position + LENGTH_SIZE <= spool.capacity()) {
+            int length = spool.getInt(position) - 1;
+            if (length < 0 || length > spool.capacity() - position - LENGTH_SIZE)
+                break;
+            if (position == savedSentPosition) {
+                sentPosition = position;
+                records = 0;
+            }
+            position += LENGTH_SIZE + length;
+            records++;
+        }
+        endPosition = position;
+        if (savedSentPosition >= endPosition) // everything was sent
+            sentPosition = endPosition;
+        pendingMessages = (sentPosition == endPosition) ? 0 : records;
+        if (pendingMessages == 0)
+            reset();
+    }
+
+    /**
+     * Add messages at end of spool
+     * @param messages - messages to add, in order
+     * @return number of added messages - the first ones; smaller than size of list when spool is full or closed
+     */
+    public int append(List<String> messages) {
+        lock.lock();
+        try {
+            int added = 0;
+            for (String message : messages) {
+                if (closed || !appendRecord(message.getBytes(StandardCharsets.UTF_8)))
+                    break;
+                added++;
+            }
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean appendRecord(byte[] message) {
+        int recordEnd = endPosition + LENGTH_SIZE + message.length;
+        if (recordEnd > spool.capacity() - LENGTH_SIZE) // end of records has to fit too
+            return false;
+        spool.position(endPosition + LENGTH_SIZE);
+        spool.put(message);
+        spool.putInt(recordEnd, 0);
+        spool.putInt(endPosition, message.length + 1); // publishes record
+        endPosition = recordEnd;
+        pendingMessages++;
+        return true;
+    }
+
+    /**
+     * Read not sent messages from beginning of spool - they stay in spool until markSent
+     * @param target - list to add messages to
+     * @param maxBytes - maximum size of messages in bytes (at least one message is read)
+     * @return position to pass to markSent after messages were sent
+     */
+    public int readBatch(List<String> target, int maxBytes) {
+        lock.lock();
+        try {
+            int position = sentPosition;
+            int batchBytes = 0;
+            while (position < endPosition) {
+                int length = spool.getInt(position) - 1;
+                if (batchBytes > 0 && batchBytes + length > maxBytes)
+                    break;
+                byte[] message = new byte[length];
+                spool.position(position + LENGTH_SIZE);
+                spool.get(message);
+                target.add(new String(message, StandardCharsets.UTF_8));
+                batchBytes += length;
+                position += LENGTH_SIZE + length;
+            }
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove sent messages - spool starts from beginning of file when all messages were sent
+     * @param position - position returned by readBatch
+     */
+    public void markSent(int position) {
+        lock.lock();
+        try {
+            if (position <= sentPosition || position > endPosition)
+                return;
+            for (int i = sentPosition; i < position; i += LENGTH_SIZE + spool.getInt(i) - 1)
+                pendingMessages--;
+            sentPosition = position;
+            if (sentPosition == endPosition)
+                reset();
+            else
+                spool.putLong(SENT_POSITION_OFFSET, sentPosition);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start records from beginning of file - end of records is written before header points to it
+     */
+    private void reset() {
+        spool.putInt(HEADER_SIZE, 0);
+        spool.putLong(SENT_POSITION_OFFSET, HEADER_SIZE);
+        sentPosition = HEADER_SIZE;
+        endPosition = HEADER_SIZE;
+        pendingMessages = 0;
+    }
+
+    /**
+     * @return true if all messages were sent
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return pendingMessages == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of messages waiting for sending
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pendingMessages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write mapped pages to disk and release file - next calls of append do not add messages
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            spool.force();
+            fileLock.release();
+            fileChannel.close();
+        } catch (IOException e) {
+            ; // pages are written by system anyway
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import pl.springtest.communicatorclient.statement.ClientStatement;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reconnects after lost connection - attempts are delayed by exponential backoff with jitter:
+ * limit of delay is doubled by every attempt (from initial to maximum delay), real delay is random between half of limit and limit,
+ * so many clients dropped at once by server do not come back at the same moment
+ */
+public class ReconnectSupervisor {
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private volatile long reconnects = 0; // written by reading thread, read by metrics
+
+    /**
+     * One attempt to connect
+     */
+    public interface Connector {
+        /**
+         * @throws IOException - when connection can not be established
+         */
+        void connect() throws IOException;
+    }
+
+    /**
+     * @param maxAttempts - number of attempts after lost connection, 0 - never reconnect
+     * @param initialDelayMillis - limit of delay before first attempt
+     * @param maxDelayMillis - maximum limit of delay
+     */
+    public ReconnectSupervisor(int maxAttempts, long initialDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = Math.max(1, initialDelayMillis);
+        this.maxDelayMillis = Math.max(this.initialDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * Try to connect until success, limit of attempts or cancel
+     * @param connector - connects to server
+     * @param cancelled - true when connection should not be established any more (eg. application is closing)
+     * @return true if connected
+     */
+    public boolean reconnect(Connector connector, BooleanSupplier cancelled) {
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            long delayMillis = backoffMillis(attempt);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delayMillis));
+            if (cancelled.getAsBoolean())
+                return false;
+            try {
+                connector.connect();
+                reconnects++;
+                ClientStatement.Info("Reconnected to server after " + (attempt + 1) + " attempts (reconnects: " + reconnects + ")");
+                return true;
+            } catch (IOException e) {
+                ClientStatement.Info("Reconnect attempt " + (attempt + 1) + " of " + maxAttempts + " failed after "
+                        + delayMillis + " ms: " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt - number of attempt from 0
+     * @return delay before attempt in milliseconds
+     */
+    public long backoffMillis(int attempt) {
+        long limit = initialDelayMillis << Math.min(attempt, 30);
+        if (limit <= 0 || limit > maxDelayMillis)
+            limit = maxDelayMillis;
+        return limit / 2 + ThreadLocalRandom.current().nextLong(limit / 2 + 1);
+    }
+
+    /**
+     * @return true if connection is established again after it was lost
+     */
+    public boolean isEnabled() {
+        return maxAttempts > 0;
+    }
+
+    /**
+     * @return number of successful reconnects
+     */
+    public long getReconnects() {
+        return reconnects;
+    }
+}
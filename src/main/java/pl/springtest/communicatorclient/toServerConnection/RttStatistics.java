@@ -0,0 +1,76 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip times measured by heartbeats - last, minimum, maximum and rolling average with variation
+ * Rolling values are computed like smoothed RTT of TCP (RFC 6298): average += (sample - average) / 8,
+ * variation += (|sample - average| - variation) / 4
+ * Times are in nanoseconds
+ * Thread safe
+ */
+public class RttStatistics {
+    private long samples = 0;
+    private long lastNanos = 0;
+    private long minNanos = 0;
+    private long maxNanos = 0;
+    private long smoothedNanos = 0;
+    private long variationNanos = 0;
+
+    /**
+     * @param rttNanos - measured round trip time
+     */
+    public synchronized void record(long rttNanos) {
+        if (samples == 0) {
+            smoothedNanos = rttNanos;
+            variationNanos = rttNanos / 2;
+            minNanos = rttNanos;
+            maxNanos = rttNanos;
+        } else {
+            variationNanos += (Math.abs(smoothedNanos - rttNanos) - variationNanos) / 4;
+            smoothedNanos += (rttNanos - smoothedNanos) / 8;
+            minNanos = Math.min(minNanos, rttNanos);
+            maxNanos = Math.max(maxNanos, rttNanos);
+        }
+        lastNanos = rttNanos;
+        samples++;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    public synchronized long getLastNanos() {
+        return lastNanos;
+    }
+
+    public synchronized long getMinNanos() {
+        return minNanos;
+    }
+
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public synchronized long getSmoothedNanos() {
+        return smoothedNanos;
+    }
+
+    public synchronized long getVariationNanos() {
+        return variationNanos;
+    }
+
+    /**
+     * @return eg. "RTT: 12 samples, last 0.31 ms, smoothed 0.35 ms (+/- 0.05 ms), min 0.28 ms, max 0.61 ms"
+     */
+    public synchronized String getSummary() {
+        if (samples == 0)
+            return "RTT: no samples";
+        return String.format("RTT: %d samples, last %.2f ms, smoothed %.2f ms (+/- %.2f ms), min %.2f ms, max %.2f ms",
+                samples, millis(lastNanos), millis(smoothedNanos), millis(variationNanos), millis(minNanos), millis(maxNanos));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,227 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+/**
+ * Message received from server - decoded from text or binary frame
+ * FrameDecoder reuses messages as views: fields are slices of decoded frame (CharSequence), valid until next read from server;
+ * copy makes message which can be kept longer
+ * Text frame is parsed in one pass and strictly: "VERSION_INFO:v;CLIENT_NAME:n;GROUP_ID:g;EXTRA:e;MESSAGE:m"
+ * - fields have to be in this order, version, client name and group ID can not be empty
+ * - value ends at ";" followed by name of next field, so client name or group ID can contain ";"
+ * - EXTRA is empty or name of ExtraInfo
+ * - message is the rest of frame - it can contain anything, it is never searched for fields
+ */
+public class ServerMessage {
+    private static final char[] VERSION_INFO_FIELD = "VERSION_INFO:".toCharArray();
+    private static final char[] CLIENT_NAME_FIELD = "CLIENT_NAME:".toCharArray();
+    private static final char[] GROUP_ID_FIELD = "GROUP_ID:".toCharArray();
+    private static final char[] EXTRA_FIELD = "EXTRA:".toCharArray();
+    private static final char[] MESSAGE_FIELD = "MESSAGE:".toCharArray();
+    private static final ExtraInfo[] EXTRA_INFOS = ExtraInfo.values();
+    private static final char[][] EXTRA_INFO_NAMES = new char[EXTRA_INFOS.length][];
+
+    static {
+        for (int i = 0; i < EXTRA_INFOS.length; i++)
+            EXTRA_INFO_NAMES[i] = (EXTRA_INFOS[i] == ExtraInfo.NO_INFO) ? new char[0] : EXTRA_INFOS[i].name().toCharArray();
+    }
+
+    private final CharSlice versionSlice = new CharSlice();
+    private final CharSlice clientNameSlice = new CharSlice();
+    private final CharSlice groupIdSlice = new CharSlice();
+    private final CharSlice extraSlice = new CharSlice();
+    private final CharSlice messageSlice = new CharSlice();
+    private CharSequence version;
+    private CharSequence clientName;
+    private CharSequence groupId;
+    private ExtraInfo extraInfo;
+    private CharSequence message;
+
+    public ServerMessage(String clientName, String groupId, ExtraInfo extraInfo, String message) {
+        this.version = "";
+        this.clientName = clientName;
+        this.groupId = groupId;
+        this.extraInfo = extraInfo;
+        this.message = message;
+    }
+
+    /**
+     * Empty message - view filled by parseTextFrame or setBinaryFrame
+     */
+    public ServerMessage() {
+        this("", "", ExtraInfo.NO_INFO, "");
+    }
+
+    /**
+     * Decode text frame to new message
+     * @param frame - full frame without "\n"
+     * @return decoded message, null if frame is malformed
+     */
+    public static ServerMessage fromTextFrame(String frame) {
+        char[] chars = frame.toCharArray();
+        ServerMessage serverMessage = new ServerMessage();
+        return serverMessage.parseTextFrame(chars, 0, chars.length) ? serverMessage : null;
+    }
+
+    /**
+     * Parse text frame in one pass - fields of this message become slices of chars (chars can not be changed while message is used)
+     * @param chars - decoded frame
+     * @param start - index of first char of frame
+     * @param end - index after last char of frame (without "\r\n")
+     * @return true if frame is valid; false if it is malformed (message is not valid then)
+     */
+    public boolean parseTextFrame(char[] chars, int start, int end) {
+        int position = start;
+        if (!fieldAt(chars, position, end, VERSION_INFO_FIELD))
+            return false;
+        position += VERSION_INFO_FIELD.length;
+
+        int valueEnd = valueEnd(chars, position, end, CLIENT_NAME_FIELD);
+        if (valueEnd <= position)
+            return false; // no next field or empty version
+        versionSlice.set(chars, position, valueEnd);
+        position = valueEnd + 1 + CLIENT_NAME_FIELD.length;
+
+        valueEnd = valueEnd(chars, position, end, GROUP_ID_FIELD);
+        if (valueEnd <= position)
+            return false;
+        clientNameSlice.set(chars, position, valueEnd);
+        position = valueEnd + 1 + GROUP_ID_FIELD.length;
+
+        valueEnd = valueEnd(chars, position, end, EXTRA_FIELD);
+        if (valueEnd <= position)
+            return false;
+        groupIdSlice.set(chars, position, valueEnd);
+        position = valueEnd + 1 + EXTRA_FIELD.length;
+
+        valueEnd = valueEnd(chars, position, end, MESSAGE_FIELD);
+        if (valueEnd < position)
+            return false; // EXTRA can be empty
+        extraSlice.set(chars, position, valueEnd);
+        ExtraInfo frameExtraInfo = extraInfo(extraSlice);
+        if (frameExtraInfo == null)
+            return false;
+        position = valueEnd + 1 + MESSAGE_FIELD.length;
+
+        messageSlice.set(chars, position, end);
+        version = versionSlice;
+        clientName = clientNameSlice;
+        groupId = groupIdSlice;
+        extraInfo = frameExtraInfo;
+        message = messageSlice;
+        return true;
+    }
+
+    /**
+     * Fill message from binary frame - names are known from definition frames
+     * @param clientName - name of sender
+     * @param groupId - group ID
+     * @param extraInfo - extra info from type of frame
+     * @param chars - decoded payload
+     * @param start - index of first char of message
+     * @param end - index after last char of message
+     */
+    void setBinaryFrame(String clientName, String groupId, ExtraInfo extraInfo, char[] chars, int start, int end) {
+        messageSlice.set(chars, start, end);
+        this.version = "";
+        this.clientName = clientName;
+        this.groupId = groupId;
+        this.extraInfo = extraInfo;
+        this.message = messageSlice;
+    }
+
+    /**
+     * @return true if field name starts at position
+     */
+    private static boolean fieldAt(char[] chars, int position, int end, char[] field) {
+        if (end - position < field.length)
+            return false;
+        for (int i = 0; i < field.length; i++)
+            if (chars[position + i] != field[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * @param from - index of first char of value
+     * @param nextField - name of field after value
+     * @return index of ";" before next field, -1 if there is no next field
+     */
+    private static int valueEnd(char[] chars, int from, int end, char[] nextField) {
+        for (int i = from; i < end; i++)
+            if (chars[i] == ';' && fieldAt(chars, i + 1, end, nextField))
+                return i;
+        return -1;
+    }
+
+    /**
+     * @param field - value of EXTRA field
+     * @return extra info with name (NO_INFO for empty field), null if name is unknown
+     */
+    private static ExtraInfo extraInfo(CharSlice field) {
+        for (int i = 0; i < EXTRA_INFOS.length; i++)
+            if (field.contentEquals(EXTRA_INFO_NAMES[i]))
+                return EXTRA_INFOS[i];
+        return null;
+    }
+
+    /**
+     * @return message with own copy of fields - it does not change when view is reused
+     */
+    public ServerMessage copy() {
+        ServerMessage copy = new ServerMessage(clientName.toString(), groupId.toString(), extraInfo, message.toString());
+        copy.version = version.toString();
+        return copy;
+    }
+
+    /**
+     * @return version of protocol from text frame, empty for binary frame
+     */
+    public CharSequence getVersion() {
+        return version;
+    }
+
+    public CharSequence getClientName() {
+        return clientName;
+    }
+
+    public CharSequence getGroupId() {
+        return groupId;
+    }
+
+    public ExtraInfo getExtraInfo() {
+        return extraInfo;
+    }
+
+    public CharSequence getMessage() {
+        return message;
+    }
+
+    /**
+     * @return true if it is information from server, that it is shutting down
+     */
+    public boolean isServerShuttingDown() {
+        return extraInfo == ExtraInfo.SHUTDOWN;
+    }
+
+    /**
+     * @return text shown to user - clientName: message
+     */
+    public String toDisplayText() {
+        StringBuilder displayText = new StringBuilder(clientName.length() + 2 + message.length());
+        append(displayText, clientName);
+        displayText.append(": ");
+        append(displayText, message);
+        return displayText.toString();
+    }
+
+    private static void append(StringBuilder builder, CharSequence text) {
+        if (text instanceof CharSlice)
+            ((CharSlice) text).appendTo(builder);
+        else
+            builder.append(text);
+    }
+
+    @Override
+    public String toString() {
+        return toDisplayText();
+    }
+}
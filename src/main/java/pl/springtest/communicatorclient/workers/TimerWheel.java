@@ -0,0 +1,153 @@
+package pl.springtest.communicatorclient.workers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel - one thread runs delayed tasks of all connections (eg. heartbeats)
+ * Wheel has wheelSize buckets, one bucket is handled every tick; task which is further than one turn of wheel
+ * waits in its bucket for given number of turns
+ * Scheduling and cancel do not block - new tasks are moved to buckets by wheel thread, cancelled tasks are skipped
+ * Tasks run on wheel thread, so they have to be short and must not block
+ */
+public class TimerWheel {
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    private static TimerWheel shared = null;
+
+    private final long tickNanos;
+    private final List<List<Timeout>> buckets = new ArrayList<List<Timeout>>();
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    private final Thread thread;
+    private final long startNanos;
+    private long tick = 0; // only wheel thread
+    private volatile boolean stopped = false;
+
+    /**
+     * Task scheduled in wheel
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private long remainingTurns;
+        private volatile boolean cancelled = false;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Task will not run - it is removed from wheel when its bucket is handled
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * @return wheel shared by all connections of application - started by first call
+     */
+    public static synchronized TimerWheel getShared() {
+        if (shared == null)
+            shared = new TimerWheel(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, "Thread - TimerWheel");
+        return shared;
+    }
+
+    /**
+     * Start wheel thread (daemon)
+     * @param tickMillis - time of one tick - accuracy of delays
+     * @param wheelSize - number of buckets
+     * @param threadName - name of wheel thread
+     */
+    public TimerWheel(long tickMillis, int wheelSize, String threadName) {
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        for (int i = 0; i < Math.max(1, wheelSize); i++)
+            buckets.add(new ArrayList<Timeout>());
+        startNanos = System.nanoTime();
+        thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param delayMillis - delay of task, rounded up to ticks
+     * @param task - task to run on wheel thread
+     * @return scheduled task - it can be cancelled
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        long elapsedTicks = (System.nanoTime() - startNanos) / tickNanos;
+        long delayTicks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delayMillis) + tickNanos - 1) / tickNanos);
+        Timeout timeout = new Timeout(task, elapsedTicks + delayTicks);
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop wheel thread - scheduled tasks do not run
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        while (!stopped) {
+            long waitNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+                continue; // woken up early or stopped
+            }
+            tick++;
+            moveNewTimeouts();
+            runExpired(buckets.get((int) (tick % buckets.size())));
+        }
+    }
+
+    private void moveNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.cancelled)
+                continue;
+            long deadlineTick = Math.max(timeout.deadlineTick, tick); // deadline passed while it was new - it runs now
+            timeout.remainingTurns = (deadlineTick - tick) / buckets.size();
+            buckets.get((int) (deadlineTick % buckets.size())).add(timeout);
+        }
+    }
+
+    private void runExpired(List<Timeout> bucket) {
+        Iterator<Timeout> timeouts = bucket.iterator();
+        List<Timeout> expired = null;
+        while (timeouts.hasNext()) {
+            Timeout timeout = timeouts.next();
+            if (timeout.cancelled) {
+                timeouts.remove();
+            } else if (timeout.remainingTurns > 0) {
+                timeout.remainingTurns--;
+            } else {
+                timeouts.remove();
+                if (expired == null)
+                    expired = new ArrayList<Timeout>();
+                expired.add(timeout);
+            }
+        }
+        if (expired == null)
+            return;
+        for (Timeout timeout : expired) {
+            try {
+                timeout.task.run(); // task can schedule next task
+            } catch (RuntimeException e) {
+                Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+            }
+        }
+    }
+}
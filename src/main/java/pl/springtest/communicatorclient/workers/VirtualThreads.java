@@ -0,0 +1,21 @@
+package pl.springtest.communicatorclient.workers;
+
+/**
+ * Virtual threads - not supported by this Java version
+ * Java 21 version of this class is in src/main/java21 (META-INF/versions/21 of multi-release jar)
+ */
+public abstract class VirtualThreads {
+    /**
+     * @return true if workers can be started in virtual threads
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @return executor starting platform threads - virtual threads need Java 21
+     */
+    public static WorkerExecutor executor() {
+        return WorkerExecutors.PLATFORM_THREADS;
+    }
+}
@@ -0,0 +1,16 @@
+package pl.springtest.communicatorclient.workers;
+
+/**
+ * Starts long living workers of connection - loops which block on socket, console or queue
+ * (TransmitConnection, ReadConnection, ReadInput, WriteOutput)
+ * Implementations are chosen by WorkerExecutors
+ */
+public interface WorkerExecutor {
+    /**
+     * Start worker in new thread
+     * @param name - name of thread (visible in thread dumps)
+     * @param worker - loop of worker, thread ends when it returns
+     * @return started thread - it can be joined
+     */
+    Thread start(String name, Runnable worker);
+}
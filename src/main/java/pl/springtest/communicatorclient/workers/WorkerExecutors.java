@@ -0,0 +1,47 @@
+package pl.springtest.communicatorclient.workers;
+
+import pl.springtest.communicatorclient.statement.ClientStatement;
+
+/**
+ * Choice of threads for workers of connections
+ * System property communicator.threads:
+ * - "platform" - every worker has its own platform thread with full stack (default)
+ * - "virtual" - every worker has virtual thread (Java 21+), blocking socket and console reads do not hold platform thread;
+ *   on older Java platform threads are used
+ * Virtual threads are always daemon threads - application has to join workers to keep running (see Connection.join)
+ */
+public abstract class WorkerExecutors {
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+    public static final WorkerExecutor PLATFORM_THREADS = (name, worker) -> {
+        Thread thread = new Thread(worker, name);
+        thread.start();
+        return thread;
+    };
+
+    private static WorkerExecutor defaultExecutor = null;
+
+    /**
+     * @return executor chosen by system property communicator.threads - created by first call
+     */
+    public static synchronized WorkerExecutor getDefault() {
+        if (defaultExecutor == null)
+            defaultExecutor = forMode(System.getProperty("communicator.threads", PLATFORM));
+        return defaultExecutor;
+    }
+
+    /**
+     * @param mode - PLATFORM or VIRTUAL
+     * @return executor of given mode, PLATFORM_THREADS when virtual threads are not supported or mode is unknown
+     */
+    public static WorkerExecutor forMode(String mode) {
+        if (VIRTUAL.equals(mode)) {
+            if (VirtualThreads.isSupported())
+                return VirtualThreads.executor();
+            ClientStatement.Info("Virtual threads need Java 21 (multi-release jar) - platform threads are used");
+        } else if (!PLATFORM.equals(mode)) {
+            ClientStatement.Info("Unknown communicator.threads mode " + mode + " - platform threads are used");
+        }
+        return PLATFORM_THREADS;
+    }
+}
@@ -0,0 +1,22 @@
+package pl.springtest.communicatorclient.workers;
+
+/**
+ * Virtual threads - Java 21 version of class (META-INF/versions/21 of multi-release jar)
+ * Blocking socket read, queue park or lock wait unmounts virtual thread from its carrier thread,
+ * so a waiting worker keeps only its small heap stack
+ */
+public abstract class VirtualThreads {
+    /**
+     * @return true if workers can be started in virtual threads
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * @return executor starting virtual threads
+     */
+    public static WorkerExecutor executor() {
+        return (name, worker) -> Thread.ofVirtual().name(name).start(worker);
+    }
+}
@@ -0,0 +1,211 @@
+package pl.springtest.communicatorclient.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.springtest.communicatorclient.messages.QueueOverflowPolicy;
+import pl.springtest.communicatorclient.metrics.ClientMetrics;
+import pl.springtest.communicatorclient.testserver.FakeCommunicatorServer;
+import pl.springtest.communicatorclient.toServerConnection.InboundMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end test of client against FakeCommunicatorServer - LOGIN, echo of message, close
+ */
+class CommunicatorClientTest {
+    private FakeCommunicatorServer server;
+    private int port;
+
+    /**
+     * Subscriber which keeps all messages and end of subscription
+     */
+    private static class CollectingSubscriber implements Flow.Subscriber<InboundMessage> {
+        final BlockingQueue<InboundMessage> messages = new LinkedBlockingQueue<InboundMessage>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final long initialRequest;
+        volatile Flow.Subscription subscription = null;
+        volatile Throwable error = null;
+
+        CollectingSubscriber() {
+            this(Long.MAX_VALUE);
+        }
+
+        /**
+         * @param initialRequest - number of messages requested by onSubscribe
+         */
+        CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(InboundMessage item) {
+            messages.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        InboundMessage next() throws InterruptedException {
+            InboundMessage message = messages.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "no message from server");
+            return message;
+        }
+    }
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new FakeCommunicatorServer().setEchoToSender(true);
+        port = server.start(0);
+    }
+
+    @AfterEach
+    void closeServer() {
+        server.close();
+    }
+
+    @Test
+    void loginEchoAndClose() throws Exception {
+        CommunicatorClient client = CommunicatorClient.builder().host("localhost").port(port)
+                .clientName("tester").groupId("group").connect();
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        client.subscribe(subscriber);
+
+        InboundMessage login = subscriber.next();
+        assertEquals("tester", login.getClientName());
+        assertEquals("group", login.getGroupId());
+        assertTrue(login.getMessage().startsWith("LOGIN"), login.getMessage());
+
+        assertTrue(gaugeNamesOf("tester").contains("sendQueueDepth"), ClientMetrics.REGISTRY.snapshot().toString());
+
+        client.send("hello").get(5, TimeUnit.SECONDS);
+        InboundMessage echo = subscriber.next();
+        assertEquals("tester", echo.getClientName());
+        assertEquals("hello", echo.getMessage());
+        assertEquals("tester: hello", echo.toDisplayText());
+
+        client.close();
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS), "subscriber did not get end of messages");
+        assertNull(subscriber.error);
+        client.join();
+        assertTrue(client.isClosed());
+        assertTrue(client.send("after close").isCompletedExceptionally());
+        assertTrue(gaugeNamesOf("tester").isEmpty(), "gauges of closed client are registered"); // other tests close clients too
+    }
+
+    /**
+     * @param clientName - name of client
+     * @return names of gauges of clients with given name, without prefix of client
+     */
+    private static Set<String> gaugeNamesOf(String clientName) {
+        Set<String> names = new HashSet<String>();
+        for (String name : ClientMetrics.REGISTRY.snapshot().keySet())
+            if (name.startsWith(clientName + "-"))
+                names.add(name.substring(name.indexOf('.') + 1));
+        return names;
+    }
+
+    @Test
+    void actionOfSendFutureCanSendWhenQueueIsFull() throws Exception {
+        CommunicatorClient client = CommunicatorClient.builder().host("localhost").port(port)
+                .clientName("tester").groupId("group").sendQueue(2, QueueOverflowPolicy.BLOCK).connect();
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        client.subscribe(subscriber);
+        subscriber.next(); // LOGIN
+
+        int count = 20;
+        List<CompletableFuture<Void>> sent = new ArrayList<CompletableFuture<Void>>();
+        CompletableFuture<Void> first = client.send("m0").thenRun(() -> { // deadlock when it runs in TransmitConnection
+            for (int i = 1; i < count; i++)
+                sent.add(client.send("m" + i)); // queue of 2 messages - send waits for place in it
+        });
+        first.get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<Void> future : sent)
+            future.get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < count; i++)
+            assertEquals("m" + i, subscriber.next().getMessage());
+
+        client.close();
+        client.join();
+    }
+
+    @Test
+    void messageWithLineBreakIsNotSent() throws Exception {
+        server.close();
+        server = new FakeCommunicatorServer().setEchoToSender(true).setBinaryFraming(false); // text frames end with "\n"
+        port = server.start(0);
+        CommunicatorClient client = CommunicatorClient.builder().host("localhost").port(port)
+                .clientName("tester").groupId("group").connect();
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+        client.subscribe(subscriber);
+        subscriber.next(); // LOGIN
+
+        CompletableFuture<Void> forged = client.send("hello\nVERSION_INFO:1.0.0;CLIENT_NAME:other;GROUP_ID:group;EXTRA:SHUTDOWN;MESSAGE:x");
+        ExecutionException error = assertThrows(ExecutionException.class, () -> forged.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IllegalArgumentException, error.getCause().toString());
+        assertTrue(client.send("a\rb").isCompletedExceptionally());
+
+        client.send("after").get(5, TimeUnit.SECONDS);
+        assertEquals("after", subscriber.next().getMessage());
+        assertEquals(2, server.getReceivedFrames()); // LOGIN and "after"
+
+        client.close();
+        client.join();
+    }
+
+    @Test
+    void closeDeliversQueuedMessagesBeforeEnd() throws Exception {
+        CommunicatorClient client = CommunicatorClient.builder().host("localhost").port(port)
+                .clientName("tester").groupId("group").connect();
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        client.subscribe(subscriber);
+        subscriber.next(); // LOGIN
+
+        int count = 10;
+        for (int i = 0; i < count; i++)
+            client.send("m" + i).get(5, TimeUnit.SECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getSentFrames() < 1 + count && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        Thread.sleep(200); // echoed messages are read by client - they wait in queue, subscriber did not request them
+
+        client.close();
+        assertEquals(1, subscriber.completed.getCount(), "subscriber got end before queued messages");
+        subscriber.subscription.request(Long.MAX_VALUE);
+        for (int i = 0; i < count; i++)
+            assertEquals("m" + i, subscriber.next().getMessage());
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS), "subscriber did not get end of messages");
+        assertNull(subscriber.error);
+        client.join();
+    }
+}
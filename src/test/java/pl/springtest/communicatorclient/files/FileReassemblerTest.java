@@ -0,0 +1,101 @@
+package pl.springtest.communicatorclient.files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.springtest.communicatorclient.toServerConnection.BinaryFraming;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.ServerMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileReassemblerTest {
+    private static final int MAX_BYTES = 1000;
+
+    @TempDir
+    Path directory;
+
+    private final List<String> console = new ArrayList<String>();
+
+    private FileReassembler reassembler() {
+        return new FileReassembler(directory.resolve("files"), MAX_BYTES, "me", console::add);
+    }
+
+    private static ServerMessage control(ExtraInfo extraInfo, String sender, String payload) {
+        return new ServerMessage(sender, "group", extraInfo, payload);
+    }
+
+    private static void chunk(FileReassembler reassembler, String sender, int id, byte[] data) {
+        ByteBuffer frame = ByteBuffer.allocate(BinaryFraming.MAX_VARINT_SIZE + data.length + 3);
+        frame.put(new byte[]{1, 2, 3}); // chunk does not start at beginning of buffer
+        BinaryFraming.putVarint(frame, id);
+        frame.put(data);
+        frame.flip();
+        reassembler.fileChunk(sender, frame, 3, frame.limit());
+        assertEquals(0, frame.position(), "position of buffer was changed");
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    @Test
+    void fileIsWrittenWhenSizeAndCrcMatch() throws IOException {
+        FileReassembler reassembler = reassembler();
+        byte[] data = "hello file".getBytes(StandardCharsets.UTF_8);
+        reassembler.fileControlFrame(control(ExtraInfo.FILE_START, "alice", FileFrames.startPayload(7, data.length, "../a.txt")));
+        chunk(reassembler, "alice", 7, data);
+        reassembler.fileControlFrame(control(ExtraInfo.FILE_END, "alice", FileFrames.endPayload(7, data.length, crc(data))));
+
+        assertArrayEquals(data, Files.readAllBytes(directory.resolve("files").resolve("a.txt")));
+        assertTrue(console.get(console.size() - 1).startsWith("Received file a.txt"), console.toString());
+    }
+
+    @Test
+    void fileBiggerThanLimitIsNotStarted() {
+        FileReassembler reassembler = reassembler();
+        reassembler.fileControlFrame(control(ExtraInfo.FILE_START, "alice",
+                FileFrames.startPayload(1, 999_999_999_999_999_999L, "huge.bin")));
+        chunk(reassembler, "alice", 1, new byte[100]);
+
+        assertFalse(Files.exists(directory.resolve("files")), "directory of files was created");
+        assertEquals(1, console.size());
+        assertTrue(console.get(0).contains("skipped"), console.get(0));
+    }
+
+    @Test
+    void chunkPastAnnouncedSizeAbortsFile() throws IOException {
+        FileReassembler reassembler = reassembler();
+        reassembler.fileControlFrame(control(ExtraInfo.FILE_START, "alice", FileFrames.startPayload(1, 10, "a.bin")));
+        chunk(reassembler, "alice", 1, new byte[6]);
+        chunk(reassembler, "alice", 1, new byte[6]);
+
+        assertTrue(console.get(console.size() - 1).contains("failed"), console.toString());
+        try (Stream<Path> files = Files.list(directory.resolve("files"))) {
+            assertEquals(0, files.count(), "part file was left");
+        }
+        reassembler.fileControlFrame(control(ExtraInfo.FILE_END, "alice", FileFrames.endPayload(1, 12, 0)));
+        assertFalse(Files.exists(directory.resolve("files").resolve("a.bin")));
+    }
+
+    @Test
+    void ownFilesAreSkipped() {
+        reassembler().fileControlFrame(control(ExtraInfo.FILE_START, "me", FileFrames.startPayload(1, 10, "a.bin")));
+        assertTrue(console.isEmpty());
+        assertFalse(Files.exists(directory.resolve("files")));
+    }
+}
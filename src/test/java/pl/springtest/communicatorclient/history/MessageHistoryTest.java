@@ -0,0 +1,161 @@
+package pl.springtest.communicatorclient.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageHistoryTest {
+    private static final int SEGMENT_BYTES = 1024; // about 20 messages per segment
+
+    @TempDir
+    Path directory;
+
+    private final AtomicLong time = new AtomicLong(1000);
+
+    private MessageHistory open() throws IOException {
+        return new MessageHistory(directory, SEGMENT_BYTES, time::get);
+    }
+
+    /**
+     * Append messages - every timeStep-th message gets next millisecond, so many messages have equal time
+     */
+    private static void append(MessageHistory history, AtomicLong time, int from, int count, int timeStep) throws IOException {
+        for (int i = from; i < from + count; i++) {
+            if (i > 0 && i % timeStep == 0)
+                time.incrementAndGet();
+            history.append("sender" + i % 3, "group" + i % 2, "message " + i);
+        }
+    }
+
+    private static List<String> texts(List<HistoryMessage> messages) {
+        return messages.stream().map(HistoryMessage::getMessage).collect(Collectors.toList());
+    }
+
+    private static List<String> expectedTexts(int from, int to) {
+        List<String> texts = new ArrayList<String>();
+        for (int i = from; i < to; i++)
+            texts.add("message " + i);
+        return texts;
+    }
+
+    @Test
+    void messagesAreReadAcrossSegments() throws IOException {
+        MessageHistory history = open();
+        append(history, time, 0, 500, 1);
+        assertTrue(history.getSegmentCount() > 10);
+        assertEquals(500, history.size());
+
+        List<HistoryMessage> all = history.last(1000);
+        assertEquals(expectedTexts(0, 500), texts(all));
+        for (int i = 0; i < all.size(); i++)
+            assertEquals(i, all.get(i).getSequence());
+        assertEquals(expectedTexts(490, 500), texts(history.last(10)));
+
+        List<HistoryMessage> ofSender = history.lastFromSender("sender1", 5);
+        assertEquals(List.of("message 487", "message 490", "message 493", "message 496", "message 499"), texts(ofSender));
+        assertEquals(List.of("message 496", "message 498"), texts(history.lastInGroup("group0", 2)));
+        assertTrue(history.lastInGroup("unknown", 2).isEmpty());
+        history.close();
+    }
+
+    @Test
+    void rangeFindsMessagesWithEqualTimesAtSparseIndexEntries() throws IOException {
+        MessageHistory history = open();
+        int count = 10 * MessageHistory.INDEX_INTERVAL;
+        int timeStep = MessageHistory.INDEX_INTERVAL + 36; // time changes between sparse index entries and inside segments
+        append(history, time, 0, count, timeStep);
+        List<HistoryMessage> all = history.last(count);
+
+        for (long from = 999; from <= time.get() + 1; from++) {
+            for (long to = from - 1; to <= time.get() + 1; to++) {
+                List<String> expected = new ArrayList<String>();
+                for (HistoryMessage message : all)
+                    if (message.getTimeMillis() >= from && message.getTimeMillis() <= to)
+                        expected.add(message.getMessage());
+                assertEquals(expected, texts(history.range(from, to, Integer.MAX_VALUE)), "range " + from + "-" + to);
+                List<String> newest = expected.subList(Math.max(0, expected.size() - 7), expected.size());
+                assertEquals(newest, texts(history.range(from, to, 7)), "range " + from + "-" + to + " limit 7");
+            }
+        }
+        history.close();
+    }
+
+    @Test
+    void reopenedHistoryContinuesSequencesAndTimes() throws IOException {
+        MessageHistory history = open();
+        append(history, time, 0, 150, 10);
+        int segments = history.getSegmentCount();
+        history.close();
+
+        time.set(0); // clock went back - times of new messages are not smaller than stored ones
+        MessageHistory reopened = open();
+        assertEquals(150, reopened.size());
+        assertEquals(segments, reopened.getSegmentCount());
+        assertEquals(150, reopened.append("sender", "group", "message 150"));
+        List<HistoryMessage> last = reopened.last(2);
+        assertEquals(last.get(0).getTimeMillis(), last.get(1).getTimeMillis());
+        assertEquals(expectedTexts(0, 151), texts(reopened.last(1000)));
+        assertEquals(expectedTexts(140, 151), texts(reopened.range(1014, 1014, 100)));
+        reopened.close();
+    }
+
+    @Test
+    void emptyTrailingSegmentIsRecovered() throws IOException {
+        MessageHistory history = open();
+        append(history, time, 0, 100, 1);
+        history.close();
+
+        // crash after new segment file was created, before its first message was written
+        Files.write(directory.resolve(String.format("segment-%019d.log", 100)), new byte[SEGMENT_BYTES]);
+        MessageHistory reopened = open();
+        assertEquals(100, reopened.size());
+        assertEquals(expectedTexts(90, 100), texts(reopened.last(10)));
+        assertEquals(100, reopened.append("sender", "group", "message 100"));
+        assertEquals(expectedTexts(95, 101), texts(reopened.last(6)));
+        reopened.close();
+
+        reopened = open();
+        assertEquals(101, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    void emptyTrailingSegmentTooSmallForMessageIsReplaced() throws IOException {
+        MessageHistory history = open();
+        append(history, time, 0, 30, 1);
+        history.close();
+
+        Files.createFile(directory.resolve(String.format("segment-%019d.log", 30)));
+        MessageHistory reopened = open();
+        String big = "x".repeat(4 * SEGMENT_BYTES);
+        assertEquals(30, reopened.append("sender", "group", big));
+        assertEquals(big, reopened.last(1).get(0).getMessage());
+        reopened.close();
+
+        reopened = open();
+        assertEquals(31, reopened.size());
+        assertEquals(big, reopened.last(1).get(0).getMessage());
+        reopened.close();
+    }
+
+    @Test
+    void gapBetweenSegmentsIsRejected() throws IOException {
+        MessageHistory history = open();
+        append(history, time, 0, 10, 1);
+        history.close();
+
+        Files.createFile(directory.resolve(String.format("segment-%019d.log", 20)));
+        assertThrows(IOException.class, this::open);
+    }
+}
@@ -0,0 +1,162 @@
+package pl.springtest.communicatorclient.messages;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedMessageQueueTest {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new BoundedMessageQueue<Integer>(1, QueueOverflowPolicy.FAIL).capacity());
+        assertEquals(4, new BoundedMessageQueue<Integer>(3, QueueOverflowPolicy.FAIL).capacity());
+        assertEquals(8, new BoundedMessageQueue<Integer>(8, QueueOverflowPolicy.FAIL).capacity());
+    }
+
+    @Test
+    void keepsOrderAcrossWraparound() {
+        BoundedMessageQueue<Integer> queue = new BoundedMessageQueue<Integer>(4, QueueOverflowPolicy.FAIL);
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 10; round++) { // positions go many times around array
+            while (queue.offer(next))
+                next++;
+            assertEquals(4, queue.size());
+            for (int i = 0; i < 3; i++)
+                assertEquals(expected++, queue.poll());
+        }
+        while (!queue.isEmpty())
+            assertEquals(expected++, queue.poll());
+        assertEquals(next, expected);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void failPolicyRejectsWhenFull() {
+        BoundedMessageQueue<Integer> queue = new BoundedMessageQueue<Integer>(2, QueueOverflowPolicy.FAIL);
+        assertTrue(queue.add(1));
+        assertTrue(queue.add(2));
+        assertFalse(queue.add(3));
+        assertEquals(1, queue.getRejectedCount());
+        assertEquals(2, queue.getHighWaterMark());
+
+        List<Integer> drained = new ArrayList<Integer>();
+        assertEquals(2, queue.drainTo(drained));
+        assertEquals(List.of(1, 2), drained);
+        assertTrue(queue.add(3));
+    }
+
+    @Test
+    void dropOldestPolicyPassesDroppedElementsToListener() {
+        List<Integer> dropped = new ArrayList<Integer>();
+        BoundedMessageQueue<Integer> queue = new BoundedMessageQueue<Integer>(4, QueueOverflowPolicy.DROP_OLDEST, dropped::add);
+        for (int i = 0; i < 10; i++)
+            assertTrue(queue.add(i));
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), dropped);
+        assertEquals(6, queue.getDroppedCount());
+        assertEquals(0, queue.getRejectedCount());
+        List<Integer> drained = new ArrayList<Integer>();
+        queue.drainTo(drained);
+        assertEquals(List.of(6, 7, 8, 9), drained);
+    }
+
+    @Test
+    void blockPolicyWaitsForPlace() throws Exception {
+        BoundedMessageQueue<Integer> queue = new BoundedMessageQueue<Integer>(2, QueueOverflowPolicy.BLOCK);
+        queue.add(1);
+        queue.add(2);
+        AtomicBoolean added = new AtomicBoolean();
+        Thread producer = new Thread(() -> added.set(queue.add(3)));
+        producer.start();
+
+        producer.join(100);
+        assertTrue(producer.isAlive(), "producer did not wait for place in queue");
+        assertEquals(1, queue.poll());
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertTrue(added.get());
+        assertEquals(2, queue.poll());
+        assertEquals(3, queue.poll());
+    }
+
+    @Test
+    void closeWakesUpBlockedProducersAndConsumer() throws Exception {
+        BoundedMessageQueue<Integer> queue = new BoundedMessageQueue<Integer>(2, QueueOverflowPolicy.BLOCK);
+        queue.add(1);
+        queue.add(2);
+        int producers = 4;
+        CountDownLatch finished = new CountDownLatch(producers);
+        AtomicBoolean anyAdded = new AtomicBoolean();
+        for (int i = 0; i < producers; i++) {
+            new Thread(() -> {
+                if (queue.add(3))
+                    anyAdded.set(true);
+                finished.countDown();
+            }).start();
+        }
+        Thread.sleep(50);
+        assertEquals(producers, finished.getCount());
+
+        queue.close();
+        assertTrue(finished.await(5, TimeUnit.SECONDS), "blocked producers were not woken up by close");
+        assertFalse(anyAdded.get());
+
+        BoundedMessageQueue<Integer> empty = new BoundedMessageQueue<Integer>(2, QueueOverflowPolicy.BLOCK);
+        Thread consumer = new Thread(() -> empty.awaitNotEmpty(Long.MAX_VALUE));
+        consumer.start();
+        Thread.sleep(50);
+        empty.close();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive(), "waiting consumer was not woken up by close");
+    }
+
+    @Test
+    void wakeUpBeforeAwaitReturnsAtOnce() {
+        BoundedMessageQueue<Integer> queue = new BoundedMessageQueue<Integer>(2, QueueOverflowPolicy.BLOCK);
+        queue.wakeUp();
+        assertFalse(queue.awaitNotEmpty(Long.MAX_VALUE));
+        assertFalse(queue.awaitNotEmpty(TimeUnit.MILLISECONDS.toNanos(10)));
+    }
+
+    @Test
+    void manyProducersOneConsumerLoseNothing() throws Exception {
+        int producers = 4;
+        int perProducer = 100_000;
+        BoundedMessageQueue<long[]> queue = new BoundedMessageQueue<long[]>(64, QueueOverflowPolicy.BLOCK);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++)
+                    queue.add(new long[]{producer, i});
+            });
+            threads[p].start();
+        }
+
+        long[] nextOfProducer = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            long[] element = queue.poll();
+            if (element == null) {
+                queue.awaitNotEmpty(TimeUnit.MILLISECONDS.toNanos(10));
+                continue;
+            }
+            assertEquals(nextOfProducer[(int) element[0]]++, element[1], "order of one producer was changed");
+            received++;
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.getHighWaterMark() <= queue.capacity());
+    }
+}
@@ -0,0 +1,49 @@
+package pl.springtest.communicatorclient.messages;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConsoleRendererTest {
+
+    @AfterEach
+    void clearSettings() {
+        System.clearProperty("communicator.console.catchUpThreshold");
+        System.clearProperty("communicator.console.catchUpKeep");
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            // threshold, keep, messages, skipped line, written messages
+            "5000, 500, 10, false, 10",
+            "10, 3, 10, false, 10",
+            "10, 3, 11, true, 3",
+            "10, 20, 11, false, 11",   // keep bigger than threshold - nothing is skipped
+            "10, 20, 25, true, 20",
+            "10, -1, 11, true, 0",
+            "0, 3, 100, false, 100",
+    })
+    void newestMessagesAreWrittenInCatchUpMode(int threshold, int keep, int count, boolean skippedLine, int written) {
+        System.setProperty("communicator.console.catchUpThreshold", Integer.toString(threshold));
+        System.setProperty("communicator.console.catchUpKeep", Integer.toString(keep));
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        List<String> messages = new ArrayList<String>();
+        for (int i = 0; i < count; i++)
+            messages.add("m" + i);
+
+        new ConsoleRenderer(console).render(messages);
+
+        List<String> expected = new ArrayList<String>();
+        if (skippedLine)
+            expected.add("... " + (count - written) + " older messages skipped ...");
+        expected.addAll(messages.subList(count - written, count));
+        assertEquals(expected, console.toString().lines().collect(Collectors.toList()));
+    }
+}
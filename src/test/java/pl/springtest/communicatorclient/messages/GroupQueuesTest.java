@@ -0,0 +1,65 @@
+package pl.springtest.communicatorclient.messages;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupQueuesTest {
+
+    @Test
+    void groupsAreDrainedInRoundRobinByQuantum() {
+        GroupQueues<String> queues = new GroupQueues<String>(64, QueueOverflowPolicy.FAIL, 2);
+        for (int i = 0; i < 5; i++)
+            queues.add(0, "a" + i);
+        queues.add(3, "b0");
+        queues.add(3, "b1");
+        queues.add(3, "b2");
+
+        List<String> batch = new ArrayList<String>();
+        List<Integer> groups = new ArrayList<Integer>();
+        int group;
+        while ((group = queues.drainNext(batch)) != -1)
+            groups.add(group);
+        assertEquals(List.of(0, 3, 0, 3, 0), groups);
+        assertEquals(List.of("a0", "a1", "b0", "b1", "a2", "a3", "b2", "a4"), batch);
+        assertTrue(queues.isEmpty());
+    }
+
+    @Test
+    void drainTakesAtMostRequestedElements() {
+        GroupQueues<String> queues = new GroupQueues<String>(64, QueueOverflowPolicy.FAIL, 256);
+        for (int i = 0; i < 10; i++)
+            queues.add(1, "m" + i);
+        List<String> batch = new ArrayList<String>();
+        assertEquals(1, queues.drainNext(batch, 3));
+        assertEquals(List.of("m0", "m1", "m2"), batch);
+        assertEquals(7, queues.size());
+        assertEquals(10, queues.getHighWaterMark());
+    }
+
+    @Test
+    void closeWakesUpProducerAndRejectsNewGroups() throws Exception {
+        GroupQueues<String> queues = new GroupQueues<String>(2, QueueOverflowPolicy.BLOCK, 16);
+        queues.add(0, "a");
+        queues.add(0, "b");
+        AtomicBoolean added = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> added.set(queues.add(0, "c")));
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+
+        queues.close();
+        producer.join(5000);
+        assertFalse(producer.isAlive(), "blocked producer was not woken up by close");
+        assertFalse(added.get());
+        assertFalse(queues.add(7, "to new group"));
+        assertTrue(queues.isClosed());
+        assertEquals(2, queues.size());
+    }
+}
@@ -0,0 +1,43 @@
+package pl.springtest.communicatorclient.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class MetricsScopeTest {
+
+    @Test
+    void gaugesOfClientsWithTheSameNameDoNotReplaceEachOther() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsScope first = registry.scope("Adam");
+        MetricsScope second = registry.scope("Adam");
+        assertNotEquals(first.getPrefix(), second.getPrefix());
+
+        first.gauge("sendQueueDepth", () -> 1);
+        second.gauge("sendQueueDepth", () -> 2);
+        Map<String, Long> snapshot = registry.snapshot();
+        assertEquals(1, snapshot.get(first.getPrefix() + "sendQueueDepth"));
+        assertEquals(2, snapshot.get(second.getPrefix() + "sendQueueDepth"));
+    }
+
+    @Test
+    void closeRemovesGaugesOfScope() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("messagesSent").increment();
+        MetricsScope closed = registry.scope("Adam");
+        MetricsScope open = registry.scope("Eve");
+        closed.gauge("spoolPending", () -> 1);
+        open.gauge("spoolPending", () -> 2);
+
+        closed.close();
+        closed.gauge("reconnects", () -> 3); // not registered after close
+        Map<String, Long> snapshot = registry.snapshot();
+        assertFalse(snapshot.keySet().stream().anyMatch(name -> name.startsWith(closed.getPrefix())), snapshot.toString());
+        assertEquals(2, snapshot.get(open.getPrefix() + "spoolPending"));
+        assertEquals(1, snapshot.get("messagesSent"));
+    }
+}
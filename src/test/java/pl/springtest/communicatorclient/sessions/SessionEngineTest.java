@@ -0,0 +1,107 @@
+package pl.springtest.communicatorclient.sessions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.springtest.communicatorclient.statement.ClientStatement;
+import pl.springtest.communicatorclient.testserver.FakeCommunicatorServer;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionEngineTest {
+    private FakeCommunicatorServer server;
+    private int port;
+    private SessionEngine engine;
+
+    /**
+     * Listener which keeps messages - it throws when it gets message "boom" and failing is set
+     */
+    private static class RecordingListener implements SessionListener {
+        final boolean failing;
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final BlockingQueue<String> messages = new LinkedBlockingQueue<String>();
+        volatile String closeReason = null;
+
+        RecordingListener(boolean failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public void onConnected(Session session) {
+            connected.countDown();
+        }
+
+        @Override
+        public void onMessage(Session session, String message) {
+            if (failing && message.endsWith(": boom"))
+                throw new IllegalStateException("listener failed");
+            messages.add(message);
+        }
+
+        @Override
+        public void onClosed(Session session, String reason) {
+            closeReason = reason;
+            closed.countDown();
+            if (failing)
+                throw new IllegalStateException("listener failed again");
+        }
+
+        String next() throws InterruptedException {
+            String message = messages.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message, "no message from server");
+            return message;
+        }
+    }
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new FakeCommunicatorServer().setEchoToSender(true);
+        port = server.start(0);
+        engine = new SessionEngine(1); // both sessions share one event loop
+    }
+
+    @AfterEach
+    void stop() {
+        ClientStatement.setWarningListener(null);
+        engine.close();
+        server.close();
+    }
+
+    @Test
+    void failingListenerClosesOnlyItsSession() throws Exception {
+        CopyOnWriteArrayList<String> warnings = new CopyOnWriteArrayList<String>();
+        ClientStatement.setWarningListener(warnings::add);
+        RecordingListener failing = new RecordingListener(true);
+        RecordingListener healthy = new RecordingListener(false);
+        Session failingSession = engine.openSession("localhost", port, "failing", "g", failing);
+        Session healthySession = engine.openSession("localhost", port, "healthy", "g", healthy);
+        assertTrue(failing.connected.await(5, TimeUnit.SECONDS));
+        assertTrue(healthy.connected.await(5, TimeUnit.SECONDS));
+
+        assertTrue(failingSession.send("boom"));
+        assertTrue(failing.closed.await(5, TimeUnit.SECONDS), "session of failing listener was not closed");
+        assertTrue(failing.closeReason.contains("onMessage"), failing.closeReason);
+        assertFalse(failingSession.isOpen());
+        assertTrue(warnings.stream().anyMatch(warning -> warning.contains("failing failed in onMessage")), warnings.toString());
+
+        assertTrue(healthySession.send("still alive"));
+        String message;
+        while (!(message = healthy.next()).startsWith("healthy: "))
+            ; // LOGIN frames and "boom" of other session
+        assertEquals("healthy: LOGIN", message);
+        while (!(message = healthy.next()).startsWith("healthy: still"))
+            ;
+        assertTrue(healthySession.isOpen());
+        assertEquals(1, engine.getSessionCount());
+    }
+}
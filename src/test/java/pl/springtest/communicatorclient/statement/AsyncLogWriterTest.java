@@ -0,0 +1,94 @@
+package pl.springtest.communicatorclient.statement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncLogWriterTest {
+    // "yyyy:MM:dd HH:mm:ss - line NN\n" is 30 bytes, so 3 lines fit in one file
+    private static final long MAX_FILE_SIZE = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void fileIsRolledAndOldestBackupIsDeleted() throws IOException {
+        Path info = directory.resolve("info");
+        AsyncLogWriter writer = new AsyncLogWriter(info.toString(), directory.resolve("errors").toString(),
+                16, LogOverflowPolicy.BLOCK, MAX_FILE_SIZE, 2);
+        writer.start();
+
+        for (int i = 0; i < 20; i++) {
+            writer.append(AsyncLogWriter.INFO_LOG, String.format("line %02d", i));
+            writer.flush(5000);
+        }
+
+        Path firstBackup = directory.resolve("info.1");
+        Path secondBackup = directory.resolve("info.2");
+        assertFalse(Files.exists(directory.resolve("info.3")));
+        for (Path file : List.of(info, firstBackup, secondBackup))
+            assertTrue(Files.size(file) <= MAX_FILE_SIZE, file + " is too big");
+        assertEquals(List.of("line 12", "line 13", "line 14"), messagesOf(secondBackup));
+        assertEquals(List.of("line 15", "line 16", "line 17"), messagesOf(firstBackup));
+        assertEquals(List.of("line 18", "line 19"), messagesOf(info));
+    }
+
+    @Test
+    void dropPolicyCountsInfoLinesWhenBufferIsFull() throws IOException {
+        Path info = directory.resolve("info");
+        Path errors = directory.resolve("errors");
+        AsyncLogWriter writer = new AsyncLogWriter(info.toString(), errors.toString(),
+                4, LogOverflowPolicy.DROP, MAX_FILE_SIZE * 100, 3);
+
+        // flusher is not started yet, so buffer keeps only first 4 lines
+        for (int i = 0; i < 10; i++)
+            writer.append(AsyncLogWriter.INFO_LOG, String.format("line %02d", i));
+        writer.start();
+        writer.append(AsyncLogWriter.ERROR_LOG, "error");
+        writer.flush(5000);
+
+        assertEquals(List.of("6 log lines dropped - buffer was full", "line 00", "line 01", "line 02", "line 03"),
+                messagesOf(info));
+        assertEquals(List.of("error"), messagesOf(errors));
+    }
+
+    @Test
+    void blockPolicyWaitsForSpaceInBuffer() throws Exception {
+        Path info = directory.resolve("info");
+        AsyncLogWriter writer = new AsyncLogWriter(info.toString(), directory.resolve("errors").toString(),
+                2, LogOverflowPolicy.BLOCK, MAX_FILE_SIZE * 100, 3);
+
+        writer.append(AsyncLogWriter.INFO_LOG, "line 00");
+        writer.append(AsyncLogWriter.INFO_LOG, "line 01");
+        Thread appending = new Thread(() -> writer.append(AsyncLogWriter.INFO_LOG, "line 02"));
+        appending.start();
+        appending.join(200);
+        assertTrue(appending.isAlive());
+
+        writer.start();
+        appending.join(5000);
+        assertFalse(appending.isAlive());
+        writer.flush(5000);
+
+        assertEquals(List.of("line 00", "line 01", "line 02"), messagesOf(info));
+    }
+
+    /**
+     * @param file - log file
+     * @return lines of file without date and time
+     */
+    private static List<String> messagesOf(Path file) throws IOException {
+        return Files.readAllLines(file).stream()
+                .map(line -> line.substring(line.indexOf(" - ") + 3))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,44 @@
+package pl.springtest.communicatorclient.statement;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ClientStatementTest {
+
+    @AfterEach
+    void removeListener() {
+        ClientStatement.setWarningListener(null);
+    }
+
+    @Test
+    void warningIsNotPrintedToSystemOut() {
+        PrintStream systemOut = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        List<String> warnings = new ArrayList<String>();
+        System.setOut(new PrintStream(printed, true));
+        try {
+            ClientStatement.Warning("without listener");
+            ClientStatement.setWarningListener(warnings::add);
+            ClientStatement.Warning("connection lost");
+        } finally {
+            System.setOut(systemOut);
+        }
+
+        assertEquals("", printed.toString());
+        assertEquals(List.of("Error: connection lost"), warnings);
+    }
+
+    @Test
+    void logNameCanNotChangeAfterFirstStatement() {
+        ClientStatement.Info("log files are open");
+        assertFalse(ClientStatement.useLogName("other-" + System.nanoTime()));
+    }
+}
@@ -0,0 +1,832 @@
+package pl.springtest.communicatorclient.testserver;
+
+import pl.springtest.communicatorclient.toServerConnection.BinaryFraming;
+import pl.springtest.communicatorclient.toServerConnection.ExtraInfo;
+import pl.springtest.communicatorclient.toServerConnection.FrameCompression;
+import pl.springtest.communicatorclient.toServerConnection.FrameCompressor;
+import pl.springtest.communicatorclient.toServerConnection.FrameDecompressor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * In-process stand-in for communicator server - for integration and performance testing of client
+ * Speaks server side of text protocol: "VERSION_INFO:...;CLIENT_NAME:...;GROUP_ID:...;EXTRA:...;MESSAGE:...\n"
+ * - EXTRA:NEW_CONNECTION - client joins group from GROUP_ID
+ * - EXTRA:SHUTDOWN - client leaves (LOGOUT)
+ * - EXTRA:HEARTBEAT - frame is sent back only to sender (unless setAnswerHeartbeats(false) - like server without heartbeats)
+ * - EXTRA:JOIN - client joins one more group from GROUP_ID, answer with ID of group for binary framing is sent only to sender
+ * - EXTRA:LEAVE - client leaves group from GROUP_ID (not login group)
+ * - other frames are forwarded without changes to all clients in group from GROUP_ID (sender too, if echoToSender),
+ *   frames to group which was not joined are dropped
+ * - broadcastShutdown sends EXTRA:SHUTDOWN frame with GROUP_ID:BROADCAST to every client
+ * - LOGIN with binary framing offer is accepted (unless setBinaryFraming(false) - like server without binary framing),
+ *   frames are converted between text and binary format when sender and recipient use different ones
+ * - LOGIN with compression offer is accepted (unless setCompression(false)) - frames to client are compressed one by one
+ * Network conditions can be injected for frames sent to clients: latency, bandwidth per connection and
+ * maximum bytes per write (frames are split to many packets)
+ * Everything runs in one selector thread; frames are forwarded as bytes, payload is not decoded
+ * Settings have to be set before start
+ */
+public class FakeCommunicatorServer implements Runnable {
+    public static final String SERVER_NAME = "SERVER";
+    private static final byte[] MESSAGE_FIELD = "MESSAGE:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXTRA_NEW_CONNECTION = "EXTRA:NEW_CONNECTION;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXTRA_SHUTDOWN = "EXTRA:SHUTDOWN;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXTRA_HEARTBEAT = "EXTRA:HEARTBEAT;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXTRA_JOIN = "EXTRA:JOIN;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXTRA_LEAVE = "EXTRA:LEAVE;".getBytes(StandardCharsets.US_ASCII);
+    private static final int COMPRESSION_MIN_BYTES = 64;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int ACCEPT_BACKLOG = 4096;
+
+    private long latencyNanos = 0;
+    private long bandwidthBytesPerSecond = 0; // 0 - without limit
+    private int maxBytesPerWrite = 0; // 0 - without limit
+    private boolean echoToSender = true;
+    private boolean binaryFraming = true;
+    private boolean compression = true;
+    private boolean answerHeartbeats = true;
+    private byte[] compressionDictionary = null;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running = false;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final Map<String, List<ClientConnection>> groups = new HashMap<String, List<ClientConnection>>();
+    private final List<ClientConnection> connections = new ArrayList<ClientConnection>();
+    private final Set<ClientConnection> connectionsWithFrames = new LinkedHashSet<ClientConnection>(); // only they are checked for writing
+    private final Map<String, Integer> ids = new HashMap<String, Integer>(); // IDs of client names and groups for binary framing
+    private final List<String> idTexts = new ArrayList<String>(); // client names and groups by ID
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+
+    public FakeCommunicatorServer setLatencyMillis(long latencyMillis) {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        return this;
+    }
+
+    public FakeCommunicatorServer setBandwidthBytesPerSecond(long bandwidthBytesPerSecond) {
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+        return this;
+    }
+
+    public FakeCommunicatorServer setMaxBytesPerWrite(int maxBytesPerWrite) {
+        this.maxBytesPerWrite = maxBytesPerWrite;
+        return this;
+    }
+
+    public FakeCommunicatorServer setEchoToSender(boolean echoToSender) {
+        this.echoToSender = echoToSender;
+        return this;
+    }
+
+    public FakeCommunicatorServer setBinaryFraming(boolean binaryFraming) {
+        this.binaryFraming = binaryFraming;
+        return this;
+    }
+
+    public FakeCommunicatorServer setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public FakeCommunicatorServer setAnswerHeartbeats(boolean answerHeartbeats) {
+        this.answerHeartbeats = answerHeartbeats;
+        return this;
+    }
+
+    public FakeCommunicatorServer setCompressionDictionary(byte[] compressionDictionary) {
+        this.compressionDictionary = compressionDictionary;
+        return this;
+    }
+
+    /**
+     * Bind port and start server thread
+     * @param port - port to listen on, 0 - any free port
+     * @return port server listens on
+     * @throws IOException - when port can not be bound
+     */
+    public int start(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("localhost", port), ACCEPT_BACKLOG); // many sessions connect at once
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this, "Thread - FakeCommunicatorServer");
+        thread.setDaemon(true);
+        thread.start();
+        return getPort();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Send EXTRA:SHUTDOWN to every connected client
+     */
+    public void broadcastShutdown() {
+        execute(() -> {
+            RoutedFrame frame = new RoutedFrame(SERVER_NAME, "BROADCAST", ExtraInfo.SHUTDOWN,
+                    "Server is shutting down".getBytes(StandardCharsets.UTF_8));
+            for (ClientConnection connection : connections)
+                connection.queueFrame(frame);
+        });
+    }
+
+    /**
+     * Send message from server to all clients of group
+     * @param groupId - group ID, "BROADCAST" - all clients
+     * @param message - text of message
+     */
+    public void sendToGroup(String groupId, String message) {
+        execute(() -> {
+            RoutedFrame frame = new RoutedFrame(SERVER_NAME, groupId, ExtraInfo.NO_INFO, message.getBytes(StandardCharsets.UTF_8));
+            List<ClientConnection> recipients = groupId.equals("BROADCAST") ? connections : groups.get(groupId);
+            if (recipients != null)
+                for (ClientConnection connection : recipients)
+                    connection.queueFrame(frame);
+        });
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames.get();
+    }
+
+    public long getSentFrames() {
+        return sentFrames.get();
+    }
+
+    /**
+     * Stop server thread and close all connections
+     */
+    public void close() {
+        running = false;
+        if (selector != null)
+            selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                long timeoutMillis = nextWakeUpMillis();
+                if (timeoutMillis > 0)
+                    selector.select(timeoutMillis);
+                else
+                    selector.selectNow();
+
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                    task.run();
+
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    ClientConnection connection = (ClientConnection) key.attachment();
+                    if (key.isWritable())
+                        connection.writable();
+                    if (key.isValid() && key.isReadable())
+                        connection.read();
+                }
+                for (ClientConnection connection : new ArrayList<ClientConnection>(connectionsWithFrames))
+                    connection.write();
+            }
+        } catch (IOException e) {
+            System.out.println("FakeCommunicatorServer: IOException occurred: " + e.getMessage());
+        } finally {
+            for (ClientConnection connection : new ArrayList<ClientConnection>(connections))
+                connection.close();
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                ; // server is closed anyway
+            }
+        }
+    }
+
+    /**
+     * @return milliseconds to next delayed frame or throttled write (100 ms at most), 0 - there is frame to write now
+     */
+    private long nextWakeUpMillis() {
+        long now = System.nanoTime();
+        long nextWakeUp = now + TimeUnit.MILLISECONDS.toNanos(100);
+        for (ClientConnection connection : connectionsWithFrames) {
+            long connectionWakeUp = connection.nextWriteTime();
+            if (connectionWakeUp <= now)
+                return 0;
+            nextWakeUp = Math.min(nextWakeUp, connectionWakeUp);
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextWakeUp - now));
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ClientConnection connection = new ClientConnection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+    }
+
+    /**
+     * Frame waiting to be sent to client
+     */
+    private static class OutboundFrame {
+        final long sendTime;
+        final ByteBuffer bytes;
+
+        OutboundFrame(long sendTime, byte[] frame) {
+            this.sendTime = sendTime;
+            this.bytes = ByteBuffer.wrap(frame);
+        }
+    }
+
+    /**
+     * Frame routed to recipients - it is encoded in text and binary format only when some recipient needs it
+     */
+    private class RoutedFrame {
+        final String clientName;
+        final String groupId;
+        final ExtraInfo extraInfo;
+        private byte[] payload;
+        private byte[] text;
+        private int textPayloadStart;
+        private byte[] binary;
+
+        RoutedFrame(String clientName, String groupId, ExtraInfo extraInfo, byte[] payload) {
+            this.clientName = clientName;
+            this.groupId = groupId;
+            this.extraInfo = extraInfo;
+            this.payload = payload;
+        }
+
+        /**
+         * @param text - text frame as received, with "\n"
+         * @param textPayloadStart - index after "MESSAGE:"
+         */
+        RoutedFrame(String clientName, String groupId, ExtraInfo extraInfo, byte[] text, int textPayloadStart) {
+            this(clientName, groupId, extraInfo, null);
+            this.text = text;
+            this.textPayloadStart = textPayloadStart;
+        }
+
+        byte[] text() {
+            if (text == null) {
+                String header = "VERSION_INFO:1.0.0;CLIENT_NAME:" + clientName + ";GROUP_ID:" + groupId + ";EXTRA:"
+                        + (extraInfo == ExtraInfo.NO_INFO ? "" : extraInfo.name()) + ";MESSAGE:";
+                byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+                text = Arrays.copyOf(headerBytes, headerBytes.length + payload.length + 1);
+                for (int i = 0; i < payload.length; i++)
+                    text[headerBytes.length + i] = (payload[i] == '\n') ? (byte) ' ' : payload[i]; // text frame can not contain "\n"
+                text[text.length - 1] = '\n';
+            }
+            return text;
+        }
+
+        byte[] binary() {
+            if (binary == null) {
+                byte[] body = payload();
+                ByteBuffer frame = ByteBuffer.allocate(1 + 3 * BinaryFraming.MAX_VARINT_SIZE + body.length);
+                frame.put((byte) (BinaryFraming.FRAME_FLAG | extraInfo.getCode()));
+                BinaryFraming.putVarint(frame, idOf(clientName));
+                BinaryFraming.putVarint(frame, idOf(groupId));
+                BinaryFraming.putVarint(frame, body.length);
+                frame.put(body);
+                binary = Arrays.copyOf(frame.array(), frame.position());
+            }
+            return binary;
+        }
+
+        private byte[] payload() {
+            if (payload == null) {
+                int end = text.length - 1;
+                if (end > textPayloadStart && text[end - 1] == '\r')
+                    end--;
+                payload = Arrays.copyOfRange(text, textPayloadStart, end);
+            }
+            return payload;
+        }
+    }
+
+    /**
+     * @return ID of client name or group - assigned by first use, the same for all connections
+     */
+    private int idOf(String text) {
+        return ids.computeIfAbsent(text, key -> {
+            idTexts.add(key);
+            return idTexts.size() - 1;
+        });
+    }
+
+    /**
+     * @return client name or group of ID, null if ID was not assigned
+     */
+    private String textOf(int id) {
+        return (id >= 0 && id < idTexts.size()) ? idTexts.get(id) : null;
+    }
+
+    /**
+     * Connection of one client
+     */
+    private class ClientConnection {
+        final SocketChannel channel;
+        SelectionKey key;
+        String groupId = null;
+        String clientName = null;
+        private byte[] groupIdField = null; // "GROUP_ID:<login group>;" - text frames to login group are found without decoding
+        private final Set<String> joinedGroups = new LinkedHashSet<String>(); // groups joined after login
+        boolean binary = false; // binary framing accepted - frames to client are binary
+        private final BitSet definedIds = new BitSet(); // IDs sent to client in definition frames
+        private byte[] inbound = new byte[READ_BUFFER_SIZE]; // received bytes of incomplete frames
+        private ByteBuffer inboundBuffer = ByteBuffer.wrap(inbound);
+        private int inboundLength = 0;
+        private int scannedBytes = 0; // bytes of incomplete text frame already checked - there is no "\n" in them
+        private FrameCompressor compressor = null; // compression accepted - every frame to client is compressed separately
+        private FrameDecompressor decompressor = null;
+        private final ArrayDeque<OutboundFrame> outboundFrames = new ArrayDeque<OutboundFrame>();
+        private long bandwidthTokens = 0;
+        private long lastTokensTime = System.nanoTime();
+        private boolean socketFull = false; // waiting for OP_WRITE
+
+        ClientConnection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            readBuffer.clear();
+            int read;
+            try {
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read == -1) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            if (inbound.length < inboundLength + read) {
+                inbound = Arrays.copyOf(inbound, Math.max(inbound.length * 2, inboundLength + read));
+                inboundBuffer = ByteBuffer.wrap(inbound);
+            }
+            readBuffer.get(inbound, inboundLength, read);
+            inboundLength += read;
+
+            int frameStart = handleFrames(inboundBuffer, 0, inboundLength);
+            if (frameStart == BinaryFraming.MALFORMED) {
+                close();
+                return;
+            }
+            System.arraycopy(inbound, frameStart, inbound, 0, inboundLength - frameStart);
+            inboundLength -= frameStart;
+            scannedBytes = Math.max(0, scannedBytes - frameStart);
+        }
+
+        /**
+         * Handle all complete frames in buffer (received bytes or decompressed batch)
+         * @return index of first byte of incomplete frame, MALFORMED if frame is wrong
+         */
+        private int handleFrames(ByteBuffer data, int start, int limit) {
+            int frameStart = start;
+            while (frameStart < limit && channel.isOpen()) {
+                int frameEnd = ((data.get(frameStart) & BinaryFraming.FRAME_FLAG) != 0)
+                        ? readBinaryFrame(data, frameStart, limit) : readTextFrame(data, frameStart, limit);
+                if (frameEnd == BinaryFraming.NEED_MORE_DATA)
+                    break;
+                if (frameEnd == BinaryFraming.MALFORMED)
+                    return BinaryFraming.MALFORMED;
+                frameStart = frameEnd;
+            }
+            return frameStart;
+        }
+
+        /**
+         * @return index after frame, NEED_MORE_DATA if there is no "\n" yet
+         */
+        private int readTextFrame(ByteBuffer data, int frameStart, int limit) {
+            boolean receiving = (data == inboundBuffer);
+            int newline = -1;
+            for (int i = Math.max(frameStart, receiving ? scannedBytes : 0); i < limit; i++) {
+                if (data.get(i) == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            if (newline == -1) {
+                if (receiving)
+                    scannedBytes = limit;
+                return BinaryFraming.NEED_MORE_DATA;
+            }
+            byte[] frame = new byte[newline + 1 - frameStart];
+            data.position(frameStart);
+            data.get(frame);
+            handleTextFrame(frame);
+            return newline + 1;
+        }
+
+        /**
+         * @return index after frame, NEED_MORE_DATA if frame is not complete, MALFORMED if varint or compressed data is wrong
+         */
+        private int readBinaryFrame(ByteBuffer data, int frameStart, int limit) {
+            int type = data.get(frameStart) & 0xFF;
+            int position = frameStart + 1;
+            int[] fields = new int[3]; // client name ID, group ID, payload length - IDs of connection are used instead
+            int fieldCount = (type == FrameCompression.COMPRESSED_TYPE) ? 1 : 3;
+            for (int i = 0; i < fieldCount; i++) {
+                fields[i] = BinaryFraming.getVarint(data, position, limit);
+                if (fields[i] < 0)
+                    return fields[i];
+                position += BinaryFraming.varintSize(fields[i]);
+            }
+            int length = fields[fieldCount - 1];
+            if (limit - position < length)
+                return BinaryFraming.NEED_MORE_DATA;
+
+            if (type == FrameCompression.COMPRESSED_TYPE) {
+                if (decompressor == null || data != inboundBuffer)
+                    return BinaryFraming.MALFORMED;
+                try {
+                    ByteBuffer batch = decompressor.decompress(data, position, position + length);
+                    if (handleFrames(batch, batch.position(), batch.limit()) != batch.limit())
+                        return BinaryFraming.MALFORMED;
+                } catch (IOException e) {
+                    return BinaryFraming.MALFORMED;
+                }
+                return position + length;
+            }
+
+            receivedFrames.incrementAndGet();
+            ExtraInfo extraInfo = ExtraInfo.fromCode(type & ~BinaryFraming.FRAME_FLAG);
+            if (extraInfo == ExtraInfo.SHUTDOWN) {
+                leaveGroup();
+            } else if (groupId != null) {
+                String group = textOf(fields[1]);
+                if (group == null)
+                    group = groupId;
+                if (changeGroups(extraInfo, group))
+                    return position + length;
+                byte[] payload = new byte[length];
+                data.position(position);
+                data.get(payload);
+                RoutedFrame frame = new RoutedFrame(clientName, group, extraInfo, payload);
+                if (extraInfo == ExtraInfo.HEARTBEAT && answerHeartbeats)
+                    queueFrame(frame);
+                else
+                    route(frame);
+            }
+            return position + length;
+        }
+
+        /**
+         * Route frame by EXTRA field - frames are forwarded to group of connection, payload is not decoded
+         */
+        private void handleTextFrame(byte[] frame) {
+            receivedFrames.incrementAndGet();
+            int messageIndex = indexOf(frame, MESSAGE_FIELD, 0, frame.length);
+            if (messageIndex == -1)
+                return; // not valid frame
+            int payloadStart = messageIndex + MESSAGE_FIELD.length;
+
+            ExtraInfo extraInfo = ExtraInfo.NO_INFO;
+            if (indexOf(frame, EXTRA_NEW_CONNECTION, 0, messageIndex) != -1) {
+                extraInfo = ExtraInfo.NEW_CONNECTION;
+                leaveGroup();
+                String header = new String(frame, 0, messageIndex, StandardCharsets.UTF_8);
+                groupId = field(header, "GROUP_ID:");
+                clientName = field(header, "CLIENT_NAME:");
+                groupIdField = ("GROUP_ID:" + groupId + ";").getBytes(StandardCharsets.UTF_8);
+                groups.computeIfAbsent(groupId, id -> new ArrayList<ClientConnection>()).add(this);
+                acceptOffers(new String(frame, payloadStart, frame.length - payloadStart, StandardCharsets.UTF_8).trim());
+            } else if (indexOf(frame, EXTRA_SHUTDOWN, 0, messageIndex) != -1) {
+                leaveGroup();
+                return;
+            }
+            if (groupId == null)
+                return; // client did not log in
+            if (answerHeartbeats && indexOf(frame, EXTRA_HEARTBEAT, 0, messageIndex) != -1) {
+                queueFrame(new RoutedFrame(clientName, groupId, ExtraInfo.HEARTBEAT, frame, payloadStart));
+                return;
+            }
+            String group = groupId;
+            if (indexOf(frame, groupIdField, 0, messageIndex) == -1) { // frame to other group
+                group = field(new String(frame, 0, messageIndex, StandardCharsets.UTF_8), "GROUP_ID:");
+                if (group == null)
+                    return; // not valid frame
+                if (indexOf(frame, EXTRA_JOIN, 0, messageIndex) != -1)
+                    extraInfo = ExtraInfo.JOIN;
+                else if (indexOf(frame, EXTRA_LEAVE, 0, messageIndex) != -1)
+                    extraInfo = ExtraInfo.LEAVE;
+                if (changeGroups(extraInfo, group))
+                    return;
+            }
+            route(new RoutedFrame(clientName, group, extraInfo, frame, payloadStart));
+        }
+
+        /**
+         * Join or leave group - JOIN is answered with ID of group
+         * @return true if frame was JOIN or LEAVE
+         */
+        private boolean changeGroups(ExtraInfo extraInfo, String group) {
+            if (extraInfo != ExtraInfo.JOIN && extraInfo != ExtraInfo.LEAVE)
+                return false;
+            if (group.equals(groupId))
+                return true; // login group is joined until logout
+            if (extraInfo == ExtraInfo.JOIN) {
+                if (joinedGroups.add(group))
+                    groups.computeIfAbsent(group, id -> new ArrayList<ClientConnection>()).add(this);
+                queueFrame(new RoutedFrame(SERVER_NAME, group, ExtraInfo.JOIN,
+                        String.valueOf(idOf(group)).getBytes(StandardCharsets.UTF_8)));
+            } else if (joinedGroups.remove(group)) {
+                removeMember(group);
+            }
+            return true;
+        }
+
+        /**
+         * Accept offers from LOGIN message (eg. "LOGIN BINARY/1 DEFLATE/1") which are enabled in server
+         */
+        private void acceptOffers(String loginMessage) {
+            for (String offer : loginMessage.split(" ")) {
+                if (binaryFraming && offer.equals(BinaryFraming.OFFER))
+                    acceptBinaryFraming();
+                else if (compression && offer.startsWith(FrameCompression.OFFER))
+                    acceptCompression(offer);
+            }
+        }
+
+        /**
+         * Answer is sent before compression starts; dictionary is used only if client has the same one
+         */
+        private void acceptCompression(String offer) {
+            byte[] dictionary = FrameCompression.acceptedDictionary(offer, compressionDictionary);
+            queueBytes(("VERSION_INFO:1.0.0;CLIENT_NAME:" + SERVER_NAME + ";GROUP_ID:" + groupId + ";EXTRA:COMPRESSION;MESSAGE:"
+                    + FrameCompression.offer(dictionary) + "\n").getBytes(StandardCharsets.UTF_8));
+            if (compressor == null) {
+                compressor = new FrameCompressor(Deflater.DEFAULT_COMPRESSION, COMPRESSION_MIN_BYTES, dictionary);
+                decompressor = new FrameDecompressor(dictionary);
+            }
+        }
+
+        private void acceptBinaryFraming() {
+            byte[] accept = ("VERSION_INFO:1.0.0;CLIENT_NAME:" + SERVER_NAME + ";GROUP_ID:" + groupId + ";EXTRA:FRAMING;MESSAGE:"
+                    + BinaryFraming.OFFER + " " + idOf(clientName) + " " + idOf(groupId) + "\n").getBytes(StandardCharsets.UTF_8);
+            queueBytes(accept);
+            binary = true;
+        }
+
+        private void route(RoutedFrame frame) {
+            if (!frame.groupId.equals(groupId) && !joinedGroups.contains(frame.groupId))
+                return; // group was not joined
+            for (ClientConnection recipient : groups.get(frame.groupId))
+                if (recipient != this || echoToSender)
+                    recipient.queueFrame(frame);
+        }
+
+        /**
+         * Queue frame in format of this client - IDs are defined before first binary frame which uses them
+         */
+        void queueFrame(RoutedFrame frame) {
+            if (!binary) {
+                queueBytes(frame.text());
+                return;
+            }
+            define(frame.clientName, BinaryFraming.KIND_CLIENT_NAME);
+            define(frame.groupId, BinaryFraming.KIND_GROUP);
+            queueBytes(frame.binary());
+        }
+
+        private void define(String text, int kind) {
+            int id = idOf(text);
+            if (definedIds.get(id))
+                return;
+            definedIds.set(id);
+            byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer definition = ByteBuffer.allocate(1 + 3 * BinaryFraming.MAX_VARINT_SIZE + textBytes.length);
+            definition.put((byte) BinaryFraming.DEFINITION_TYPE);
+            BinaryFraming.putVarint(definition, id);
+            BinaryFraming.putVarint(definition, kind);
+            BinaryFraming.putVarint(definition, textBytes.length);
+            definition.put(textBytes);
+            queueBytes(Arrays.copyOf(definition.array(), definition.position()));
+        }
+
+        void queueBytes(byte[] frame) {
+            if (compressor != null) {
+                ByteBuffer batch = compressor.compressBatch(ByteBuffer.wrap(frame));
+                if (batch.array() != frame) {
+                    frame = new byte[batch.remaining()];
+                    batch.get(frame);
+                }
+            }
+            outboundFrames.add(new OutboundFrame(System.nanoTime() + latencyNanos, frame));
+            connectionsWithFrames.add(this);
+        }
+
+        /**
+         * Socket accepts data again
+         */
+        void writable() {
+            socketFull = false;
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /**
+         * @return time when next write can be done, Long.MAX_VALUE if there is nothing to write or socket is full
+         */
+        long nextWriteTime() {
+            OutboundFrame frame = outboundFrames.peek();
+            if (frame == null || socketFull)
+                return Long.MAX_VALUE;
+            if (bandwidthBytesPerSecond > 0 && bandwidthTokens <= 0)
+                return Math.max(frame.sendTime, lastTokensTime + TimeUnit.MILLISECONDS.toNanos(1));
+            return frame.sendTime;
+        }
+
+        /**
+         * Write frames which are ready (latency elapsed) as far as bandwidth and socket allow
+         */
+        void write() {
+            if (socketFull)
+                return;
+            long now = System.nanoTime();
+            if (bandwidthBytesPerSecond > 0) {
+                bandwidthTokens = Math.min(bandwidthBytesPerSecond,
+                        bandwidthTokens + (now - lastTokensTime) * bandwidthBytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+                lastTokensTime = now;
+            }
+            try {
+                OutboundFrame frame;
+                while ((frame = outboundFrames.peek()) != null && frame.sendTime <= now) {
+                    int limit = frame.bytes.remaining();
+                    if (maxBytesPerWrite > 0)
+                        limit = Math.min(limit, maxBytesPerWrite);
+                    if (bandwidthBytesPerSecond > 0)
+                        limit = (int) Math.min(limit, bandwidthTokens);
+                    if (limit <= 0)
+                        return;
+
+                    ByteBuffer chunk = frame.bytes.duplicate();
+                    chunk.limit(chunk.position() + limit);
+                    int written = channel.write(chunk);
+                    frame.bytes.position(frame.bytes.position() + written);
+                    bandwidthTokens -= written;
+                    if (written < limit) {
+                        socketFull = true;
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    if (!frame.bytes.hasRemaining()) {
+                        outboundFrames.poll();
+                        sentFrames.incrementAndGet();
+                    } else if (maxBytesPerWrite > 0) {
+                        return; // next part in next loop turn - separate packet
+                    }
+                }
+                if (outboundFrames.isEmpty())
+                    connectionsWithFrames.remove(this);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void leaveGroup() {
+            if (groupId != null) {
+                removeMember(groupId);
+                groupId = null;
+            }
+            for (String group : joinedGroups)
+                removeMember(group);
+            joinedGroups.clear();
+        }
+
+        private void removeMember(String group) {
+            List<ClientConnection> members = groups.get(group);
+            members.remove(this);
+            if (members.isEmpty())
+                groups.remove(group);
+        }
+
+        void close() {
+            leaveGroup();
+            if (compressor != null) {
+                compressor.close();
+                decompressor.close();
+                compressor = null;
+                decompressor = null;
+            }
+            connections.remove(this);
+            connectionsWithFrames.remove(this);
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                ; // connection is closed anyway
+            }
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from, int to) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++)
+                if (data[i + j] != pattern[j])
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Value of header field (eg. "GROUP_ID:") - text between field name and ";"
+     */
+    private static String field(String header, String fieldName) {
+        int start = header.indexOf(fieldName);
+        if (start == -1)
+            return null;
+        start += fieldName.length();
+        int end = header.indexOf(';', start);
+        return header.substring(start, end == -1 ? header.length() : end);
+    }
+
+    /**
+     * Run server standalone, eg. for benchmark mode of client
+     * Options: --port 1234 --latency 0 (ms) --bandwidth 0 (bytes/s) --split 0 (bytes per write) --echo true --binary true
+     * --compression true --dictionary (path to dictionary file)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        FakeCommunicatorServer server = new FakeCommunicatorServer();
+        int port = 1234;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[i + 1]); break;
+                case "--latency": server.setLatencyMillis(Long.parseLong(args[i + 1])); break;
+                case "--bandwidth": server.setBandwidthBytesPerSecond(Long.parseLong(args[i + 1])); break;
+                case "--split": server.setMaxBytesPerWrite(Integer.parseInt(args[i + 1])); break;
+                case "--echo": server.setEchoToSender(Boolean.parseBoolean(args[i + 1])); break;
+                case "--binary": server.setBinaryFraming(Boolean.parseBoolean(args[i + 1])); break;
+                case "--compression": server.setCompression(Boolean.parseBoolean(args[i + 1])); break;
+                case "--heartbeat": server.setAnswerHeartbeats(Boolean.parseBoolean(args[i + 1])); break;
+                case "--dictionary": server.setCompressionDictionary(FrameCompression.loadDictionary(args[i + 1])); break;
+                default: System.out.println("Unknown option: " + args[i]); return;
+            }
+        }
+        System.out.println("FakeCommunicatorServer listens on port " + server.start(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,231 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryFramingTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            bytes[i] = (byte) values[i];
+        return bytes;
+    }
+
+    static Stream<Arguments> varints() {
+        return Stream.of(
+                Arguments.of(0, bytes(0x00)),
+                Arguments.of(1, bytes(0x01)),
+                Arguments.of(127, bytes(0x7F)),
+                Arguments.of(128, bytes(0x80, 0x01)),
+                Arguments.of(300, bytes(0xAC, 0x02)),
+                Arguments.of(16383, bytes(0xFF, 0x7F)),
+                Arguments.of(16384, bytes(0x80, 0x80, 0x01)),
+                Arguments.of(2097151, bytes(0xFF, 0xFF, 0x7F)),
+                Arguments.of(2097152, bytes(0x80, 0x80, 0x80, 0x01)),
+                Arguments.of(268435455, bytes(0xFF, 0xFF, 0xFF, 0x7F)),
+                Arguments.of(268435456, bytes(0x80, 0x80, 0x80, 0x80, 0x01)),
+                Arguments.of(Integer.MAX_VALUE, bytes(0xFF, 0xFF, 0xFF, 0xFF, 0x07)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("varints")
+    void varintIsEncodedAndDecoded(int value, byte[] encoded) {
+        assertEquals(encoded.length, BinaryFraming.varintSize(value));
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryFraming.MAX_VARINT_SIZE + 1);
+        buffer.put((byte) 0x55); // varint does not start at index 0
+        BinaryFraming.putVarint(buffer, value);
+        assertArrayEquals(encoded, Arrays.copyOfRange(buffer.array(), 1, buffer.position()));
+
+        assertEquals(value, BinaryFraming.getVarint(buffer, 1, buffer.position()));
+        assertEquals(value, BinaryFraming.getVarint(ByteBuffer.wrap(encoded), 0, encoded.length));
+        assertEquals(BinaryFraming.NEED_MORE_DATA, BinaryFraming.getVarint(ByteBuffer.wrap(encoded), 0, encoded.length - 1));
+    }
+
+    static Stream<Arguments> malformedVarints() {
+        return Stream.of(
+                Arguments.of("not the shortest form of 0", bytes(0x80, 0x00)),
+                Arguments.of("not the shortest form of 1", bytes(0x81, 0x80, 0x00)),
+                Arguments.of("bigger than Integer.MAX_VALUE", bytes(0xFF, 0xFF, 0xFF, 0xFF, 0x0F)),
+                Arguments.of("longer than 5 bytes", bytes(0x80, 0x80, 0x80, 0x80, 0x80, 0x01)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("malformedVarints")
+    void malformedVarintIsRejected(String description, byte[] encoded) {
+        assertEquals(BinaryFraming.MALFORMED, BinaryFraming.getVarint(ByteBuffer.wrap(encoded), 0, encoded.length));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "'', 0",
+            "abc, 3",
+            "zażółć, 10",
+            "€, 3",
+            "😀, 4",
+            "a\uD83Db, 3",      // lone high surrogate - one replacement byte
+            "\uDE00, 1",
+    })
+    void utf8LengthMatchesEncoder(String text, int length) {
+        assertEquals(length, BinaryFraming.utf8Length(text));
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, BinaryFraming.utf8Length(text));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "BINARY/1 5 7, 5, 7",
+            "BINARY/1 0 0, 0, 0",
+            "BINARY/2 5 7, ,",
+            "BINARY/1 5, ,",
+            "BINARY/1 5 7 9, ,",
+            "BINARY/1 -1 7, ,",
+            "BINARY/1 x 7, ,",
+            "LOGIN BINARY/1, ,",
+    })
+    void acceptOfServerIsParsed(String message, Integer clientNameId, Integer groupId) {
+        int[] ids = BinaryFraming.parseAccept(message);
+        if (clientNameId == null)
+            assertNull(ids);
+        else
+            assertArrayEquals(new int[]{clientNameId, groupId}, ids);
+    }
+
+    /**
+     * Stream of frames as server writes them
+     */
+    private static class Frames {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Frames definition(int id, int kind, String text) {
+            return frame(BinaryFraming.DEFINITION_TYPE, id, kind, text);
+        }
+
+        Frames message(ExtraInfo extraInfo, int clientNameId, int groupId, String text) {
+            return frame(BinaryFraming.FRAME_FLAG | extraInfo.getCode(), clientNameId, groupId, text);
+        }
+
+        Frames text(String frame) {
+            byte[] frameBytes = (frame + "\n").getBytes(StandardCharsets.UTF_8);
+            bytes.write(frameBytes, 0, frameBytes.length);
+            return this;
+        }
+
+        private Frames frame(int type, int first, int second, String text) {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer frame = ByteBuffer.allocate(1 + 3 * BinaryFraming.MAX_VARINT_SIZE + payload.length);
+            frame.put((byte) type);
+            BinaryFraming.putVarint(frame, first);
+            BinaryFraming.putVarint(frame, second);
+            BinaryFraming.putVarint(frame, payload.length);
+            frame.put(payload);
+            bytes.write(frame.array(), 0, frame.position());
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Channel which returns data in given pieces - one piece by read
+     */
+    private static class ChunkedChannel implements ReadableByteChannel {
+        final Deque<byte[]> chunks = new ArrayDeque<byte[]>();
+
+        ChunkedChannel(byte[] data, int chunkSize) {
+            for (int i = 0; i < data.length; i += chunkSize)
+                chunks.add(Arrays.copyOfRange(data, i, Math.min(data.length, i + chunkSize)));
+        }
+
+        @Override
+        public int read(ByteBuffer target) {
+            if (chunks.isEmpty())
+                return -1;
+            byte[] chunk = chunks.poll();
+            target.put(chunk);
+            return chunk.length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static List<String> decodeAll(byte[] data, int chunkSize) throws IOException {
+        FrameDecoder decoder = new FrameDecoder(256);
+        ChunkedChannel channel = new ChunkedChannel(data, chunkSize);
+        List<String> decoded = new ArrayList<String>();
+        List<ServerMessage> frames;
+        while ((frames = decoder.readFrames(channel)) != null)
+            for (ServerMessage frame : frames)
+                decoded.add(frame.getGroupId() + "|" + frame.getExtraInfo() + "|" + frame.toDisplayText());
+        return decoded;
+    }
+
+    @Test
+    void definitionFramesBindIdsToNames() throws IOException {
+        byte[] data = new Frames()
+                .text("VERSION_INFO:1.0.0;CLIENT_NAME:SERVER;GROUP_ID:g;EXTRA:FRAMING;MESSAGE:BINARY/1 1 2")
+                .message(ExtraInfo.NO_INFO, 1, 2, "before definitions")
+                .definition(1, BinaryFraming.KIND_CLIENT_NAME, "alice")
+                .definition(2, BinaryFraming.KIND_GROUP, "group-ż")
+                .definition(300, BinaryFraming.KIND_CLIENT_NAME, "bob")
+                .message(ExtraInfo.NO_INFO, 1, 2, "hello\nworld")
+                .message(ExtraInfo.HEARTBEAT, 300, 2, "")
+                .definition(1, BinaryFraming.KIND_CLIENT_NAME, "carol") // ID is bound again
+                .message(ExtraInfo.SHUTDOWN, 1, 2, "bye")
+                .toByteArray();
+        List<String> expected = List.of(
+                "g|FRAMING|SERVER: BINARY/1 1 2",
+                "#2|NO_INFO|#1: before definitions",
+                "group-ż|NO_INFO|alice: hello\nworld",
+                "group-ż|HEARTBEAT|bob: ",
+                "group-ż|SHUTDOWN|carol: bye");
+
+        for (int chunkSize : new int[]{data.length, 1, 2, 3, 7, 64})
+            assertEquals(expected, decodeAll(data, chunkSize), "chunks of " + chunkSize + " bytes");
+    }
+
+    @Test
+    void malformedVarintOfFrameFailsConnection() {
+        byte[] data = bytes(BinaryFraming.FRAME_FLAG, 0x80, 0x00, 0x00, 0x00);
+        assertThrows(IOException.class, () -> decodeAll(data, data.length));
+    }
+
+    @Test
+    void frameLongerThanLimitFailsConnection() {
+        ByteBuffer frame = ByteBuffer.allocate(16);
+        frame.put((byte) BinaryFraming.FRAME_FLAG);
+        BinaryFraming.putVarint(frame, 0);
+        BinaryFraming.putVarint(frame, 0);
+        BinaryFraming.putVarint(frame, FrameDecoder.MAX_FRAME_SIZE + 1);
+        byte[] data = Arrays.copyOf(frame.array(), frame.position());
+        assertThrows(IOException.class, () -> decodeAll(data, data.length));
+    }
+}
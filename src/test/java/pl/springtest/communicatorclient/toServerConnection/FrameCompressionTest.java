@@ -0,0 +1,198 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameCompressionTest {
+    private static final byte[] DICTIONARY = "VERSION_INFO:1.0.0;CLIENT_NAME:;GROUP_ID:;EXTRA:;MESSAGE:are we meeting at 6 pm "
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static String textFrame(String clientName, String message) {
+        return "VERSION_INFO:1.0.0;CLIENT_NAME:" + clientName + ";GROUP_ID:group;EXTRA:;MESSAGE:" + message + "\n";
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param compressed - compressed frame written by FrameCompressor
+     * @return bytes of compressed frame (compressor reuses its buffer)
+     */
+    private static byte[] copy(ByteBuffer compressed) {
+        byte[] bytes = new byte[compressed.remaining()];
+        compressed.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param frame - compressed frame: type byte, varint length, deflate data
+     * @return decompressed frames of batch
+     */
+    private static String decompress(FrameDecompressor decompressor, byte[] frame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        assertEquals(FrameCompression.COMPRESSED_TYPE, buffer.get(0) & 0xFF);
+        int length = BinaryFraming.getVarint(buffer, 1, frame.length);
+        int start = 1 + BinaryFraming.varintSize(length);
+        assertEquals(frame.length, start + length);
+        return StandardCharsets.UTF_8.decode(decompressor.decompress(buffer, start, frame.length)).toString();
+    }
+
+    @Test
+    void batchesAreDecompressedInOrderOfOneStream() throws IOException {
+        for (byte[] dictionary : new byte[][]{null, DICTIONARY}) {
+            FrameCompressor compressor = new FrameCompressor(Deflater.DEFAULT_COMPRESSION, 0, dictionary);
+            FrameDecompressor decompressor = new FrameDecompressor(dictionary);
+            for (int i = 0; i < 20; i++) { // later batches refer to data of earlier ones
+                String batch = textFrame("alice", "are we meeting at 6 pm " + i) + textFrame("bob", "yes, at 6 pm ż" + i);
+                assertEquals(batch, decompress(decompressor, copy(compressor.compressBatch(buffer(batch)))));
+            }
+            assertTrue(compressor.getCompressedBytes() < compressor.getPlainBytes());
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    @Test
+    void smallBatchIsNotCompressed() {
+        FrameCompressor compressor = new FrameCompressor(Deflater.DEFAULT_COMPRESSION, 1024, null);
+        ByteBuffer batch = buffer(textFrame("alice", "hi"));
+        assertSame(batch, compressor.compressBatch(batch));
+        assertEquals(0, compressor.getPlainBytes());
+        compressor.close();
+    }
+
+    @Test
+    void decompressorWithoutDictionaryOfCompressorFails() {
+        FrameCompressor compressor = new FrameCompressor(Deflater.DEFAULT_COMPRESSION, 0, DICTIONARY);
+        byte[] frame = copy(compressor.compressBatch(buffer(textFrame("alice", "are we meeting at 6 pm"))));
+        FrameDecompressor decompressor = new FrameDecompressor(null);
+        assertThrows(IOException.class, () -> decompress(decompressor, frame));
+        compressor.close();
+        decompressor.close();
+    }
+
+    @Test
+    void dictionaryIsUsedOnlyWhenBothSidesHaveTheSameOne() {
+        byte[] otherDictionary = "other words".getBytes(StandardCharsets.UTF_8);
+        String offer = FrameCompression.offer(DICTIONARY);
+        assertEquals(FrameCompression.OFFER, FrameCompression.offer(null));
+        assertEquals(FrameCompression.OFFER + ":" + FrameCompression.dictionaryId(DICTIONARY), offer);
+
+        // server answers offer of client with its dictionary, client checks answer with its own dictionary
+        String answer = FrameCompression.offer(FrameCompression.acceptedDictionary(offer, DICTIONARY));
+        assertEquals(offer, answer);
+        assertSame(DICTIONARY, FrameCompression.acceptedDictionary(answer, DICTIONARY));
+
+        String answerOfOtherServer = FrameCompression.offer(FrameCompression.acceptedDictionary(offer, otherDictionary));
+        assertEquals(FrameCompression.OFFER, answerOfOtherServer);
+        assertTrue(FrameCompression.isAccepted(answerOfOtherServer));
+        assertNull(FrameCompression.acceptedDictionary(answerOfOtherServer, DICTIONARY));
+        assertNull(FrameCompression.acceptedDictionary(FrameCompression.offer(null), null));
+
+        assertFalse(FrameCompression.isAccepted("DEFLATE/2"));
+        assertFalse(FrameCompression.isAccepted(""));
+    }
+
+    /**
+     * Channel returning whole data by first read
+     */
+    private static class DataChannel implements ReadableByteChannel {
+        private ByteBuffer data;
+
+        DataChannel(byte[] data) {
+            this.data = ByteBuffer.wrap(data);
+        }
+
+        @Override
+        public int read(ByteBuffer target) {
+            if (!data.hasRemaining())
+                return -1;
+            int length = Math.min(target.remaining(), data.remaining());
+            ByteBuffer piece = data.duplicate();
+            piece.limit(piece.position() + length);
+            target.put(piece);
+            data.position(data.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static List<String> decodeAll(byte[] data) throws IOException {
+        FrameDecoder decoder = new FrameDecoder();
+        DataChannel channel = new DataChannel(data);
+        List<String> decoded = new ArrayList<String>();
+        List<ServerMessage> frames;
+        while ((frames = decoder.readFrames(channel)) != null)
+            for (ServerMessage frame : frames)
+                decoded.add(frame.getExtraInfo() + "|" + frame.toDisplayText());
+        if (decoder.getDecompressor() != null)
+            decoder.getDecompressor().close();
+        return decoded;
+    }
+
+    @Test
+    void framesInCompressedFrameAreDecodedAfterAnswerToOffer() throws IOException {
+        FrameCompressor compressor = new FrameCompressor(Deflater.DEFAULT_COMPRESSION, 0, null);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] answer = "VERSION_INFO:1.0.0;CLIENT_NAME:SERVER;GROUP_ID:group;EXTRA:COMPRESSION;MESSAGE:DEFLATE/1\n"
+                .getBytes(StandardCharsets.UTF_8);
+        stream.write(answer, 0, answer.length);
+        byte[] first = copy(compressor.compressBatch(buffer(textFrame("alice", "first") + textFrame("bob", "second"))));
+        stream.write(first, 0, first.length);
+        byte[] plain = textFrame("carol", "not compressed").getBytes(StandardCharsets.UTF_8); // plain and compressed are mixed
+        stream.write(plain, 0, plain.length);
+        byte[] second = copy(compressor.compressBatch(buffer(textFrame("alice", "third"))));
+        stream.write(second, 0, second.length);
+        compressor.close();
+
+        assertEquals(List.of("COMPRESSION|SERVER: DEFLATE/1", "NO_INFO|alice: first", "NO_INFO|bob: second",
+                "NO_INFO|carol: not compressed", "NO_INFO|alice: third"), decodeAll(stream.toByteArray()));
+    }
+
+    @Test
+    void compressedFrameWithoutAcceptedOfferFailsConnection() {
+        FrameCompressor compressor = new FrameCompressor(Deflater.DEFAULT_COMPRESSION, 0, null);
+        byte[] frame = copy(compressor.compressBatch(buffer(textFrame("alice", "first"))));
+        compressor.close();
+        assertThrows(IOException.class, () -> decodeAll(frame));
+    }
+
+    @Test
+    void closedCompressionIsNotUsed() {
+        FrameCompressor compressor = new FrameCompressor(Deflater.DEFAULT_COMPRESSION, 0, null);
+        compressor.close();
+        ByteBuffer batch = buffer(textFrame("alice", "to broken connection"));
+        assertSame(batch, compressor.compressBatch(batch)); // written without compression - write to closed socket fails
+
+        FrameCompressor other = new FrameCompressor(Deflater.DEFAULT_COMPRESSION, 0, null);
+        byte[] frame = copy(other.compressBatch(batch));
+        other.close();
+        FrameDecompressor decompressor = new FrameDecompressor(null);
+        decompressor.close();
+        assertThrows(IOException.class, () -> decompress(decompressor, frame));
+    }
+}
@@ -0,0 +1,76 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.springtest.communicatorclient.workers.TimerWheel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeartbeatTest {
+    private static final long INTERVAL_MILLIS = 20;
+
+    private final TimerWheel timerWheel = new TimerWheel(5, 64, "Thread - TimerWheel test");
+    private final Heartbeat heartbeat = new Heartbeat(INTERVAL_MILLIS, 3, timerWheel);
+    private final CountDownLatch dead = new CountDownLatch(1);
+    private final AtomicInteger dueBeats = new AtomicInteger();
+
+    @AfterEach
+    void stop() {
+        heartbeat.stop();
+        timerWheel.stop();
+    }
+
+    private String awaitBeat() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        String beat;
+        while ((beat = heartbeat.nextBeat()) == null && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertNotNull(beat, "no beat was due");
+        return beat;
+    }
+
+    @Test
+    void answeredBeatsKeepPeerAlive() throws InterruptedException {
+        heartbeat.start(dueBeats::incrementAndGet, dead::countDown);
+        for (int i = 0; i < 10; i++)
+            heartbeat.answerReceived(awaitBeat(), System.nanoTime());
+        assertEquals(1, dead.getCount());
+        assertEquals(0, heartbeat.getMissedBeats());
+        assertEquals(10, heartbeat.getRttStatistics().getSamples());
+    }
+
+    @Test
+    void serverWhichNeverAnswersIsNotDeclaredDead() throws InterruptedException {
+        heartbeat.start(dueBeats::incrementAndGet, dead::countDown);
+        for (int i = 0; i < 10; i++)
+            awaitBeat();
+        assertFalse(dead.await(10 * INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(0, heartbeat.getDeadPeers());
+    }
+
+    @Test
+    void notAnsweredBeatsDeclarePeerDead() throws InterruptedException {
+        heartbeat.start(dueBeats::incrementAndGet, dead::countDown);
+        heartbeat.answerReceived(awaitBeat(), System.nanoTime());
+        for (int i = 0; i < 3; i++)
+            awaitBeat(); // sent, never answered
+        assertTrue(dead.await(5, TimeUnit.SECONDS));
+        assertEquals(1, heartbeat.getDeadPeers());
+    }
+
+    @Test
+    void beatsWhichSenderCanNotSendDeclarePeerDead() throws InterruptedException {
+        heartbeat.start(dueBeats::incrementAndGet, dead::countDown);
+        heartbeat.answerReceived(awaitBeat(), System.nanoTime());
+        // sender is blocked in write to socket - it never takes next beats
+        assertTrue(dead.await(5, TimeUnit.SECONDS), "dead peer was not found while sender was stuck");
+        assertEquals(1, heartbeat.getDeadPeers());
+    }
+}
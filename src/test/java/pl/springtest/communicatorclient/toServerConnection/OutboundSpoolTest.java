@@ -0,0 +1,124 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundSpoolTest {
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    Path directory;
+
+    private static List<String> readAll(OutboundSpool spool, List<String> target) {
+        spool.readBatch(target, Integer.MAX_VALUE);
+        return target;
+    }
+
+    @Test
+    void notSentMessagesSurviveReopen() throws IOException {
+        Path path = directory.resolve("spool");
+        OutboundSpool spool = new OutboundSpool(path, CAPACITY);
+        assertEquals(3, spool.append(List.of("first", "second", "third")));
+        List<String> batch = new ArrayList<String>();
+        spool.markSent(spool.readBatch(batch, 1)); // at least one message is read
+        assertEquals(List.of("first"), batch);
+        spool.close();
+
+        OutboundSpool reopened = new OutboundSpool(path, CAPACITY);
+        assertEquals(2, reopened.size());
+        assertEquals(List.of("second", "third"), readAll(reopened, new ArrayList<String>()));
+        reopened.close();
+    }
+
+    @Test
+    void tornLastRecordIsDroppedOnReopen() throws IOException {
+        Path path = directory.resolve("spool");
+        OutboundSpool spool = new OutboundSpool(path, CAPACITY);
+        spool.append(List.of("first", "second", "third"));
+        spool.close();
+
+        // crash while third record was written: its length was not published yet
+        int thirdRecord = OutboundSpool.HEADER_SIZE + (4 + "first".length()) + (4 + "second".length());
+        writeInt(path, thirdRecord, 0);
+        OutboundSpool reopened = new OutboundSpool(path, CAPACITY);
+        assertEquals(List.of("first", "second"), readAll(reopened, new ArrayList<String>()));
+        assertEquals(1, reopened.append(List.of("fourth")));
+        assertEquals(List.of("first", "second", "fourth"), readAll(reopened, new ArrayList<String>()));
+        reopened.close();
+
+        // length of record points past end of file
+        writeInt(path, thirdRecord, Integer.MAX_VALUE);
+        reopened = new OutboundSpool(path, CAPACITY);
+        assertEquals(2, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    void spoolRewindsWhenEverythingIsSent() throws IOException {
+        Path path = directory.resolve("spool");
+        OutboundSpool spool = new OutboundSpool(path, CAPACITY);
+        spool.append(List.of("first", "second"));
+        int end = spool.readBatch(new ArrayList<String>(), Integer.MAX_VALUE);
+        spool.markSent(end);
+        assertTrue(spool.isEmpty());
+
+        spool.append(List.of("third"));
+        List<String> batch = new ArrayList<String>();
+        assertEquals(OutboundSpool.HEADER_SIZE + 4 + "third".length(), spool.readBatch(batch, Integer.MAX_VALUE),
+                "records did not start again from beginning of file");
+        assertEquals(List.of("third"), batch);
+        spool.markSent(end); // position of previous round is ignored
+        assertEquals(1, spool.size());
+        spool.close();
+
+        OutboundSpool reopened = new OutboundSpool(path, CAPACITY);
+        assertEquals(List.of("third"), readAll(reopened, new ArrayList<String>()));
+        reopened.markSent(reopened.readBatch(new ArrayList<String>(), Integer.MAX_VALUE));
+        reopened.close();
+
+        reopened = new OutboundSpool(path, CAPACITY);
+        assertTrue(reopened.isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void fullSpoolRejectsMessages() throws IOException {
+        int capacity = OutboundSpool.HEADER_SIZE + 3 * (4 + 10) + 4; // three records and end of records
+        OutboundSpool spool = new OutboundSpool(directory.resolve("spool"), capacity);
+        assertEquals(3, spool.append(List.of("0123456789", "0123456789", "0123456789", "0123456789", "0123456789")));
+        assertEquals(0, spool.append(List.of("x")));
+        assertEquals(3, spool.size());
+
+        spool.markSent(spool.readBatch(new ArrayList<String>(), Integer.MAX_VALUE));
+        assertEquals(1, spool.append(List.of("x")));
+        spool.close();
+        assertEquals(0, spool.append(List.of("after close")));
+    }
+
+    @Test
+    void spoolCanBeOpenOnlyOnce() throws IOException {
+        Path path = directory.resolve("spool");
+        OutboundSpool spool = new OutboundSpool(path, CAPACITY);
+        assertThrows(IOException.class, () -> new OutboundSpool(path, CAPACITY));
+        spool.close();
+    }
+
+    private static void writeInt(Path path, int position, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4).putInt(0, value);
+            channel.write(buffer, position);
+        }
+    }
+}
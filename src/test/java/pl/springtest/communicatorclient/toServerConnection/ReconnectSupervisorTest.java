@@ -0,0 +1,50 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReconnectSupervisorTest {
+
+    @Test
+    void backoffIsDoubledWithJitterUpToMaximum() {
+        ReconnectSupervisor supervisor = new ReconnectSupervisor(10, 100, 1000);
+        long[] limits = {100, 200, 400, 800, 1000, 1000};
+        for (int attempt = 0; attempt < limits.length; attempt++) {
+            for (int i = 0; i < 100; i++) {
+                long delay = supervisor.backoffMillis(attempt);
+                assertTrue(delay >= limits[attempt] / 2 && delay <= limits[attempt],
+                        "attempt " + attempt + ": " + delay);
+            }
+        }
+        for (int attempt : new int[]{31, 63, 64, Integer.MAX_VALUE}) { // shift does not overflow to small delay
+            long delay = supervisor.backoffMillis(attempt);
+            assertTrue(delay >= 500 && delay <= 1000, "attempt " + attempt + ": " + delay);
+        }
+    }
+
+    @Test
+    void reconnectStopsAtLimitOfAttempts() {
+        ReconnectSupervisor supervisor = new ReconnectSupervisor(3, 1, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        assertFalse(supervisor.reconnect(() -> {
+            attempts.incrementAndGet();
+            throw new IOException("refused");
+        }, () -> false));
+        assertEquals(3, attempts.get());
+        assertEquals(0, supervisor.getReconnects());
+
+        assertTrue(supervisor.reconnect(() -> {
+            if (attempts.incrementAndGet() < 5)
+                throw new IOException("refused");
+        }, () -> false));
+        assertEquals(1, supervisor.getReconnects());
+        assertFalse(supervisor.reconnect(attempts::incrementAndGet, () -> true));
+        assertFalse(new ReconnectSupervisor(0, 1, 1).isEnabled());
+    }
+}
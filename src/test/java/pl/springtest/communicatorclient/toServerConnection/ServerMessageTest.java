@@ -0,0 +1,84 @@
+package pl.springtest.communicatorclient.toServerConnection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerMessageTest {
+
+    static Stream<Arguments> validFrames() {
+        return Stream.of(
+                Arguments.of("VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:;MESSAGE:hello",
+                        "1.0.0", "alice", "g", ExtraInfo.NO_INFO, "hello"),
+                Arguments.of("VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:SHUTDOWN;MESSAGE:",
+                        "1.0.0", "alice", "g", ExtraInfo.SHUTDOWN, ""),
+                Arguments.of("VERSION_INFO:1.0.0;CLIENT_NAME:a;b;GROUP_ID:g;h;EXTRA:HEARTBEAT;MESSAGE:17",
+                        "1.0.0", "a;b", "g;h", ExtraInfo.HEARTBEAT, "17"),
+                Arguments.of("VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:;MESSAGE:x;EXTRA:SHUTDOWN;MESSAGE:y",
+                        "1.0.0", "alice", "g", ExtraInfo.NO_INFO, "x;EXTRA:SHUTDOWN;MESSAGE:y"),
+                Arguments.of("VERSION_INFO:1.0.0;CLIENT_NAME:CLIENT_NAME:;GROUP_ID:GROUP_ID:;EXTRA:JOIN;MESSAGE:12",
+                        "1.0.0", "CLIENT_NAME:", "GROUP_ID:", ExtraInfo.JOIN, "12"),
+                Arguments.of("VERSION_INFO:2;CLIENT_NAME:żółw;GROUP_ID:grupa;EXTRA:FILE_START;MESSAGE:1 2 a.txt",
+                        "2", "żółw", "grupa", ExtraInfo.FILE_START, "1 2 a.txt"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("validFrames")
+    void validFrameIsParsed(String frame, String version, String clientName, String groupId, ExtraInfo extraInfo, String message) {
+        ServerMessage parsed = ServerMessage.fromTextFrame(frame);
+        assertNotNull(parsed);
+        assertEquals(version, parsed.getVersion().toString());
+        assertEquals(clientName, parsed.getClientName().toString());
+        assertEquals(groupId, parsed.getGroupId().toString());
+        assertEquals(extraInfo, parsed.getExtraInfo());
+        assertEquals(message, parsed.getMessage().toString());
+    }
+
+    static Stream<Arguments> malformedFrames() {
+        return Stream.of(
+                Arguments.of("empty frame", ""),
+                Arguments.of("no VERSION_INFO", "CLIENT_NAME:alice;GROUP_ID:g;EXTRA:;MESSAGE:hello"),
+                Arguments.of("fields in other order", "VERSION_INFO:1.0.0;GROUP_ID:g;CLIENT_NAME:alice;EXTRA:;MESSAGE:hello"),
+                Arguments.of("empty version", "VERSION_INFO:;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:;MESSAGE:hello"),
+                Arguments.of("empty client name", "VERSION_INFO:1.0.0;CLIENT_NAME:;GROUP_ID:g;EXTRA:;MESSAGE:hello"),
+                Arguments.of("empty group", "VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:;EXTRA:;MESSAGE:hello"),
+                Arguments.of("no EXTRA", "VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:g;MESSAGE:hello"),
+                Arguments.of("no MESSAGE", "VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:"),
+                Arguments.of("unknown EXTRA", "VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:REBOOT;MESSAGE:hello"),
+                Arguments.of("EXTRA in lower case", "VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:shutdown;MESSAGE:"),
+                Arguments.of("NO_INFO by name", "VERSION_INFO:1.0.0;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:NO_INFO;MESSAGE:"),
+                Arguments.of("space before field", "VERSION_INFO:1.0.0; CLIENT_NAME:alice;GROUP_ID:g;EXTRA:;MESSAGE:hello"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("malformedFrames")
+    void malformedFrameIsRejected(String description, String frame) {
+        assertNull(ServerMessage.fromTextFrame(frame));
+    }
+
+    @Test
+    void viewIsReusedAndCopyKeepsFields() {
+        char[] chars = ("xx" + "VERSION_INFO:1;CLIENT_NAME:alice;GROUP_ID:g;EXTRA:;MESSAGE:first" + "yy").toCharArray();
+        ServerMessage view = new ServerMessage();
+        assertTrue(view.parseTextFrame(chars, 2, chars.length - 2));
+        assertEquals("alice: first", view.toDisplayText());
+        ServerMessage copy = view.copy();
+
+        char[] next = "VERSION_INFO:1;CLIENT_NAME:bob;GROUP_ID:g;EXTRA:;MESSAGE:second".toCharArray();
+        assertTrue(view.parseTextFrame(next, 0, next.length));
+        assertEquals("bob: second", view.toDisplayText());
+        assertEquals("alice: first", copy.toDisplayText());
+        assertEquals("1", copy.getVersion());
+
+        assertFalse(view.parseTextFrame(next, 0, next.length - "EXTRA:;MESSAGE:second".length()));
+    }
+}